@@ -13,6 +13,7 @@ import org.spongepowered.common.bridge.world.chunk.ChunkBridge;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ShipDataMethods;
+import org.valkyrienskies.mod.common.util.ValkyrienUtils;
 
 import java.util.Optional;
 
@@ -31,6 +32,14 @@ public abstract class MixinChunkSponge {
             QueryableShipData queryableShipData = QueryableShipData.get(world);
             Optional<ShipData> shipDataOptional = queryableShipData.getShipFromChunk(pos.getX() >> 4, pos.getZ() >> 4);
             shipDataOptional.ifPresent(shipData -> ShipDataMethods.onSetBlockState(shipData, pos, currentState, newState));
+            if (ValkyrienUtils.notInFakeWorldBlacklist(world)) {
+                // If the ship is loaded, also let the physics thread know about this change.
+                ValkyrienUtils.getPhysoManagingBlock(world, pos).ifPresent(physo -> physo.onSetBlockState(pos, currentState, newState));
+                if (!shipDataOptional.isPresent()) {
+                    // A block in the world changed, wake up the ships that could be resting on it.
+                    ValkyrienUtils.onTerrainBlockChanged(world, pos);
+                }
+            }
         }
     }
 
@@ -451,6 +451,11 @@ public abstract class MixinWorld implements IWorldVS, IHasShipManager {
         return manager;
     }
 
+    @Override
+    public boolean hasManager() {
+        return manager != null;
+    }
+
     @Override
     public void setManager(Function<World, IPhysObjectWorld> managerSupplier) {
         manager = managerSupplier.apply(World.class.cast(this));
@@ -8,9 +8,12 @@ import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Overwrite;
 import org.spongepowered.asm.mixin.Shadow;
+import org.valkyrienskies.mod.common.collision.FluidPropertiesRegistry;
 import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
 import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
-import org.valkyrienskies.mod.common.util.datastructures.SimpleBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.PackedTerrainOctrees;
+
+import java.util.Arrays;
 
 @Mixin(BlockStateContainer.class)
 public class MixinBlockStateContainer implements ITerrainOctreeProvider {
@@ -18,13 +21,21 @@ public class MixinBlockStateContainer implements ITerrainOctreeProvider {
     @Shadow
     @Final
     public static IBlockState AIR_BLOCK_STATE;
-    private final IBitOctree solidOctree = new SimpleBitOctree();
-    private final IBitOctree liquidOctree = new SimpleBitOctree();
+    private final PackedTerrainOctrees octrees = new PackedTerrainOctrees();
+    private volatile int solidModificationCount = 0;
+    // The highest liquid block of every column of this section, by z << 4 | x. Null until the section has liquid.
+    // Volatile so the physics thread, which reads it without locking, sees the array filled once it sees it at all.
+    private volatile byte[] liquidTops = null;
     @Shadow
     public IBlockStatePalette palette;
     @Shadow
     public BitArray storage;
 
+    @Shadow
+    public IBlockState get(int x, int y, int z) {
+        return null;
+    }
+
     /**
      * @author thebest108
      */
@@ -41,18 +52,62 @@ public class MixinBlockStateContainer implements ITerrainOctreeProvider {
         final int z = (index & 0xF0) >> 4;
         final int y = (index & 0xF00) >> 8;
         final boolean isStateSolid = state.getMaterial().isSolid();
-        solidOctree.set(x & 15, y & 15, z & 15, isStateSolid);
         final boolean isStateLiquid = state.getMaterial().isLiquid();
-        liquidOctree.set(x & 15, y & 15, z & 15, isStateLiquid);
+        if (octrees.set(x, y, z, isStateSolid, isStateLiquid)) {
+            solidModificationCount++;
+        }
+        updateLiquidTop(x, y, z, isStateLiquid);
+    }
+
+    private void updateLiquidTop(int x, int y, int z, boolean isStateLiquid) {
+        byte[] liquidTops = this.liquidTops;
+        if (liquidTops == null) {
+            if (!isStateLiquid) {
+                return;
+            }
+            // Fill it before the volatile write publishes it.
+            liquidTops = new byte[256];
+            Arrays.fill(liquidTops, (byte) -1);
+            this.liquidTops = liquidTops;
+        }
+        final int column = z << 4 | x;
+        if (isStateLiquid) {
+            if (y > liquidTops[column]) {
+                liquidTops[column] = (byte) y;
+            }
+        } else if (y == liquidTops[column]) {
+            // The top liquid block is gone, look for the next one down
+            int top = y - 1;
+            while (top >= 0 && !octrees.isLiquid(x, top, z)) {
+                top--;
+            }
+            liquidTops[column] = (byte) top;
+        }
     }
 
     @Override
     public IBitOctree getSolidOctree() {
-        return solidOctree;
+        return octrees.getSolidOctree();
     }
 
     @Override
     public IBitOctree getLiquidOctree() {
-        return liquidOctree;
+        return octrees.getLiquidOctree();
+    }
+
+    @Override
+    public int getSolidModificationCount() {
+        return solidModificationCount;
+    }
+
+    @Override
+    public int getLiquidTop(int x, int z) {
+        final byte[] liquidTops = this.liquidTops;
+        return liquidTops != null ? liquidTops[z << 4 | x] : -1;
+    }
+
+    @Override
+    public int getFluidType(int x, int y, int z) {
+        return FluidPropertiesRegistry.getFluidType(get(x, y, z));
     }
 }
\ No newline at end of file
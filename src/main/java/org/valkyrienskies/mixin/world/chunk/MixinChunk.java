@@ -71,6 +71,12 @@ public abstract class MixinChunk {
                 QueryableShipData queryableShipData = QueryableShipData.get(world);
                 Optional<ShipData> shipDataOptional = queryableShipData.getShipFromChunk(pos.getX() >> 4, pos.getZ() >> 4);
                 shipDataOptional.ifPresent(shipData -> ShipDataMethods.onSetBlockState(shipData, pos, oldState, state));
+                // If the ship is loaded, also let the physics thread know about this change.
+                ValkyrienUtils.getPhysoManagingBlock(world, pos).ifPresent(physo -> physo.onSetBlockState(pos, oldState, state));
+                if (!shipDataOptional.isPresent()) {
+                    // A block in the world changed, wake up the ships that could be resting on it.
+                    ValkyrienUtils.onTerrainBlockChanged(world, pos);
+                }
             }
         }
     }
@@ -234,6 +234,7 @@ public class EventsCommon {
             Optional<PhysicsObject> optionalPhysicsObject = ValkyrienUtils.getPhysoManagingBlock(event.getWorld(),
                     new BlockPos(event.getExplosion().getPosition()));
             if (optionalPhysicsObject.isPresent()) {
+                optionalPhysicsObject.get().wakeUp();
                 return;
             }
             // Explosion radius
@@ -246,6 +247,7 @@ public class EventsCommon {
                     .getPhysObjectsInAABB(toCheck);
             // Process the explosion on the nearby ships
             for (PhysicsObject ship : shipsNear) {
+                ship.wakeUp();
                 Vector3d inLocal = new Vector3d(center);
                 inLocal.mulPosition(ship.getShipTransform().getGlobalToSubspace());
 
@@ -27,7 +27,9 @@ import net.minecraftforge.fml.common.event.FMLFingerprintViolationEvent;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLServerAboutToStartEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import net.minecraftforge.fml.common.event.FMLStateEvent;
 import net.minecraftforge.fml.common.network.NetworkRegistry;
 import net.minecraftforge.fml.common.network.simpleimpl.SimpleNetworkWrapper;
@@ -60,6 +62,7 @@ import org.valkyrienskies.mod.common.tileentity.TileEntityBoatChair;
 import org.valkyrienskies.mod.common.tileentity.TileEntityCaptainsChair;
 import org.valkyrienskies.mod.common.tileentity.TileEntityPassengerChair;
 import org.valkyrienskies.mod.common.tileentity.TileEntityWaterPump;
+import org.valkyrienskies.mod.common.util.multithreaded.VSPhysicsScheduler;
 import org.valkyrienskies.mod.fixes.darkness_lib_fix.VSDarknessLibAPILightProvider;
 import org.valkyrienskies.mod.proxy.CommonProxy;
 import valkyrienwarfare.api.IPhysicsEntityManager;
@@ -104,6 +107,12 @@ public class ValkyrienSkiesMod {
     @Getter
     private static ForkJoinPool physicsThreadPool = null;
 
+    /**
+     * This runs the physics ticks of every world. Only exists while a server is running, every server gets its own.
+     */
+    @Getter
+    private static VSPhysicsScheduler physicsScheduler = null;
+
     public Block captainsChair;
     public Block passengerChair;
     public Block waterPump;
@@ -203,12 +212,29 @@ public class ValkyrienSkiesMod {
         proxy.postInit(event);
     }
 
+    @EventHandler
+    public void serverAboutToStart(FMLServerAboutToStartEvent event) {
+        // Before any world loads, the ship manager of every world schedules its physics loop on this.
+        log.debug("Starting the physics scheduler.");
+        ValkyrienSkiesMod.physicsScheduler = new VSPhysicsScheduler(VSConfig.physicsSchedulerThreadCount);
+    }
+
     @EventHandler
     public void serverStart(FMLServerStartingEvent event) {
         MinecraftServer server = event.getServer();
         VSCommandRegistry.registerCommands(server);
     }
 
+    @EventHandler
+    public void serverStopping(FMLServerStoppingEvent event) {
+        // The integrated server can be started again in the same game, which makes a new scheduler.
+        log.debug("Stopping the physics scheduler.");
+        if (physicsScheduler != null) {
+            physicsScheduler.shutdown();
+            physicsScheduler = null;
+        }
+    }
+
     private void registerNetworks(FMLStateEvent event) {
         physWrapperNetwork = NetworkRegistry.INSTANCE.newSimpleChannel("valkyrien_skies");
         physWrapperNetwork.registerMessage(ShipIndexDataMessageHandler.class,
@@ -0,0 +1,428 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.TByteList;
+import gnu.trove.list.TIntList;
+import gnu.trove.map.hash.TIntByteHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import lombok.Getter;
+import net.minecraft.util.math.BlockPos;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+
+import javax.annotation.Nullable;
+
+/**
+ * The solid world blocks inside the swept bounding box of a ship, which are the blocks the ship could collide with.
+ * The blocks are stored as {@link SpatialDetector} hashes relative to {@link #getCenter()}, together with the mask of
+ * their faces that aren't covered by another solid block (see {@link #EXPOSED_X_UP} and friends). Blocks without any
+ * exposed face can't be touched, so they aren't candidates at all.
+ * <p>
+ * Instead of scanning the whole box on every update, only the slabs of blocks that entered or left the box since the
+ * last update are scanned. Chunk sections whose solid blocks changed since they were scanned are scanned again,
+ * together with the blocks right next to them, because the exposed faces of those depend on the section too. So
+ * when a ship moves over terrain that doesn't change, an update costs about as much as the ship moved, no matter how
+ * big the ship is.
+ * <p>
+ * The blocks of every section come from the {@link TerrainCollisionIndex} of the world, so ships near each other
+ * share the work of scanning the sections they both overlap. Only the faces on the border of a section are checked
+ * by every ship, because those depend on the next section over.
+ * <p>
+ * Not thread safe, only used by the physics thread.
+ */
+public class CollisionCandidateCache {
+
+    // The bits of the exposed face masks, set if the neighbour in that direction isn't solid.
+    public static final int EXPOSED_X_UP = 1;
+    public static final int EXPOSED_X_DOWN = 1 << 1;
+    public static final int EXPOSED_Y_UP = 1 << 2;
+    public static final int EXPOSED_Y_DOWN = 1 << 3;
+    public static final int EXPOSED_Z_UP = 1 << 4;
+    public static final int EXPOSED_Z_DOWN = 1 << 5;
+
+    // Recenter once the box gets this close to the edge of the range the SpatialDetector hashes can represent.
+    private static final int MAX_DISTANCE_FROM_CENTER = SpatialDetector.maxRangeHalved - 32;
+
+    // Maps the hash of every candidate to its exposed faces.
+    private final TIntByteHashMap candidates;
+    // Where the solid blocks of the sections come from, shared with the other ships of the world.
+    private final TerrainCollisionIndex terrainIndex;
+    // The chunk sections the box overlaps (grown by 1 block), as they were when their blocks got scanned.
+    private TLongObjectHashMap<SectionStamp> sectionStamps;
+    private TLongObjectHashMap<SectionStamp> nextSectionStamps;
+    @Getter
+    private BlockPos center;
+    private boolean hasBox;
+    // The current box, all inclusive.
+    private int minX, minY, minZ, maxX, maxY, maxZ;
+    // The number of blocks in the parts of the box the last update() scanned, for debugging.
+    @Getter
+    private int blocksScanned;
+    private SectionSource sectionSource;
+
+    /**
+     * Creates a cache with its own terrain collision index, that isn't shared with anything.
+     */
+    public CollisionCandidateCache() {
+        this(new TerrainCollisionIndex());
+    }
+
+    /**
+     * @param terrainIndex The index of the world, this cache holds a reference to every section its box overlaps
+     *                     until it's cleared.
+     */
+    public CollisionCandidateCache(TerrainCollisionIndex terrainIndex) {
+        this.candidates = new TIntByteHashMap();
+        this.terrainIndex = terrainIndex;
+        this.sectionStamps = new TLongObjectHashMap<>();
+        this.nextSectionStamps = new TLongObjectHashMap<>();
+        this.center = null;
+        this.hasBox = false;
+        this.blocksScanned = 0;
+    }
+
+    /**
+     * Moves the box to the given bounds (all inclusive), and updates the candidates to match.
+     *
+     * @param sectionSource Where to get the chunk sections from.
+     */
+    public void update(SectionSource sectionSource, int newMinX, int newMinY, int newMinZ, int newMaxX, int newMaxY,
+                       int newMaxZ) {
+        this.sectionSource = sectionSource;
+        this.blocksScanned = 0;
+        newMinY = Math.max(newMinY, 0);
+        newMaxY = Math.min(newMaxY, 255);
+
+        if (newMinY > newMaxY || newMinX > newMaxX || newMinZ > newMaxZ) {
+            // The box is outside of the world.
+            clear();
+            return;
+        }
+
+        final boolean mustRebuild = !hasBox || center == null
+            || Math.max(Math.abs(newMinX - center.getX()), Math.abs(newMaxX - center.getX())) > MAX_DISTANCE_FROM_CENTER
+            || Math.max(Math.abs(newMinZ - center.getZ()), Math.abs(newMaxZ - center.getZ())) > MAX_DISTANCE_FROM_CENTER
+            || newMinX > maxX || newMaxX < minX || newMinY > maxY || newMaxY < minY || newMinZ > maxZ || newMaxZ < minZ;
+
+        if (mustRebuild) {
+            candidates.clear();
+            center = new BlockPos((newMinX + newMaxX) / 2, (newMinY + newMaxY) / 2, (newMinZ + newMaxZ) / 2);
+            setBox(newMinX, newMinY, newMinZ, newMaxX, newMaxY, newMaxZ);
+            readSectionStamps();
+            forEachBlockIn(minX, minY, minZ, maxX, maxY, maxZ, true);
+            swapSectionStamps();
+            return;
+        }
+
+        final int oldMinX = minX, oldMinY = minY, oldMinZ = minZ, oldMaxX = maxX, oldMaxY = maxY, oldMaxZ = maxZ;
+        setBox(newMinX, newMinY, newMinZ, newMaxX, newMaxY, newMaxZ);
+        // Read the sections before scanning them, so changes made while we scan get picked up by the next update.
+        readSectionStamps();
+
+        // Forget the blocks of the sections that changed since we scanned them. Sections that weren't in the box
+        // before don't need this, their part of the new box gets scanned below anyways.
+        sectionStamps.forEachEntry((key, oldStamp) -> {
+            final SectionStamp newStamp = nextSectionStamps.get(key);
+            if (newStamp != null && !newStamp.isSameAs(oldStamp)) {
+                newStamp.changed = true;
+                forEachBlockNearSection(key, oldMinX, oldMinY, oldMinZ, oldMaxX, oldMaxY, oldMaxZ, false);
+            }
+            return true;
+        });
+
+        // Forget the blocks that left the box, and scan the blocks that entered it.
+        forEachBlockInDifference(oldMinX, oldMinY, oldMinZ, oldMaxX, oldMaxY, oldMaxZ,
+            newMinX, newMinY, newMinZ, newMaxX, newMaxY, newMaxZ, false);
+        forEachBlockInDifference(newMinX, newMinY, newMinZ, newMaxX, newMaxY, newMaxZ,
+            oldMinX, oldMinY, oldMinZ, oldMaxX, oldMaxY, oldMaxZ, true);
+
+        // Then scan the part of the changed sections that was in the box before, and still is.
+        final int keepMinX = Math.max(oldMinX, newMinX), keepMinY = Math.max(oldMinY, newMinY);
+        final int keepMinZ = Math.max(oldMinZ, newMinZ), keepMaxX = Math.min(oldMaxX, newMaxX);
+        final int keepMaxY = Math.min(oldMaxY, newMaxY), keepMaxZ = Math.min(oldMaxZ, newMaxZ);
+        nextSectionStamps.forEachEntry((key, stamp) -> {
+            if (stamp.changed) {
+                stamp.changed = false;
+                forEachBlockNearSection(key, keepMinX, keepMinY, keepMinZ, keepMaxX, keepMaxY, keepMaxZ, true);
+            }
+            return true;
+        });
+
+        swapSectionStamps();
+    }
+
+    /**
+     * Forgets all the candidates, the next update will scan the whole box. Also lets go of the sections of the
+     * terrain collision index, so call this once the cache isn't needed anymore.
+     */
+    public void clear() {
+        candidates.clear();
+        sectionStamps.forEachKey(key -> {
+            terrainIndex.release(key);
+            return true;
+        });
+        sectionStamps.clear();
+        hasBox = false;
+    }
+
+    /**
+     * Replaces the contents of the outputs with the candidates, and their exposed faces at the same index.
+     */
+    public void copyCandidatesTo(TIntList outputHashes, TByteList outputExposedFaces) {
+        outputHashes.clear();
+        outputExposedFaces.clear();
+        candidates.forEachEntry((hash, exposedFaces) -> {
+            outputHashes.add(hash);
+            outputExposedFaces.add(exposedFaces);
+            return true;
+        });
+    }
+
+    public int size() {
+        return candidates.size();
+    }
+
+    private void setBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.hasBox = true;
+    }
+
+    /**
+     * Fills nextSectionStamps with the current state of every section the box, grown by 1 block, overlaps. Takes a
+     * reference to the sections that weren't in sectionStamps yet.
+     */
+    private void readSectionStamps() {
+        nextSectionStamps.clear();
+        final int minSectionY = Math.max(minY - 1, 0) >> 4, maxSectionY = Math.min(maxY + 1, 255) >> 4;
+        for (int sectionX = (minX - 1) >> 4; sectionX <= (maxX + 1) >> 4; sectionX++) {
+            for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                for (int sectionZ = (minZ - 1) >> 4; sectionZ <= (maxZ + 1) >> 4; sectionZ++) {
+                    final long key = getSectionKey(sectionX, sectionY, sectionZ);
+                    final ITerrainOctreeProvider section = sectionSource.getSection(sectionX, sectionY, sectionZ);
+                    nextSectionStamps.put(key, new SectionStamp(section,
+                        section != null ? section.getSolidModificationCount() : 0));
+                    if (!sectionStamps.containsKey(key)) {
+                        terrainIndex.acquire(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces sectionStamps with nextSectionStamps, and lets go of the sections the box left.
+     */
+    private void swapSectionStamps() {
+        sectionStamps.forEachKey(key -> {
+            if (!nextSectionStamps.containsKey(key)) {
+                terrainIndex.release(key);
+            }
+            return true;
+        });
+        final TLongObjectHashMap<SectionStamp> temp = sectionStamps;
+        sectionStamps = nextSectionStamps;
+        nextSectionStamps = temp;
+        nextSectionStamps.clear();
+    }
+
+    /**
+     * Runs forEachBlockIn() on the blocks in a minus the blocks in b, by splitting it into up to 6 boxes.
+     */
+    private void forEachBlockInDifference(int aMinX, int aMinY, int aMinZ, int aMaxX, int aMaxY, int aMaxZ,
+                                          int bMinX, int bMinY, int bMinZ, int bMaxX, int bMaxY, int bMaxZ,
+                                          boolean add) {
+        // Slabs along x, they span all of a in y and z.
+        if (aMinX < bMinX) {
+            forEachBlockIn(aMinX, aMinY, aMinZ, Math.min(aMaxX, bMinX - 1), aMaxY, aMaxZ, add);
+        }
+        if (aMaxX > bMaxX) {
+            forEachBlockIn(Math.max(aMinX, bMaxX + 1), aMinY, aMinZ, aMaxX, aMaxY, aMaxZ, add);
+        }
+        final int midMinX = Math.max(aMinX, bMinX), midMaxX = Math.min(aMaxX, bMaxX);
+        if (midMinX > midMaxX) {
+            return;
+        }
+        // Slabs along y, within the x range of b.
+        if (aMinY < bMinY) {
+            forEachBlockIn(midMinX, aMinY, aMinZ, midMaxX, Math.min(aMaxY, bMinY - 1), aMaxZ, add);
+        }
+        if (aMaxY > bMaxY) {
+            forEachBlockIn(midMinX, Math.max(aMinY, bMaxY + 1), aMinZ, midMaxX, aMaxY, aMaxZ, add);
+        }
+        final int midMinY = Math.max(aMinY, bMinY), midMaxY = Math.min(aMaxY, bMaxY);
+        if (midMinY > midMaxY) {
+            return;
+        }
+        // Slabs along z, within the x and y range of b.
+        if (aMinZ < bMinZ) {
+            forEachBlockIn(midMinX, midMinY, aMinZ, midMaxX, midMaxY, Math.min(aMaxZ, bMinZ - 1), add);
+        }
+        if (aMaxZ > bMaxZ) {
+            forEachBlockIn(midMinX, midMinY, Math.max(aMinZ, bMaxZ + 1), midMaxX, midMaxY, aMaxZ, add);
+        }
+    }
+
+    /**
+     * Runs forEachBlockIn() on the part of the given box inside the section with the given key, grown by 1 block.
+     */
+    private void forEachBlockNearSection(long sectionKey, int boxMinX, int boxMinY, int boxMinZ, int boxMaxX,
+                                         int boxMaxY, int boxMaxZ, boolean add) {
+        final int sectionX = getSectionX(sectionKey), sectionY = getSectionY(sectionKey);
+        final int sectionZ = getSectionZ(sectionKey);
+        forEachBlockIn(Math.max(boxMinX, (sectionX << 4) - 1), Math.max(boxMinY, (sectionY << 4) - 1),
+            Math.max(boxMinZ, (sectionZ << 4) - 1), Math.min(boxMaxX, (sectionX << 4) + 16),
+            Math.min(boxMaxY, (sectionY << 4) + 16), Math.min(boxMaxZ, (sectionZ << 4) + 16), add);
+    }
+
+    /**
+     * If add is true, adds the solid blocks with exposed faces in the given box (all inclusive) to the candidates.
+     * Otherwise removes all the blocks in the given box from the candidates.
+     */
+    private void forEachBlockIn(int boxMinX, int boxMinY, int boxMinZ, int boxMaxX, int boxMaxY, int boxMaxZ,
+                                boolean add) {
+        if (boxMinX > boxMaxX || boxMinY > boxMaxY || boxMinZ > boxMaxZ) {
+            return;
+        }
+        for (int sectionX = boxMinX >> 4; sectionX <= boxMaxX >> 4; sectionX++) {
+            for (int sectionY = boxMinY >> 4; sectionY <= boxMaxY >> 4; sectionY++) {
+                for (int sectionZ = boxMinZ >> 4; sectionZ <= boxMaxZ >> 4; sectionZ++) {
+                    final int startX = Math.max(boxMinX, sectionX << 4), endX = Math.min(boxMaxX, (sectionX << 4) + 15);
+                    final int startY = Math.max(boxMinY, sectionY << 4), endY = Math.min(boxMaxY, (sectionY << 4) + 15);
+                    final int startZ = Math.max(boxMinZ, sectionZ << 4), endZ = Math.min(boxMaxZ, (sectionZ << 4) + 15);
+                    if (add) {
+                        final ITerrainOctreeProvider section = sectionSource.getSection(sectionX, sectionY, sectionZ);
+                        if (section != null) {
+                            addSolidBlocks(terrainIndex.getSectionBlocks(
+                                getSectionKey(sectionX, sectionY, sectionZ), section), startX, startY, startZ, endX,
+                                endY, endZ);
+                        }
+                    } else {
+                        removeBlocks(startX, startY, startZ, endX, endY, endZ);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addSolidBlocks(TerrainCollisionIndex.SectionBlocks blocks, int startX, int startY, int startZ,
+                                int endX, int endY, int endZ) {
+        final int sectionX = startX & ~15, sectionY = startY & ~15, sectionZ = startZ & ~15;
+        final int minX = startX & 15, minY = startY & 15, minZ = startZ & 15;
+        final int maxX = endX & 15, maxY = endY & 15, maxZ = endZ & 15;
+        for (int i = 0; i < blocks.size(); i++) {
+            final int x = blocks.getX(i), y = blocks.getY(i), z = blocks.getZ(i);
+            if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+                continue;
+            }
+            final int worldX = sectionX | x, worldY = sectionY | y, worldZ = sectionZ | z;
+            final int exposedFaces = blocks.getInnerExposedFaces(i)
+                | getBorderExposedFaces(worldX, worldY, worldZ, x, y, z);
+            if (exposedFaces != 0) {
+                candidates.put(SpatialDetector.getHashWithRespectTo(worldX, worldY, worldZ, center),
+                    (byte) exposedFaces);
+            }
+        }
+        blocksScanned += (endX - startX + 1) * (endY - startY + 1) * (endZ - startZ + 1);
+    }
+
+    /**
+     * @return The exposed faces of the block at worldX, worldY, worldZ that face the next section over. x, y and z are
+     * the position of the block inside of its section.
+     */
+    private int getBorderExposedFaces(int worldX, int worldY, int worldZ, int x, int y, int z) {
+        int exposedFaces = 0;
+        if (x == 15 && !isSolid(worldX + 1, worldY, worldZ)) {
+            exposedFaces |= EXPOSED_X_UP;
+        }
+        if (x == 0 && !isSolid(worldX - 1, worldY, worldZ)) {
+            exposedFaces |= EXPOSED_X_DOWN;
+        }
+        if (y == 15 && !isSolid(worldX, worldY + 1, worldZ)) {
+            exposedFaces |= EXPOSED_Y_UP;
+        }
+        if (y == 0 && !isSolid(worldX, worldY - 1, worldZ)) {
+            exposedFaces |= EXPOSED_Y_DOWN;
+        }
+        if (z == 15 && !isSolid(worldX, worldY, worldZ + 1)) {
+            exposedFaces |= EXPOSED_Z_UP;
+        }
+        if (z == 0 && !isSolid(worldX, worldY, worldZ - 1)) {
+            exposedFaces |= EXPOSED_Z_DOWN;
+        }
+        return exposedFaces;
+    }
+
+    private boolean isSolid(int worldX, int worldY, int worldZ) {
+        if (worldY < 0 || worldY > 255) {
+            return false;
+        }
+        final ITerrainOctreeProvider section = sectionSource.getSection(worldX >> 4, worldY >> 4, worldZ >> 4);
+        return section != null && section.getSolidOctree().get(worldX & 15, worldY & 15, worldZ & 15);
+    }
+
+    private void removeBlocks(int startX, int startY, int startZ, int endX, int endY, int endZ) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        for (int x = startX; x <= endX; x++) {
+            for (int y = startY; y <= endY; y++) {
+                for (int z = startZ; z <= endZ; z++) {
+                    candidates.remove(SpatialDetector.getHashWithRespectTo(x, y, z, center));
+                }
+            }
+        }
+    }
+
+    // Section y only goes from 0 to 15, section x and z get 28 bits each.
+    static long getSectionKey(int sectionX, int sectionY, int sectionZ) {
+        return ((long) (sectionX & 0xFFFFFFF) << 36) | ((long) (sectionZ & 0xFFFFFFF) << 8) | (sectionY & 0xFF);
+    }
+
+    private static int getSectionX(long key) {
+        return (int) (key >> 36) << 4 >> 4;
+    }
+
+    private static int getSectionY(long key) {
+        return (int) (key & 0xFF);
+    }
+
+    private static int getSectionZ(long key) {
+        return (int) ((key >> 8) & 0xFFFFFFF) << 4 >> 4;
+    }
+
+    /**
+     * Gives the cache access to the chunk sections of the world.
+     */
+    @FunctionalInterface
+    public interface SectionSource {
+
+        /**
+         * @return The section at the given section coordinates, or null if it's empty or not loaded.
+         */
+        @Nullable
+        ITerrainOctreeProvider getSection(int sectionX, int sectionY, int sectionZ);
+    }
+
+    private static final class SectionStamp {
+
+        @Nullable
+        private final ITerrainOctreeProvider section;
+        private final int solidModificationCount;
+        // True if this section changed since its blocks were scanned, only used during update().
+        private boolean changed;
+
+        SectionStamp(@Nullable ITerrainOctreeProvider section, int solidModificationCount) {
+            this.section = section;
+            this.solidModificationCount = solidModificationCount;
+            this.changed = false;
+        }
+
+        boolean isSameAs(SectionStamp other) {
+            return section == other.section && solidModificationCount == other.solidModificationCount;
+        }
+    }
+}
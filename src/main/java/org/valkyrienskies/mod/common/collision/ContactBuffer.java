@@ -0,0 +1,174 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.joml.Vector3dc;
+
+import java.util.Arrays;
+
+/**
+ * The potential contacts between world blocks and ship blocks found by one collision task, as parallel arrays of
+ * primitives. Block states are stored by their state id (see {@link net.minecraft.block.Block#getStateId}), and the
+ * world block also has its exposed faces (see {@link CollisionCandidateCache}). Every contact also stores the velocity
+ * change it asked for the last time it was resolved.
+ * <p>
+ * The arrays only grow, and {@link #clear()} keeps them, so a buffer that is reused every tick stops allocating once
+ * it is big enough.
+ */
+public class ContactBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] inWorldX, inWorldY, inWorldZ;
+    private int[] inLocalX, inLocalY, inLocalZ;
+    private int[] inWorldStateId, inLocalStateId;
+    private byte[] inWorldExposedFaces;
+    private double[] linearVelocityChangeX, linearVelocityChangeY, linearVelocityChangeZ;
+    private double[] angularVelocityChangeX, angularVelocityChangeY, angularVelocityChangeZ;
+    private int[] impulseCount;
+    private int size;
+
+    public ContactBuffer() {
+        this.inWorldX = new int[INITIAL_CAPACITY];
+        this.inWorldY = new int[INITIAL_CAPACITY];
+        this.inWorldZ = new int[INITIAL_CAPACITY];
+        this.inLocalX = new int[INITIAL_CAPACITY];
+        this.inLocalY = new int[INITIAL_CAPACITY];
+        this.inLocalZ = new int[INITIAL_CAPACITY];
+        this.inWorldStateId = new int[INITIAL_CAPACITY];
+        this.inLocalStateId = new int[INITIAL_CAPACITY];
+        this.inWorldExposedFaces = new byte[INITIAL_CAPACITY];
+        this.linearVelocityChangeX = new double[INITIAL_CAPACITY];
+        this.linearVelocityChangeY = new double[INITIAL_CAPACITY];
+        this.linearVelocityChangeZ = new double[INITIAL_CAPACITY];
+        this.angularVelocityChangeX = new double[INITIAL_CAPACITY];
+        this.angularVelocityChangeY = new double[INITIAL_CAPACITY];
+        this.angularVelocityChangeZ = new double[INITIAL_CAPACITY];
+        this.impulseCount = new int[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    public void add(int worldX, int worldY, int worldZ, int localX, int localY, int localZ, int worldStateId,
+                    int localStateId, int worldExposedFaces) {
+        if (size == inWorldX.length) {
+            grow();
+        }
+        inWorldX[size] = worldX;
+        inWorldY[size] = worldY;
+        inWorldZ[size] = worldZ;
+        inLocalX[size] = localX;
+        inLocalY[size] = localY;
+        inLocalZ[size] = localZ;
+        inWorldStateId[size] = worldStateId;
+        inLocalStateId[size] = localStateId;
+        inWorldExposedFaces[size] = (byte) worldExposedFaces;
+        impulseCount[size] = 0;
+        size++;
+    }
+
+    /**
+     * Stores the velocity change the contact at index asked for.
+     *
+     * @param impulseCount The number of impulses the velocity changes are the sum of.
+     */
+    public void setVelocityChange(int index, Vector3dc linearVelocityChange, Vector3dc angularVelocityChange,
+                                  int impulseCount) {
+        linearVelocityChangeX[index] = linearVelocityChange.x();
+        linearVelocityChangeY[index] = linearVelocityChange.y();
+        linearVelocityChangeZ[index] = linearVelocityChange.z();
+        angularVelocityChangeX[index] = angularVelocityChange.x();
+        angularVelocityChangeY[index] = angularVelocityChange.y();
+        angularVelocityChangeZ[index] = angularVelocityChange.z();
+        this.impulseCount[index] = impulseCount;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInWorldX(int index) {
+        return inWorldX[index];
+    }
+
+    public int getInWorldY(int index) {
+        return inWorldY[index];
+    }
+
+    public int getInWorldZ(int index) {
+        return inWorldZ[index];
+    }
+
+    public int getInLocalX(int index) {
+        return inLocalX[index];
+    }
+
+    public int getInLocalY(int index) {
+        return inLocalY[index];
+    }
+
+    public int getInLocalZ(int index) {
+        return inLocalZ[index];
+    }
+
+    public int getInWorldStateId(int index) {
+        return inWorldStateId[index];
+    }
+
+    public int getInLocalStateId(int index) {
+        return inLocalStateId[index];
+    }
+
+    public int getInWorldExposedFaces(int index) {
+        return inWorldExposedFaces[index];
+    }
+
+    public double getLinearVelocityChangeX(int index) {
+        return linearVelocityChangeX[index];
+    }
+
+    public double getLinearVelocityChangeY(int index) {
+        return linearVelocityChangeY[index];
+    }
+
+    public double getLinearVelocityChangeZ(int index) {
+        return linearVelocityChangeZ[index];
+    }
+
+    public double getAngularVelocityChangeX(int index) {
+        return angularVelocityChangeX[index];
+    }
+
+    public double getAngularVelocityChangeY(int index) {
+        return angularVelocityChangeY[index];
+    }
+
+    public double getAngularVelocityChangeZ(int index) {
+        return angularVelocityChangeZ[index];
+    }
+
+    public int getImpulseCount(int index) {
+        return impulseCount[index];
+    }
+
+    private void grow() {
+        final int newCapacity = inWorldX.length * 2;
+        inWorldX = Arrays.copyOf(inWorldX, newCapacity);
+        inWorldY = Arrays.copyOf(inWorldY, newCapacity);
+        inWorldZ = Arrays.copyOf(inWorldZ, newCapacity);
+        inLocalX = Arrays.copyOf(inLocalX, newCapacity);
+        inLocalY = Arrays.copyOf(inLocalY, newCapacity);
+        inLocalZ = Arrays.copyOf(inLocalZ, newCapacity);
+        inWorldStateId = Arrays.copyOf(inWorldStateId, newCapacity);
+        inLocalStateId = Arrays.copyOf(inLocalStateId, newCapacity);
+        inWorldExposedFaces = Arrays.copyOf(inWorldExposedFaces, newCapacity);
+        linearVelocityChangeX = Arrays.copyOf(linearVelocityChangeX, newCapacity);
+        linearVelocityChangeY = Arrays.copyOf(linearVelocityChangeY, newCapacity);
+        linearVelocityChangeZ = Arrays.copyOf(linearVelocityChangeZ, newCapacity);
+        angularVelocityChangeX = Arrays.copyOf(angularVelocityChangeX, newCapacity);
+        angularVelocityChangeY = Arrays.copyOf(angularVelocityChangeY, newCapacity);
+        angularVelocityChangeZ = Arrays.copyOf(angularVelocityChangeZ, newCapacity);
+        impulseCount = Arrays.copyOf(impulseCount, newCapacity);
+    }
+}
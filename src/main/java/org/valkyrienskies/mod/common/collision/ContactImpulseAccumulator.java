@@ -0,0 +1,42 @@
+package org.valkyrienskies.mod.common.collision;
+
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import org.joml.Vector3d;
+
+/**
+ * Everything one thread needs to resolve contacts of a {@link WorldPhysicsCollider}: the temp variables of the
+ * collision response, and the velocity changes the contacts it resolved asked for. Every leaf
+ * {@link ShipCollisionTask} owns one, so contacts can be resolved in parallel without sharing anything.
+ */
+class ContactImpulseAccumulator {
+
+    // Temp variables of handleActualCollision()
+    final double[] cornerXs = new double[8];
+    final double[] cornerYs = new double[8];
+    final double[] cornerZs = new double[8];
+    final Vector3d temp1 = new Vector3d();
+    final Vector3d temp2 = new Vector3d();
+    final Vector3d temp3 = new Vector3d();
+    // Temp variables of the collision response, separate from the ones above because those get passed in.
+    final Vector3d collisionInBody = new Vector3d();
+    final Vector3d collisionVelocity = new Vector3d();
+    final Vector3d impulseTemp0 = new Vector3d();
+    final Vector3d impulseTemp1 = new Vector3d();
+    final Vector3d frictionTemp0 = new Vector3d();
+    final Vector3d frictionTemp1 = new Vector3d();
+    final Vector3d frictionTemp2 = new Vector3d();
+    final Vector3d frictionTemp3 = new Vector3d();
+    final MutableBlockPos inWorldPos = new MutableBlockPos();
+    final MutableBlockPos inLocalPos = new MutableBlockPos();
+
+    // The sum of the velocity changes of every impulse since the last reset().
+    final Vector3d linearVelocityChange = new Vector3d();
+    final Vector3d angularVelocityChange = new Vector3d();
+    int impulseCount = 0;
+
+    void reset() {
+        linearVelocityChange.zero();
+        angularVelocityChange.zero();
+        impulseCount = 0;
+    }
+}
@@ -0,0 +1,49 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import valkyrienwarfare.api.TransformType;
+
+/**
+ * Adds the buoyancy and drag of the ship blocks deep in one fluid type, as found by {@link WaterHitFinder}, as a single
+ * submerged volume. The {@link WaterForcesTask}s of the ship skip those blocks.
+ */
+public class DeepBlocksBuoyancyTask implements IWaterForcesTask {
+
+    private final PhysicsObject parent;
+    private final int deepBlockCount;
+    // The average center of the deep blocks, in ship space.
+    private final Vector3dc deepBlockCenter;
+    private final FluidProperties fluid;
+    private final Vector3d addedForce, addedTorque;
+
+    public DeepBlocksBuoyancyTask(final PhysicsObject parent, final int deepBlockCount,
+                                  final Vector3dc deepBlockCenter, final FluidProperties fluid) {
+        this.parent = parent;
+        this.deepBlockCount = deepBlockCount;
+        this.deepBlockCenter = deepBlockCenter;
+        this.fluid = fluid;
+        this.addedForce = new Vector3d();
+        this.addedTorque = new Vector3d();
+    }
+
+    @Override
+    public void addForcesToShip() {
+        final PhysicsCalculations physicsEngine = parent.getPhysicsCalculations();
+        physicsEngine.addForceAndTorque(addedForce, addedTorque);
+    }
+
+    @Override
+    public Void call() {
+        final ShipTransform physicsTransform = parent.getShipTransformationManager().getCurrentPhysicsTransform();
+        final Vector3dc deepBlockPosRelativeToShipCenterInWorld = physicsTransform
+            .transformPositionNew(new Vector3d(deepBlockCenter), TransformType.SUBSPACE_TO_GLOBAL)
+            .sub(physicsTransform.getPosX(), physicsTransform.getPosY(), physicsTransform.getPosZ());
+        SectionBuoyancyTask.addSubmergedVolumeForces(deepBlockCount, deepBlockPosRelativeToShipCenterInWorld, fluid,
+            null, parent.getPhysicsCalculations(), addedForce, addedTorque, new Vector3d(), new Vector3d());
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package org.valkyrienskies.mod.common.collision;
+
+import lombok.Value;
+
+/**
+ * The physical properties of a fluid that ships float in. See {@link FluidPropertiesRegistry} for the properties of
+ * every fluid.
+ */
+@Value
+public class FluidProperties {
+
+    public static final FluidProperties WATER = new FluidProperties(1000, .3, 1);
+    public static final FluidProperties LAVA = new FluidProperties(3100, 1.5, .25);
+
+    // Density in kg/m^3
+    double density;
+    // Dimensionless constant. Higher values mean more damping force from the fluid.
+    double dragCoefficient;
+    // The speed, in m/s, of the current where the fluid flows at full strength. 0 ignores the flow of the fluid.
+    double flowSpeed;
+
+    public boolean hasCurrents() {
+        return flowSpeed > 0;
+    }
+}
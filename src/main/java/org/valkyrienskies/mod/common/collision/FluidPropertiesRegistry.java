@@ -0,0 +1,209 @@
+package org.valkyrienskies.mod.common.collision;
+
+import lombok.extern.log4j.Log4j2;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockLiquid;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.IBlockAccess;
+import net.minecraftforge.fluids.BlockFluidBase;
+import net.minecraftforge.fluids.Fluid;
+import net.minecraftforge.fluids.IFluidBlock;
+import org.joml.Vector3d;
+import org.valkyrienskies.mod.common.config.VSConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link FluidProperties} of the fluids ships float in. Every different set of properties is a fluid type, an index
+ * into {@link #getFluidProperties(int)}. The fluid type of every block state is computed up front into a table indexed
+ * by block state id, so finding the fluid type of a block is a single array read.
+ * <p>
+ * Properties are looked up by block first, then by the Forge fluid of the block. Forge fluids without properties of
+ * their own get properties made from their density and viscosity. Every other liquid is water, except for liquids made
+ * of lava.
+ */
+@Log4j2
+public class FluidPropertiesRegistry {
+
+    // The fluid type of water, and of any block state that isn't a liquid.
+    public static final int WATER_TYPE = 0;
+    // The viscosity of water in Forge fluid units.
+    private static final double VISCOSITY_OF_WATER = 1000;
+
+    private static final Map<Block, FluidProperties> blockToProperties = new ConcurrentHashMap<>();
+    private static final Map<Fluid, FluidProperties> fluidToProperties = new ConcurrentHashMap<>();
+    // Overrides from the config, by block.
+    private static final Map<Block, FluidProperties> configBlockToProperties = new ConcurrentHashMap<>();
+    // Rebuilt on the next lookup after the properties of any fluid change.
+    private static volatile FluidTypeTable table = null;
+
+    static {
+        registerBlock(Blocks.WATER, FluidProperties.WATER);
+        registerBlock(Blocks.FLOWING_WATER, FluidProperties.WATER);
+        registerBlock(Blocks.LAVA, FluidProperties.LAVA);
+        registerBlock(Blocks.FLOWING_LAVA, FluidProperties.LAVA);
+
+        VSConfig.registerSyncEvent(FluidPropertiesRegistry::onSync);
+        onSync();
+    }
+
+    /**
+     * This is called by {@link VSConfig#sync}
+     */
+    private static void onSync() {
+        configBlockToProperties.clear();
+        for (String entry : VSConfig.WATER_SETTINGS.fluidProperties) {
+            final String[] nameAndValues = entry.split("=");
+            final String[] values = nameAndValues.length == 2 ? nameAndValues[1].split(",") : new String[0];
+            final Block block = nameAndValues.length == 2 ? Block.getBlockFromName(nameAndValues[0].trim()) : null;
+            if (block == null || values.length != 3) {
+                log.warn("Ignoring invalid fluid properties: " + entry);
+                continue;
+            }
+            try {
+                configBlockToProperties.put(block, new FluidProperties(Double.parseDouble(values[0]),
+                    Double.parseDouble(values[1]), Double.parseDouble(values[2])));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid fluid properties: " + entry);
+            }
+        }
+        table = null;
+    }
+
+    /**
+     * Sets the properties of every liquid state of a block.
+     */
+    public static void registerBlock(Block block, FluidProperties properties) {
+        blockToProperties.put(block, properties);
+        table = null;
+    }
+
+    /**
+     * Sets the properties of every block of a Forge fluid that has no properties registered by block.
+     */
+    public static void registerFluid(Fluid fluid, FluidProperties properties) {
+        fluidToProperties.put(fluid, properties);
+        table = null;
+    }
+
+    /**
+     * @return The fluid type of the given block state, {@link #WATER_TYPE} if it isn't a liquid.
+     */
+    public static int getFluidType(IBlockState state) {
+        final int[] fluidTypeByStateId = getTable().fluidTypeByStateId;
+        final int stateId = Block.getStateId(state);
+        return stateId >= 0 && stateId < fluidTypeByStateId.length ? fluidTypeByStateId[stateId] : WATER_TYPE;
+    }
+
+    /**
+     * @return The properties of the given fluid type. Fluid types found before the properties of a fluid changed may
+     * be gone, those are water.
+     */
+    public static FluidProperties getFluidProperties(int fluidType) {
+        final FluidProperties[] properties = getTable().properties;
+        return fluidType < properties.length ? properties[fluidType] : FluidProperties.WATER;
+    }
+
+    /**
+     * Sets dest to the velocity of the current at pos, in m/s. Zero for fluids that ignore currents, or blocks that
+     * don't tell which way they flow.
+     */
+    public static Vector3d getCurrentVelocity(IBlockAccess world, BlockPos pos, IBlockState state,
+                                              FluidProperties properties, Vector3d dest) {
+        dest.zero();
+        if (!properties.hasCurrents()) {
+            return dest;
+        }
+        final Block block = state.getBlock();
+        final Vec3d flow;
+        if (block instanceof BlockLiquid) {
+            flow = ((BlockLiquid) block).getFlow(world, pos, state);
+        } else if (block instanceof BlockFluidBase) {
+            flow = ((BlockFluidBase) block).getFlowVector(world, pos);
+        } else {
+            return dest;
+        }
+        return dest.set(flow.x, flow.y, flow.z).mul(properties.getFlowSpeed());
+    }
+
+    private static FluidTypeTable getTable() {
+        FluidTypeTable current = table;
+        if (current == null) {
+            synchronized (FluidPropertiesRegistry.class) {
+                current = table;
+                if (current == null) {
+                    current = buildTable();
+                    table = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static FluidTypeTable buildTable() {
+        final List<FluidProperties> properties = new ArrayList<>();
+        final Map<FluidProperties, Integer> propertiesToType = new HashMap<>();
+        properties.add(FluidProperties.WATER);
+        propertiesToType.put(FluidProperties.WATER, WATER_TYPE);
+
+        int maxStateId = 0;
+        for (IBlockState state : Block.BLOCK_STATE_IDS) {
+            maxStateId = Math.max(maxStateId, Block.getStateId(state));
+        }
+        final int[] fluidTypeByStateId = new int[maxStateId + 1];
+        for (IBlockState state : Block.BLOCK_STATE_IDS) {
+            if (!state.getMaterial().isLiquid()) {
+                continue;
+            }
+            // Blocks with equal properties share a fluid type, so their buoyancy is computed together.
+            fluidTypeByStateId[Block.getStateId(state)] = propertiesToType.computeIfAbsent(
+                getPropertiesOfBlock(state), key -> {
+                    properties.add(key);
+                    return properties.size() - 1;
+                });
+        }
+        return new FluidTypeTable(fluidTypeByStateId, properties.toArray(new FluidProperties[0]));
+    }
+
+    private static FluidProperties getPropertiesOfBlock(IBlockState state) {
+        final Block block = state.getBlock();
+        if (configBlockToProperties.containsKey(block)) {
+            return configBlockToProperties.get(block);
+        } else if (blockToProperties.containsKey(block)) {
+            return blockToProperties.get(block);
+        } else if (block instanceof IFluidBlock && ((IFluidBlock) block).getFluid() != null) {
+            final Fluid fluid = ((IFluidBlock) block).getFluid();
+            if (fluidToProperties.containsKey(fluid)) {
+                return fluidToProperties.get(fluid);
+            }
+            // Thicker fluids damp more and flow slower.
+            final double relativeViscosity = Math.max(fluid.getViscosity(), 1) / VISCOSITY_OF_WATER;
+            return new FluidProperties(Math.max(fluid.getDensity(), 0),
+                FluidProperties.WATER.getDragCoefficient() * relativeViscosity,
+                FluidProperties.WATER.getFlowSpeed() / relativeViscosity);
+        } else if (state.getMaterial() == Material.LAVA) {
+            return FluidProperties.LAVA;
+        } else {
+            return FluidProperties.WATER;
+        }
+    }
+
+    private static class FluidTypeTable {
+
+        final int[] fluidTypeByStateId;
+        final FluidProperties[] properties;
+
+        FluidTypeTable(int[] fluidTypeByStateId, FluidProperties[] properties) {
+            this.fluidTypeByStateId = fluidTypeByStateId;
+            this.properties = properties;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.valkyrienskies.mod.common.collision;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Computes the water forces on part of a ship in parallel with the other tasks of the physics tick, then adds them to
+ * the ship once all the tasks are done.
+ */
+public interface IWaterForcesTask extends Callable<Void> {
+
+    /**
+     * Adds the computed force and torque to the parent ship, called on the ship's physics thread after call().
+     */
+    void addForcesToShip();
+}
@@ -0,0 +1,360 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.array.TIntArrayList;
+import lombok.Getter;
+import org.joml.Vector3d;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.VSIterationUtils;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.Arrays;
+
+/**
+ * Finds how much of one 16x16x16 section of a ship is under each fluid type (see {@link FluidPropertiesRegistry}), and
+ * the center of the part that is, so the buoyancy of the whole section can be applied as a single force per fluid.
+ * <p>
+ * A section whose bounding box in the world only overlaps world sections full of liquid, with the same fluid at all of
+ * its corners, is fully wet, and one that only overlaps world sections without any liquid is fully dry. Neither looks
+ * at a single block: a wet section displaces all of its solid blocks, with their center cached until the section
+ * changes. Only sections on the waterline look at their blocks, every solid block is treated as an upright 1x1x1 cube
+ * at its center, and the part of it inside of liquid blocks displaces the fluid of those blocks.
+ * <p>
+ * Not thread safe.
+ */
+public class SectionBuoyancy {
+
+    private static final int INITIAL_CAPACITY = 256;
+    // How much of a section is in liquid, see getWetness().
+    private static final int DRY = 0;
+    private static final int WATERLINE = 1;
+    private static final int WET = 2;
+
+    // The corners of the section, in ship space until they're transformed to global.
+    private final double[] cornerXs, cornerYs, cornerZs;
+    // The centers of the solid blocks of a waterline section, in ship space until they're transformed to global.
+    private double[] xs, ys, zs;
+    private int count;
+    private int blockBaseX, blockBaseY, blockBaseZ;
+    // Reused for every block, so collecting the blocks doesn't allocate a lambda per block.
+    private final VSIterationUtils.IntTernaryConsumer blockCollector = this::collectBlock;
+    // The section getFluidTypeAt() looked up last, the blocks of a ship section are mostly in the same world section.
+    private int lastSectionX, lastSectionY, lastSectionZ;
+    private ITerrainOctreeProvider lastSection;
+    private boolean hasLastSection;
+    // Temp variable
+    private final Vector3d center;
+
+    // The submerged volume of the last section computed, and its sum of volume times position in global space.
+    @Getter
+    private double submergedVolume;
+    private double submergedMomentX, submergedMomentY, submergedMomentZ;
+    // The same, split by fluid type. Indexed by fluid type, only the fluid types in submergedFluidTypes are valid.
+    private double[] fluidVolumes, fluidMomentXs, fluidMomentYs, fluidMomentZs;
+    private final TIntArrayList submergedFluidTypes;
+    // The number of blocks the last section computed had to look at, 0 unless it was on the waterline.
+    @Getter
+    private int blocksSampled;
+
+    public SectionBuoyancy() {
+        this.cornerXs = new double[8];
+        this.cornerYs = new double[8];
+        this.cornerZs = new double[8];
+        this.xs = new double[INITIAL_CAPACITY];
+        this.ys = new double[INITIAL_CAPACITY];
+        this.zs = new double[INITIAL_CAPACITY];
+        this.count = 0;
+        this.center = new Vector3d();
+        this.fluidVolumes = new double[1];
+        this.fluidMomentXs = new double[1];
+        this.fluidMomentYs = new double[1];
+        this.fluidMomentZs = new double[1];
+        this.submergedFluidTypes = new TIntArrayList();
+    }
+
+    /**
+     * Computes the submerged volume of the given ship section, see {@link #getSubmergedVolume()},
+     * {@link #getSubmergedCenter(Vector3d)} and the same split by fluid type, from {@link #getSubmergedFluidCount()}.
+     *
+     * @param transform Where the ship is.
+     * @param world     The world sections the liquid blocks come from.
+     */
+    public void compute(ShipSection section, ShipTransform transform, CollisionCandidateCache.SectionSource world) {
+        submergedVolume = 0;
+        submergedMomentX = 0;
+        submergedMomentY = 0;
+        submergedMomentZ = 0;
+        submergedFluidTypes.resetQuick();
+        blocksSampled = 0;
+        final IBitOctree solidOctree = section.getProvider().getSolidOctree();
+        if (solidOctree.getSetBitCount() == 0) {
+            return;
+        }
+
+        // The bounding box of the section in the world
+        final int minX = section.getSectionX() << 4;
+        final int minY = section.getSectionY() << 4;
+        final int minZ = section.getSectionZ() << 4;
+        for (int i = 0; i < 8; i++) {
+            cornerXs[i] = minX + ((i & 1) << 4);
+            cornerYs[i] = minY + ((i & 2) << 3);
+            cornerZs[i] = minZ + ((i & 4) << 2);
+        }
+        transform.transformPositions(cornerXs, cornerYs, cornerZs, 0, 8, TransformType.SUBSPACE_TO_GLOBAL);
+        double worldMinX = cornerXs[0], worldMinY = cornerYs[0], worldMinZ = cornerZs[0];
+        double worldMaxX = worldMinX, worldMaxY = worldMinY, worldMaxZ = worldMinZ;
+        for (int i = 1; i < 8; i++) {
+            worldMinX = Math.min(worldMinX, cornerXs[i]);
+            worldMinY = Math.min(worldMinY, cornerYs[i]);
+            worldMinZ = Math.min(worldMinZ, cornerZs[i]);
+            worldMaxX = Math.max(worldMaxX, cornerXs[i]);
+            worldMaxY = Math.max(worldMaxY, cornerYs[i]);
+            worldMaxZ = Math.max(worldMaxZ, cornerZs[i]);
+        }
+
+        final int wetness = getWetness((int) Math.floor(worldMinX), (int) Math.floor(worldMinY),
+            (int) Math.floor(worldMinZ), (int) Math.floor(worldMaxX), (int) Math.floor(worldMaxY),
+            (int) Math.floor(worldMaxZ), world);
+        if (wetness == DRY) {
+            return;
+        }
+        final int wetFluidType = wetness == WET ? getCornerFluidType(world) : -1;
+        if (wetFluidType != -1) {
+            section.updateMassProperties();
+            center.set(section.centerX, section.centerY, section.centerZ);
+            transform.transformPosition(center, TransformType.SUBSPACE_TO_GLOBAL);
+            addSubmergedVolume(wetFluidType, section.blockCount, center.x, center.y, center.z);
+            return;
+        }
+
+        // On the waterline, look at every block
+        count = 0;
+        blockBaseX = minX;
+        blockBaseY = minY;
+        blockBaseZ = minZ;
+        solidOctree.forEachSetBitInRange(0, 0, 0, 15, 15, 15, blockCollector);
+        transform.transformPositions(xs, ys, zs, 0, count, TransformType.SUBSPACE_TO_GLOBAL);
+        hasLastSection = false;
+        for (int i = 0; i < count; i++) {
+            addSubmergedPart(xs[i], ys[i], zs[i], world);
+        }
+        // Don't keep the world's sections alive.
+        lastSection = null;
+        blocksSampled = count;
+    }
+
+    /**
+     * @return The center of the submerged part of the last section computed, in global space. Only meaningful if
+     * {@link #getSubmergedVolume()} is more than 0.
+     */
+    public Vector3d getSubmergedCenter(Vector3d dest) {
+        return dest.set(submergedMomentX, submergedMomentY, submergedMomentZ).div(submergedVolume);
+    }
+
+    /**
+     * @return The number of fluid types the last section computed is submerged in.
+     */
+    public int getSubmergedFluidCount() {
+        return submergedFluidTypes.size();
+    }
+
+    /**
+     * @param index From 0 to {@link #getSubmergedFluidCount()} (exclusive).
+     * @return The index-th fluid type the last section computed is submerged in.
+     */
+    public int getSubmergedFluidType(int index) {
+        return submergedFluidTypes.get(index);
+    }
+
+    /**
+     * @return The volume of the last section computed that's submerged in the given fluid type.
+     */
+    public double getSubmergedVolume(int fluidType) {
+        return fluidType < fluidVolumes.length ? fluidVolumes[fluidType] : 0;
+    }
+
+    /**
+     * @return The center of the part of the last section computed that's submerged in the given fluid type, in global
+     * space. Only meaningful if {@link #getSubmergedVolume(int)} is more than 0.
+     */
+    public Vector3d getSubmergedCenter(int fluidType, Vector3d dest) {
+        return dest.set(fluidMomentXs[fluidType], fluidMomentYs[fluidType], fluidMomentZs[fluidType])
+            .div(fluidVolumes[fluidType]);
+    }
+
+    /**
+     * @return {@link #WET} if every world section the box (all inclusive) overlaps is full of liquid, {@link #DRY} if
+     * none of them has any liquid, and {@link #WATERLINE} otherwise.
+     */
+    private static int getWetness(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                                  CollisionCandidateCache.SectionSource world) {
+        boolean anyLiquid = false;
+        // There is no liquid outside of the world.
+        boolean allLiquid = minY >= 0 && maxY <= 255;
+        for (int sectionX = minX >> 4; sectionX <= maxX >> 4; sectionX++) {
+            for (int sectionZ = minZ >> 4; sectionZ <= maxZ >> 4; sectionZ++) {
+                for (int sectionY = Math.max(minY, 0) >> 4; sectionY <= Math.min(maxY, 255) >> 4; sectionY++) {
+                    final ITerrainOctreeProvider section = world.getSection(sectionX, sectionY, sectionZ);
+                    final int liquidBlocks = section != null ? section.getLiquidOctree().getSetBitCount() : 0;
+                    anyLiquid |= liquidBlocks != 0;
+                    allLiquid &= liquidBlocks == IBitOctree.BLOCKS_TOTAL;
+                }
+            }
+        }
+        return allLiquid ? WET : anyLiquid ? WATERLINE : DRY;
+    }
+
+    /**
+     * @return The fluid type at every corner of the section, or -1 if they aren't all the same. Only call this if the
+     * section is {@link #WET}, using the corners getWetness() was given.
+     */
+    private int getCornerFluidType(CollisionCandidateCache.SectionSource world) {
+        hasLastSection = false;
+        int fluidType = -1;
+        for (int i = 0; i < 8; i++) {
+            final int cornerFluidType = getFluidTypeAt((int) Math.floor(cornerXs[i]), (int) Math.floor(cornerYs[i]),
+                (int) Math.floor(cornerZs[i]), world);
+            if (i != 0 && cornerFluidType != fluidType) {
+                fluidType = -1;
+                break;
+            }
+            fluidType = cornerFluidType;
+        }
+        // Don't keep the world's sections alive.
+        lastSection = null;
+        return fluidType;
+    }
+
+    private void collectBlock(int x, int y, int z) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            zs = Arrays.copyOf(zs, count * 2);
+        }
+        xs[count] = blockBaseX + x + .5;
+        ys[count] = blockBaseY + y + .5;
+        zs[count] = blockBaseZ + z + .5;
+        count++;
+    }
+
+    /**
+     * Adds the part of the upright 1x1x1 cube centered at the given position that's inside of liquid blocks. The cube
+     * spans at most two world blocks vertically.
+     */
+    private void addSubmergedPart(double centerX, double centerY, double centerZ,
+                                  CollisionCandidateCache.SectionSource world) {
+        final int x = (int) Math.floor(centerX);
+        final int z = (int) Math.floor(centerZ);
+        final double bottom = centerY - .5;
+        final int lowerY = (int) Math.floor(bottom);
+        final int lowerFluidType = getFluidTypeAt(x, lowerY, z, world);
+        if (lowerFluidType != -1) {
+            final double height = lowerY + 1 - bottom;
+            addSubmergedVolume(lowerFluidType, height, centerX, bottom + height * .5, centerZ);
+        }
+        final double upperHeight = bottom - lowerY;
+        final int upperFluidType = upperHeight > 0 ? getFluidTypeAt(x, lowerY + 1, z, world) : -1;
+        if (upperFluidType != -1) {
+            addSubmergedVolume(upperFluidType, upperHeight, centerX, lowerY + 1 + upperHeight * .5, centerZ);
+        }
+    }
+
+    private void addSubmergedVolume(int fluidType, double volume, double x, double y, double z) {
+        submergedVolume += volume;
+        submergedMomentX += volume * x;
+        submergedMomentY += volume * y;
+        submergedMomentZ += volume * z;
+        if (fluidType >= fluidVolumes.length) {
+            final int capacity = Math.max(fluidType + 1, fluidVolumes.length * 2);
+            fluidVolumes = Arrays.copyOf(fluidVolumes, capacity);
+            fluidMomentXs = Arrays.copyOf(fluidMomentXs, capacity);
+            fluidMomentYs = Arrays.copyOf(fluidMomentYs, capacity);
+            fluidMomentZs = Arrays.copyOf(fluidMomentZs, capacity);
+        }
+        if (!submergedFluidTypes.contains(fluidType)) {
+            // Only a few fluid types can touch one section, a linear search is fine.
+            submergedFluidTypes.add(fluidType);
+            fluidVolumes[fluidType] = 0;
+            fluidMomentXs[fluidType] = 0;
+            fluidMomentYs[fluidType] = 0;
+            fluidMomentZs[fluidType] = 0;
+        }
+        fluidVolumes[fluidType] += volume;
+        fluidMomentXs[fluidType] += volume * x;
+        fluidMomentYs[fluidType] += volume * y;
+        fluidMomentZs[fluidType] += volume * z;
+    }
+
+    /**
+     * @return The fluid type of the liquid block at x, y, z, or -1 if it isn't a liquid.
+     */
+    private int getFluidTypeAt(int x, int y, int z, CollisionCandidateCache.SectionSource world) {
+        if (y < 0 || y > 255) {
+            return -1;
+        }
+        final int sectionX = x >> 4, sectionY = y >> 4, sectionZ = z >> 4;
+        if (!hasLastSection || sectionX != lastSectionX || sectionY != lastSectionY || sectionZ != lastSectionZ) {
+            lastSection = world.getSection(sectionX, sectionY, sectionZ);
+            lastSectionX = sectionX;
+            lastSectionY = sectionY;
+            lastSectionZ = sectionZ;
+            hasLastSection = true;
+        }
+        if (lastSection == null || !lastSection.getLiquidOctree().get(x & 15, y & 15, z & 15)) {
+            return -1;
+        }
+        return lastSection.getFluidType(x & 15, y & 15, z & 15);
+    }
+
+    /**
+     * One 16x16x16 section of the chunks of a ship, together with the number and the center of its solid blocks, which
+     * are only counted again after the section changed.
+     * <p>
+     * Not thread safe.
+     */
+    public static final class ShipSection {
+
+        @Getter
+        private final int sectionX, sectionY, sectionZ;
+        @Getter
+        private final ITerrainOctreeProvider provider;
+        // True once the mass properties were computed, when the provider had this solid modification count.
+        private boolean hasMassProperties;
+        private int solidModificationCount;
+        // The number of solid blocks, and the average of their centers in ship space.
+        private int blockCount;
+        private double centerX, centerY, centerZ;
+
+        public ShipSection(int sectionX, int sectionY, int sectionZ, ITerrainOctreeProvider provider) {
+            this.sectionX = sectionX;
+            this.sectionY = sectionY;
+            this.sectionZ = sectionZ;
+            this.provider = provider;
+            this.hasMassProperties = false;
+        }
+
+        private void updateMassProperties() {
+            if (hasMassProperties && provider.getSolidModificationCount() == solidModificationCount) {
+                return;
+            }
+            hasMassProperties = true;
+            solidModificationCount = provider.getSolidModificationCount();
+            blockCount = 0;
+            centerX = 0;
+            centerY = 0;
+            centerZ = 0;
+            provider.getSolidOctree().forEachSetBitInRange(0, 0, 0, 15, 15, 15, (x, y, z) -> {
+                blockCount++;
+                centerX += x;
+                centerY += y;
+                centerZ += z;
+            });
+            if (blockCount != 0) {
+                centerX = (sectionX << 4) + centerX / blockCount + .5;
+                centerY = (sectionY << 4) + centerY / blockCount + .5;
+                centerZ = (sectionZ << 4) + centerZ / blockCount + .5;
+            }
+        }
+    }
+}
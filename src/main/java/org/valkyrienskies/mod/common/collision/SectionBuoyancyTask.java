@@ -0,0 +1,145 @@
+package org.valkyrienskies.mod.common.collision;
+
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.ChunkCache;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Computes the buoyancy and drag forces of a range of sections of a ship, one force of each per section and fluid, using
+ * {@link SectionBuoyancy}. Used instead of {@link WaterForcesTask} if
+ * {@link org.valkyrienskies.mod.common.config.VSConfig.WaterSettings#sectionBuoyancy} is enabled.
+ */
+public class SectionBuoyancyTask implements IWaterForcesTask {
+
+    // The drag area of a cubic meter of submerged ship. The same as a WaterForcesTask gives a water block in the same
+    // spot as a ship block.
+    private static final double DRAG_AREA_PER_CUBIC_METER =
+        Math.PI * WaterForcesTask.SPHERE_RADIUS * WaterForcesTask.SPHERE_RADIUS;
+
+    private final PhysicsObject parent;
+    private final List<SectionBuoyancy.ShipSection> sections;
+    private final int fromIndex, toIndex;
+    // Owned by the collider, every task of a ship gets its own.
+    private final SectionBuoyancy sectionBuoyancy;
+    private final CollisionCandidateCache.SectionSource world;
+    // The blocks the currents are sampled from, the same chunks as world.
+    private final ChunkCache cache;
+    private final BlockPos.MutableBlockPos currentPos;
+    private final Vector3d addedForce, addedTorque;
+
+    /**
+     * @param fromIndex The first section of the sections list this task handles (inclusive).
+     * @param toIndex   The last section of the sections list this task handles (exclusive).
+     */
+    public SectionBuoyancyTask(final PhysicsObject parent, final List<SectionBuoyancy.ShipSection> sections,
+                               final int fromIndex, final int toIndex, final SectionBuoyancy sectionBuoyancy,
+                               final CollisionCandidateCache.SectionSource world, final ChunkCache cache) {
+        this.parent = parent;
+        this.sections = sections;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.sectionBuoyancy = sectionBuoyancy;
+        this.world = world;
+        this.cache = cache;
+        this.currentPos = new BlockPos.MutableBlockPos();
+        this.addedForce = new Vector3d();
+        this.addedTorque = new Vector3d();
+    }
+
+    @Override
+    public void addForcesToShip() {
+        final PhysicsCalculations physicsEngine = parent.getPhysicsCalculations();
+        physicsEngine.addForceAndTorque(addedForce, addedTorque);
+    }
+
+    /**
+     * Computes the force and torque resulting from the submerged part of the sections handled by this task.
+     */
+    @Override
+    public Void call() {
+        final ShipTransform physicsTransform = parent.getShipTransformationManager().getCurrentPhysicsTransform();
+        final PhysicsCalculations physicsEngine = parent.getPhysicsCalculations();
+
+        // Vector objects reused in this method.
+        final Vector3d temp0 = new Vector3d();
+        final Vector3d temp1 = new Vector3d();
+        final Vector3d temp2 = new Vector3d();
+        final Vector3d current = new Vector3d();
+
+        for (int index = fromIndex; index < toIndex; index++) {
+            sectionBuoyancy.compute(sections.get(index), physicsTransform, world);
+            // One force per fluid the section is in, a section on the border of two fluids floats in both.
+            for (int i = 0; i < sectionBuoyancy.getSubmergedFluidCount(); i++) {
+                final int fluidType = sectionBuoyancy.getSubmergedFluidType(i);
+                final double volumeDisplaced = sectionBuoyancy.getSubmergedVolume(fluidType);
+                if (volumeDisplaced <= 0) {
+                    continue;
+                }
+                final FluidProperties fluid = FluidPropertiesRegistry.getFluidProperties(fluidType);
+                final Vector3d submergedCenter = sectionBuoyancy.getSubmergedCenter(fluidType, temp0);
+                // One current per section and fluid, sampled at the center of the part in that fluid.
+                final Vector3dc sectionCurrent = fluid.hasCurrents()
+                    ? sampleCurrent(submergedCenter, fluidType, fluid, current) : null;
+                final Vector3dc submergedPosRelativeToShipCenterInWorld = submergedCenter
+                    .sub(physicsTransform.getPosX(), physicsTransform.getPosY(), physicsTransform.getPosZ());
+                addSubmergedVolumeForces(volumeDisplaced, submergedPosRelativeToShipCenterInWorld, fluid,
+                    sectionCurrent, physicsEngine, addedForce, addedTorque, temp1, temp2);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets dest to the current of the block at pos (in global space), zero if that block isn't of the given fluid type.
+     */
+    private Vector3d sampleCurrent(Vector3dc pos, int fluidType, FluidProperties fluid, Vector3d dest) {
+        currentPos.setPos(pos.x(), pos.y(), pos.z());
+        final IBlockState state = cache.getBlockState(currentPos);
+        if (!state.getMaterial().isLiquid() || FluidPropertiesRegistry.getFluidType(state) != fluidType) {
+            return dest.zero();
+        }
+        return FluidPropertiesRegistry.getCurrentVelocity(cache, currentPos, state, fluid, dest);
+    }
+
+    /**
+     * Adds the buoyancy and drag of a volume submerged in the given fluid to force and torque. The drag uses the velocity of the
+     * ship at the center of the volume, relative to the current.
+     *
+     * @param posRelToShipCenter The center of the submerged volume, relative to the ship's center in global space.
+     * @param current            The velocity of the fluid around the volume in m/s, null if it's still.
+     */
+    static void addSubmergedVolumeForces(double volumeDisplaced, Vector3dc posRelToShipCenter, FluidProperties fluid,
+                                         @Nullable Vector3dc current, PhysicsCalculations physicsEngine,
+                                         Vector3d force, Vector3d torque, Vector3d temp0, Vector3d temp1) {
+        final Vector3dc buoyancyForce = temp0.set(0, volumeDisplaced * WaterForcesTask.GRAVITY_ACCELERATION
+            * fluid.getDensity(), 0);
+        addForceAtPoint(posRelToShipCenter, buoyancyForce, force, torque, temp1);
+
+        final Vector3d velocity = physicsEngine.getVelocityAtPoint(posRelToShipCenter, temp0);
+        if (current != null) {
+            velocity.sub(current);
+        }
+        if (!WaterForcesTask.isVectorLengthZero(velocity)) {
+            // Drag formula from https://en.wikipedia.org/wiki/Drag_(physics)
+            final double forceMagnitude = .5 * fluid.getDensity() * velocity.lengthSquared()
+                * fluid.getDragCoefficient() * DRAG_AREA_PER_CUBIC_METER * volumeDisplaced;
+            final Vector3dc dragForce = temp0.normalize().mul(-forceMagnitude);
+            addForceAtPoint(posRelToShipCenter, dragForce, force, torque, temp1);
+        }
+    }
+
+    private static void addForceAtPoint(Vector3dc posRelToShipCenter, Vector3dc forceToApply, Vector3d force,
+                                        Vector3d torque, Vector3d tempStorage) {
+        final Vector3dc torqueFromForce = posRelToShipCenter.cross(forceToApply, tempStorage);
+        force.add(forceToApply);
+        torque.add(torqueFromForce);
+    }
+}
@@ -1,140 +1,248 @@
 package org.valkyrienskies.mod.common.collision;
 
-import net.minecraft.block.state.IBlockState;
+import net.minecraft.block.Block;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.chunk.Chunk;
-import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import org.joml.Vector3d;
-import org.joml.Vector3dc;
 import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
-import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
 import org.valkyrienskies.mod.common.util.VSIterationUtils;
-import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
-import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
 import valkyrienwarfare.api.TransformType;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
-public class ShipCollisionTask implements Callable<Void> {
+/**
+ * Finds the collisions between a range of the cached potential hits of a {@link WorldPhysicsCollider} and its ship.
+ * After {@link #prepareContactResolution()} running it again resolves the contacts it found instead.
+ * <p>
+ * Large ranges are split in half recursively until they're smaller than the grain size, and the halves run in
+ * parallel with work stealing. The whole tree of tasks belongs to one collider and is reused every tick; calling
+ * {@link #prepare(int, int, int)} re-splits it and only allocates new tasks when the tree has to grow.
+ */
+public class ShipCollisionTask extends RecursiveAction {
 
-    public final static int MAX_TASKS_TO_CHECK = 45;
     private final WorldPhysicsCollider toTask;
-    private final int taskStartIndex;
-    private final int tasksToCheck;
     private final MutableBlockPos mutablePos;
-    private final MutableBlockPos inLocalPos;
     private final Vector3d inWorld;
-    private final List<CollisionInformationHolder> collisionInformationGenerated;
-    private IBlockState inWorldState;
+    // The potential hits of this leaf transformed to ship space, grown when the leaf gets bigger.
+    private double[] hitXs, hitYs, hitZs;
+    // The exposed faces of the world block processNumber() is checking.
+    private int inWorldExposedFaces;
+    // Reused every tick, so finding contacts doesn't allocate anything once it's big enough.
+    private final ContactBuffer contacts;
+    private final ContactImpulseAccumulator accumulator;
+    // True if compute() resolves the contacts found by the previous compute(), instead of finding contacts.
+    private boolean resolvingContacts;
+    private int taskStartIndex;
+    private int taskEndIndex;
+    // Null until this task has to be split for the first time, then kept for the next ticks.
+    private ShipCollisionTask leftHalf, rightHalf;
+    private boolean isLeaf;
+    // The time the last compute() of this leaf took.
+    private long computeTimeNano;
     // public TIntArrayList foundPairs = new TIntArrayList();
 
-    public ShipCollisionTask(WorldPhysicsCollider toTask, int taskStartIndex) {
-        this.taskStartIndex = taskStartIndex;
+    public ShipCollisionTask(WorldPhysicsCollider toTask) {
         this.toTask = toTask;
         this.mutablePos = new MutableBlockPos();
-        this.inLocalPos = new MutableBlockPos();
         this.inWorld = new Vector3d();
-        this.collisionInformationGenerated = new ArrayList<>();
-        this.inWorldState = null;
+        this.hitXs = new double[0];
+        this.hitYs = new double[0];
+        this.hitZs = new double[0];
+        this.contacts = new ContactBuffer();
+        this.accumulator = new ContactImpulseAccumulator();
+        this.resolvingContacts = false;
+        this.isLeaf = true;
+    }
 
-        int size = toTask.getCachedPotentialHitSize();
-        if (taskStartIndex + MAX_TASKS_TO_CHECK > size + 1) {
-            tasksToCheck = size + 1 - taskStartIndex;
-        } else {
-            tasksToCheck = MAX_TASKS_TO_CHECK;
+    /**
+     * Sets up this task to check the potential hits from startIndex (inclusive) to endIndex (exclusive). Must not be
+     * called while this task is running.
+     *
+     * @param grainSize Ranges with more hits than this are split in half.
+     * @return The number of leaf tasks this range was split into.
+     */
+    public int prepare(int startIndex, int endIndex, int grainSize) {
+        reinitialize();
+        this.resolvingContacts = false;
+        this.taskStartIndex = startIndex;
+        this.taskEndIndex = endIndex;
+        this.computeTimeNano = 0;
+        if (endIndex - startIndex <= grainSize) {
+            isLeaf = true;
+            return 1;
+        }
+        if (leftHalf == null) {
+            leftHalf = new ShipCollisionTask(toTask);
+            rightHalf = new ShipCollisionTask(toTask);
         }
+        isLeaf = false;
+        final int middleIndex = (startIndex + endIndex) >>> 1;
+        return leftHalf.prepare(startIndex, middleIndex, grainSize)
+            + rightHalf.prepare(middleIndex, endIndex, grainSize);
     }
 
     @Override
-    public Void call() {
-        for (int index = taskStartIndex; index < tasksToCheck + 1; index++) {
-            int integer = toTask.getCachedPotentialHit(index);
-            processNumber(integer);
+    protected void compute() {
+        if (!isLeaf) {
+            invokeAll(leftHalf, rightHalf);
+            return;
         }
+        if (resolvingContacts) {
+            resolveContacts();
+            return;
+        }
+        final long startTime = System.nanoTime();
+        contacts.clear();
+        transformPotentialHits();
+        for (int index = taskStartIndex; index < taskEndIndex; index++) {
+            final int i = index - taskStartIndex;
+            inWorld.set(hitXs[i], hitYs[i], hitZs[i]);
+            inWorldExposedFaces = toTask.getCachedPotentialHitExposedFaces(index);
+            processNumber(toTask.getCachedPotentialHit(index));
+        }
+        computeTimeNano = System.nanoTime() - startTime;
+    }
 
-        // Shuffle this so that WorldPhysicsCollider performs better
-        Collections.shuffle(collisionInformationGenerated, ThreadLocalRandom.current());
-
-        return null;
+    /**
+     * Sets up this task to resolve the contacts it found, against the current velocity of the ship. Must not be
+     * called while this task is running.
+     */
+    public void prepareContactResolution() {
+        reinitialize();
+        resolvingContacts = true;
+        if (!isLeaf) {
+            leftHalf.prepareContactResolution();
+            rightHalf.prepareContactResolution();
+        }
     }
 
-    public List<CollisionInformationHolder> getCollisionInformationGenerated() {
-        return collisionInformationGenerated;
+    /**
+     * Works out the velocity change every contact asks for on its own. Nothing is applied to the ship here, so every
+     * contact sees the same velocity no matter which thread resolves it or when.
+     */
+    private void resolveContacts() {
+        for (int i = 0; i < contacts.size(); i++) {
+            accumulator.reset();
+            toTask.resolveContact(contacts, i, accumulator);
+            contacts.setVelocityChange(i, accumulator.linearVelocityChange, accumulator.angularVelocityChange,
+                accumulator.impulseCount);
+        }
     }
 
     /**
-     * Returns an iterator that loops over the collision information in quasi-random order. This is
-     * important to avoid biasing one side over another, because otherwise one side would slowly
-     * sink into the ground.
-     *
-     * @return
+     * @return The number of contacts the leaves of this task found.
      */
-    public Iterator<CollisionInformationHolder> getCollisionInformationIterator() {
-        return collisionInformationGenerated.iterator();
+    public int getContactCount() {
+        if (isLeaf) {
+            return contacts.size();
+        }
+        return leftHalf.getContactCount() + rightHalf.getContactCount();
     }
 
-    private void processNumber(int integer) {
-        SpatialDetector.setPosWithRespectTo(integer, toTask.getCenterPotentialHit(), mutablePos);
-        inWorldState = toTask.getParent().getCachedSurroundingChunks().getBlockState(mutablePos);
+    /**
+     * Runs the consumer on every leaf of this task, from the lowest index to the highest.
+     */
+    public void forEachLeaf(Consumer<ShipCollisionTask> consumer) {
+        if (isLeaf) {
+            consumer.accept(this);
+        } else {
+            leftHalf.forEachLeaf(consumer);
+            rightHalf.forEachLeaf(consumer);
+        }
+    }
 
-        inWorld.x = mutablePos.getX() + .5;
-        inWorld.y = mutablePos.getY() + .5;
-        inWorld.z = mutablePos.getZ() + .5;
+    /**
+     * @return The number of nanoseconds the leaves of this task spent checking hits in the last run, summed over
+     * all threads.
+     */
+    public long getComputeTimeNano() {
+        if (isLeaf) {
+            return computeTimeNano;
+        }
+        return leftHalf.getComputeTimeNano() + rightHalf.getComputeTimeNano();
+    }
 
-        toTask.getParent().getShipTransformationManager().getCurrentPhysicsTransform()
-            .transformPosition(inWorld, TransformType.GLOBAL_TO_SUBSPACE);
+    /**
+     * @return The number of potential hits this task checks.
+     */
+    public int getTaskSize() {
+        return taskEndIndex - taskStartIndex;
+    }
 
-        int midX = MathHelper.floor(inWorld.x + .5D);
-        int midY = MathHelper.floor(inWorld.y + .5D);
-        int midZ = MathHelper.floor(inWorld.z + .5D);
+    /**
+     * @return The contacts found by this leaf, in the order of the potential hits they were found from.
+     */
+    public ContactBuffer getContacts() {
+        return contacts;
+    }
 
-        // Check the 27 possible positions
-        VSIterationUtils.expand3d(midX, midY, midZ, (x, y, z) -> checkPosition(x, y, z, integer));
+    /**
+     * Transforms the centers of the potential hits of this leaf to ship space in one batch.
+     */
+    private void transformPotentialHits() {
+        final int count = taskEndIndex - taskStartIndex;
+        if (hitXs.length < count) {
+            hitXs = new double[count];
+            hitYs = new double[count];
+            hitZs = new double[count];
+        }
+        for (int i = 0; i < count; i++) {
+            SpatialDetector.setPosWithRespectTo(toTask.getCachedPotentialHit(taskStartIndex + i),
+                toTask.getCenterPotentialHit(), mutablePos);
+            hitXs[i] = mutablePos.getX() + .5;
+            hitYs[i] = mutablePos.getY() + .5;
+            hitZs[i] = mutablePos.getZ() + .5;
+        }
+        toTask.getParent().getShipTransformationManager().getCurrentPhysicsTransform()
+            .transformPositions(hitXs, hitYs, hitZs, 0, count, TransformType.GLOBAL_TO_SUBSPACE);
     }
 
-    // Temp variable used in checkPosition()
-    private final Vector3d temp0 = new Vector3d();
+    /**
+     * @param integer The hash of the potential hit, inWorld must already be set to its center in ship space.
+     */
+    private void processNumber(int integer) {
+        SpatialDetector.setPosWithRespectTo(integer, toTask.getCenterPotentialHit(), mutablePos);
 
-    public void checkPosition(int x, int y, int z, int positionHash) {
-        if (!toTask.getParent().getChunkClaim().containsChunk(x >> 4, z >> 4)) {
+        // Most potential hits are nowhere near a ship block, skip those before probing the 27 positions.
+        final AxisAlignedBB localShipBB = toTask.getLocalShipBB();
+        if (localShipBB != null && (inWorld.x < localShipBB.minX || inWorld.x > localShipBB.maxX
+            || inWorld.y < localShipBB.minY || inWorld.y > localShipBB.maxY
+            || inWorld.z < localShipBB.minZ || inWorld.z > localShipBB.maxZ)) {
             return;
         }
-        final Chunk chunkIn = toTask.getParent().getChunkAt(x >> 4, z >> 4);
-        y = Math.max(0, Math.min(y, 255));
-
-        ExtendedBlockStorage storage = chunkIn.storageArrays[y >> 4];
-        if (storage != null) {
-            ITerrainOctreeProvider provider = (ITerrainOctreeProvider) storage.data;
-            IBitOctree octree = provider.getSolidOctree();
 
-            if (octree.get(x & 15, y & 15, z & 15)) {
-                IBlockState inLocalState = chunkIn.getBlockState(x, y, z);
-
-                inLocalPos.setPos(x, y, z);
-
-                final ShipTransform shipTransform = toTask.getParent().getShipTransformationManager().getCurrentPhysicsTransform();
-                final Vector3dc shipBlockInGlobal = shipTransform.transformPositionNew(temp0.set(inLocalPos.getX() + .5, inLocalPos.getY() + .5, inLocalPos.getZ() + .5), TransformType.SUBSPACE_TO_GLOBAL);
-
-                final double distanceSq = shipBlockInGlobal.distanceSquared(mutablePos.getX() + .5, mutablePos.getY() + .5, mutablePos.getZ() + .5);
+        int midX = MathHelper.floor(inWorld.x + .5D);
+        int midY = MathHelper.floor(inWorld.y + .5D);
+        int midZ = MathHelper.floor(inWorld.z + .5D);
 
-                // If the distance between the center of two cubes is greater than sqrt(3) then it is impossible for those cubes to touch.
-                // If it is less than sqrt(3) then collision is possible.
-                if (distanceSq < 3) {
-                    CollisionInformationHolder holder = new CollisionInformationHolder(
-                        mutablePos.getX(),
-                        mutablePos.getY(), mutablePos.getZ(), inLocalPos.getX(), inLocalPos.getY(),
-                        inLocalPos.getZ(), inWorldState, inLocalState);
+        // Check the solid ship blocks in the 27 possible positions
+        toTask.getShipBlockIndex().forEachSolidBlockInRange(midX - 1, midY - 1, midZ - 1, midX + 1, midY + 1,
+            midZ + 1, shipBlockChecker);
+    }
 
-                    collisionInformationGenerated.add(holder);
-                }
-            }
+    // Reused by every processNumber(), so it doesn't allocate a new lambda every time.
+    private final VSIterationUtils.IntTernaryConsumer shipBlockChecker = this::checkShipBlock;
+
+    private void checkShipBlock(int x, int y, int z) {
+        // Both blocks are in ship space here, and the transform doesn't change distances.
+        final double dx = x + .5 - inWorld.x;
+        final double dy = y + .5 - inWorld.y;
+        final double dz = z + .5 - inWorld.z;
+        final double distanceSq = dx * dx + dy * dy + dz * dz;
+
+        // If the distance between the center of two cubes is greater than sqrt(3) then it is impossible for those cubes to touch.
+        // If it is less than sqrt(3) then collision is possible.
+        if (distanceSq < 3) {
+            final Chunk chunkIn = toTask.getParent().getChunkAt(x >> 4, z >> 4);
+            final int inWorldStateId = Block.getStateId(
+                toTask.getParent().getCachedSurroundingChunks().getBlockState(mutablePos));
+            final int inLocalStateId = Block.getStateId(chunkIn.getBlockState(x, y, z));
+
+            contacts.add(mutablePos.getX(), mutablePos.getY(), mutablePos.getZ(), x, y, z, inWorldStateId,
+                inLocalStateId, inWorldExposedFaces);
         }
     }
 
@@ -0,0 +1,282 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.MathHelper;
+import org.joml.Vector3d;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.VSIterationUtils;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds and resolves the collisions between two ships. Every block is treated as a sphere with a diameter of 1, and
+ * two blocks touch if their centers are less than 1 apart.
+ * <p>
+ * The first run after {@link #prepare()} finds the contacts, by looking up the solid blocks of one ship in the
+ * {@link ShipSolidBlockIndex} of the other. Every run resolves the contacts against the velocities the ships have
+ * when it starts, and only stores the velocity changes, so all the tasks of an island can run in parallel.
+ * {@link #applyVelocityChanges()} then applies them on the island thread.
+ */
+public class ShipPairCollisionTask extends RecursiveAction {
+
+    // Below this speed our collision coefficient of restitution is zero.
+    private static final double RESTITUTION_SLOP = .5;
+    // How fast overlapping blocks are pushed apart, per block of overlap.
+    private static final double SEPARATION_SPEED = 2;
+    // The doubles stored per contact: position, normal (pointing from the second ship to the first) and overlap.
+    private static final int CONTACT_STRIDE = 7;
+
+    private final PhysicsCalculations first, second;
+    private final TDoubleArrayList contacts;
+    private boolean contactsFound;
+    // The velocity changes the last run asked for.
+    private final Vector3d firstLinearVelocityChange, firstAngularVelocityChange;
+    private final Vector3d secondLinearVelocityChange, secondAngularVelocityChange;
+    private int impulseCount;
+    // The fastest the ships moved towards each other at any contact in the last run, in blocks per second.
+    private double maxApproachSpeed;
+    // The blocks of the first ship that findContacts() checks, in global and in the space of the second ship.
+    private double[] globalXs, globalYs, globalZs, inSecondXs, inSecondYs, inSecondZs;
+    private int blockCount;
+    // Temp variables
+    private final Vector3d blockPos, blockPosInSecond, normal, firstInBody, secondInBody, firstVelocity,
+        secondVelocity, cross;
+    // Read by prepare(), the ship's bounding boxes aren't safe to compute from several threads at once.
+    private ShipTransform firstTransform, secondTransform;
+    private AxisAlignedBB firstBB, secondBB;
+
+    /**
+     * @param first  The ship whose blocks are looked up in the other one, so preferably the smaller of the two.
+     * @param second The other ship.
+     */
+    public ShipPairCollisionTask(PhysicsCalculations first, PhysicsCalculations second) {
+        this.first = first;
+        this.second = second;
+        this.contacts = new TDoubleArrayList();
+        this.contactsFound = false;
+        allocateBlockArrays(64);
+        this.firstLinearVelocityChange = new Vector3d();
+        this.firstAngularVelocityChange = new Vector3d();
+        this.secondLinearVelocityChange = new Vector3d();
+        this.secondAngularVelocityChange = new Vector3d();
+        this.impulseCount = 0;
+        this.maxApproachSpeed = 0;
+        this.blockPos = new Vector3d();
+        this.blockPosInSecond = new Vector3d();
+        this.normal = new Vector3d();
+        this.firstInBody = new Vector3d();
+        this.secondInBody = new Vector3d();
+        this.firstVelocity = new Vector3d();
+        this.secondVelocity = new Vector3d();
+        this.cross = new Vector3d();
+    }
+
+    /**
+     * Makes the next run find the contacts again. Call this from the island thread once per substep, after the ships
+     * moved.
+     */
+    public void prepare() {
+        reinitialize();
+        contactsFound = false;
+        firstTransform = first.getParent().getShipTransformationManager().getCurrentPhysicsTransform();
+        secondTransform = second.getParent().getShipTransformationManager().getCurrentPhysicsTransform();
+        firstBB = first.getParent().getPhysicsTransformAABB();
+        secondBB = second.getParent().getPhysicsTransformAABB();
+    }
+
+    /**
+     * Makes the next run resolve the contacts found by the previous one again, against the current velocities.
+     */
+    public void prepareIteration() {
+        reinitialize();
+    }
+
+    @Override
+    protected void compute() {
+        if (!contactsFound) {
+            findContacts();
+            contactsFound = true;
+        }
+        resolveContacts();
+    }
+
+    private void findContacts() {
+        contacts.resetQuick();
+        blockCount = 0;
+        if (firstBB == null || secondBB == null || !firstBB.intersects(secondBB)) {
+            return;
+        }
+        // Only the blocks of the first ship that are in both bounding boxes can touch the second ship.
+        final AxisAlignedBB overlapInFirst = new Polygon(firstBB.intersect(secondBB).grow(1), firstTransform,
+            TransformType.GLOBAL_TO_SUBSPACE).getEnclosedAABB();
+        first.getWorldCollision().getShipBlockIndex().forEachSolidBlockInRange(
+            MathHelper.floor(overlapInFirst.minX), MathHelper.floor(overlapInFirst.minY),
+            MathHelper.floor(overlapInFirst.minZ), MathHelper.floor(overlapInFirst.maxX),
+            MathHelper.floor(overlapInFirst.maxY), MathHelper.floor(overlapInFirst.maxZ), firstBlockCollector);
+
+        // Move the blocks into the space of the second ship in two batches, instead of two transforms per block.
+        firstTransform.transformPositions(globalXs, globalYs, globalZs, 0, blockCount,
+            TransformType.SUBSPACE_TO_GLOBAL);
+        System.arraycopy(globalXs, 0, inSecondXs, 0, blockCount);
+        System.arraycopy(globalYs, 0, inSecondYs, 0, blockCount);
+        System.arraycopy(globalZs, 0, inSecondZs, 0, blockCount);
+        secondTransform.transformPositions(inSecondXs, inSecondYs, inSecondZs, 0, blockCount,
+            TransformType.GLOBAL_TO_SUBSPACE);
+
+        for (int i = 0; i < blockCount; i++) {
+            blockPos.set(globalXs[i], globalYs[i], globalZs[i]);
+            blockPosInSecond.set(inSecondXs[i], inSecondYs[i], inSecondZs[i]);
+            final int midX = MathHelper.floor(blockPosInSecond.x);
+            final int midY = MathHelper.floor(blockPosInSecond.y);
+            final int midZ = MathHelper.floor(blockPosInSecond.z);
+            second.getWorldCollision().getShipBlockIndex().forEachSolidBlockInRange(midX - 1, midY - 1, midZ - 1,
+                midX + 1, midY + 1, midZ + 1, secondBlockChecker);
+        }
+    }
+
+    // Reused for every block, so finding contacts doesn't allocate a lambda per block.
+    private final VSIterationUtils.IntTernaryConsumer firstBlockCollector = this::collectFirstBlock;
+    private final VSIterationUtils.IntTernaryConsumer secondBlockChecker = this::checkSecondBlock;
+
+    private void collectFirstBlock(int x, int y, int z) {
+        if (blockCount == globalXs.length) {
+            allocateBlockArrays(blockCount * 2);
+        }
+        globalXs[blockCount] = x + .5;
+        globalYs[blockCount] = y + .5;
+        globalZs[blockCount] = z + .5;
+        blockCount++;
+    }
+
+    private void allocateBlockArrays(int capacity) {
+        globalXs = globalXs == null ? new double[capacity] : Arrays.copyOf(globalXs, capacity);
+        globalYs = globalYs == null ? new double[capacity] : Arrays.copyOf(globalYs, capacity);
+        globalZs = globalZs == null ? new double[capacity] : Arrays.copyOf(globalZs, capacity);
+        // Only filled after every block was collected, nothing to copy.
+        inSecondXs = new double[capacity];
+        inSecondYs = new double[capacity];
+        inSecondZs = new double[capacity];
+    }
+
+    private void checkSecondBlock(int x, int y, int z) {
+        // Both blocks are in the space of the second ship here, and the transform doesn't change distances.
+        final double dx = blockPosInSecond.x - (x + .5);
+        final double dy = blockPosInSecond.y - (y + .5);
+        final double dz = blockPosInSecond.z - (z + .5);
+        final double distanceSq = dx * dx + dy * dy + dz * dz;
+        if (distanceSq >= 1 || distanceSq == 0) {
+            return;
+        }
+        final double distance = Math.sqrt(distanceSq);
+        normal.set(dx / distance, dy / distance, dz / distance);
+        secondTransform.transformDirection(normal, TransformType.SUBSPACE_TO_GLOBAL);
+        // The middle of the part where the two blocks overlap
+        final double halfOverlap = (1 - distance) / 2;
+        contacts.add(blockPos.x - normal.x * (.5 - halfOverlap));
+        contacts.add(blockPos.y - normal.y * (.5 - halfOverlap));
+        contacts.add(blockPos.z - normal.z * (.5 - halfOverlap));
+        contacts.add(normal.x);
+        contacts.add(normal.y);
+        contacts.add(normal.z);
+        contacts.add(1 - distance);
+    }
+
+    private void resolveContacts() {
+        firstLinearVelocityChange.zero();
+        firstAngularVelocityChange.zero();
+        secondLinearVelocityChange.zero();
+        secondAngularVelocityChange.zero();
+        impulseCount = 0;
+        maxApproachSpeed = 0;
+        for (int i = 0; i < contacts.size(); i += CONTACT_STRIDE) {
+            resolveContact(i);
+        }
+    }
+
+    private void resolveContact(int offset) {
+        final double x = contacts.getQuick(offset);
+        final double y = contacts.getQuick(offset + 1);
+        final double z = contacts.getQuick(offset + 2);
+        normal.set(contacts.getQuick(offset + 3), contacts.getQuick(offset + 4), contacts.getQuick(offset + 5));
+        final double overlap = contacts.getQuick(offset + 6);
+
+        firstInBody.set(x - firstTransform.getPosX(), y - firstTransform.getPosY(), z - firstTransform.getPosZ());
+        secondInBody.set(x - secondTransform.getPosX(), y - secondTransform.getPosY(), z - secondTransform.getPosZ());
+        first.getVelocityAtPoint(firstInBody, firstVelocity);
+        second.getVelocityAtPoint(secondInBody, secondVelocity);
+        // Positive if the ships move apart at this point.
+        final double separatingSpeed = firstVelocity.sub(secondVelocity).dot(normal);
+        maxApproachSpeed = Math.max(maxApproachSpeed, -separatingSpeed);
+        double targetSpeed = overlap * SEPARATION_SPEED;
+        if (separatingSpeed < -RESTITUTION_SLOP) {
+            targetSpeed = Math.max(targetSpeed, -separatingSpeed * WorldPhysicsCollider.COEFFICIENT_OF_RESTITUTION);
+        }
+        if (separatingSpeed >= targetSpeed) {
+            return;
+        }
+
+        final double effectiveInvMass = first.getInvMass() + second.getInvMass()
+            + getAngularInvMass(first, firstInBody) + getAngularInvMass(second, secondInBody);
+        final double impulseMagnitude = (targetSpeed - separatingSpeed) / effectiveInvMass;
+
+        firstLinearVelocityChange.fma(impulseMagnitude * first.getInvMass(), normal);
+        secondLinearVelocityChange.fma(-impulseMagnitude * second.getInvMass(), normal);
+        firstInBody.cross(normal, cross).mul(impulseMagnitude);
+        first.getPhysInvMOITensor().transform(cross);
+        firstAngularVelocityChange.add(cross);
+        secondInBody.cross(normal, cross).mul(-impulseMagnitude);
+        second.getPhysInvMOITensor().transform(cross);
+        secondAngularVelocityChange.add(cross);
+        impulseCount++;
+    }
+
+    /**
+     * @return How much an impulse of 1 along the normal at inBody changes the speed along the normal by rotating the
+     * ship.
+     */
+    private double getAngularInvMass(PhysicsCalculations ship, Vector3d inBody) {
+        inBody.cross(normal, cross);
+        ship.getPhysInvMOITensor().transform(cross);
+        return cross.cross(inBody).dot(normal);
+    }
+
+    /**
+     * Applies the average of the velocity changes the contacts asked for in the last run, and wakes both ships up if
+     * they hit each other faster than the sleep speed. Ships resting on each other can still fall asleep. Only call
+     * this from the island thread, after the task finished.
+     */
+    public void applyVelocityChanges() {
+        if (impulseCount == 0) {
+            return;
+        }
+        final double weight = 1D / impulseCount;
+        first.getLinearVelocity().add(firstLinearVelocityChange.mul(weight));
+        first.getAngularVelocity().add(firstAngularVelocityChange.mul(weight));
+        second.getLinearVelocity().add(secondLinearVelocityChange.mul(weight));
+        second.getAngularVelocity().add(secondAngularVelocityChange.mul(weight));
+        if (maxApproachSpeed > VSConfig.SHIP_SLEEP_SETTINGS.sleepLinearSpeed) {
+            first.wakeUp();
+            second.wakeUp();
+        }
+    }
+
+    /**
+     * @return The number of touching block pairs the last {@link #prepare()} found.
+     */
+    public int getContactCount() {
+        return contacts.size() / CONTACT_STRIDE;
+    }
+
+    public PhysicsCalculations getFirst() {
+        return first;
+    }
+
+    public PhysicsCalculations getSecond() {
+        return second;
+    }
+}
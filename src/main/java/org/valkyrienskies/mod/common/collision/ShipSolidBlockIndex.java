@@ -0,0 +1,199 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.map.hash.TLongLongHashMap;
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryConsumer;
+
+/**
+ * The solid blocks of a ship, in ship space, stored as a sparse grid of 4x4x4 bricks. Every brick is a single long
+ * with one bit per block, and only bricks with at least one solid block are stored.
+ * <p>
+ * Finding the solid blocks around a point only looks at the (at most 8) bricks that overlap the range, instead of
+ * looking up every position in the ship's chunks.
+ * <p>
+ * Not thread safe. Reading from multiple threads at once is fine, as long as nothing writes at the same time.
+ */
+public class ShipSolidBlockIndex {
+
+    // For every 4 bit mask of x (or y, or z) positions in a brick, the mask of the brick bits with those positions.
+    private static final long[] X_MASKS = new long[16];
+    private static final long[] Y_MASKS = new long[16];
+    private static final long[] Z_MASKS = new long[16];
+
+    static {
+        for (int axisMask = 0; axisMask < 16; axisMask++) {
+            for (int bit = 0; bit < 64; bit++) {
+                if ((axisMask & (1 << getBrickX(bit))) != 0) {
+                    X_MASKS[axisMask] |= 1L << bit;
+                }
+                if ((axisMask & (1 << getBrickY(bit))) != 0) {
+                    Y_MASKS[axisMask] |= 1L << bit;
+                }
+                if ((axisMask & (1 << getBrickZ(bit))) != 0) {
+                    Z_MASKS[axisMask] |= 1L << bit;
+                }
+            }
+        }
+    }
+
+    private final TLongLongHashMap bricks;
+    private int size;
+
+    public ShipSolidBlockIndex() {
+        this.bricks = new TLongLongHashMap();
+        this.size = 0;
+    }
+
+    public void set(int x, int y, int z, boolean solid) {
+        final long key = getBrickKey(x >> 2, y >> 2, z >> 2);
+        final long brick = bricks.get(key);
+        final long bit = 1L << getBrickBit(x & 3, y & 3, z & 3);
+        if (((brick & bit) != 0) == solid) {
+            return;
+        }
+        if (solid) {
+            bricks.put(key, brick | bit);
+            size++;
+        } else {
+            if ((brick & ~bit) == 0) {
+                bricks.remove(key);
+            } else {
+                bricks.put(key, brick & ~bit);
+            }
+            size--;
+        }
+    }
+
+    public boolean isSolid(int x, int y, int z) {
+        return (bricks.get(getBrickKey(x >> 2, y >> 2, z >> 2)) & (1L << getBrickBit(x & 3, y & 3, z & 3))) != 0;
+    }
+
+    /**
+     * Calls the consumer with every solid block from min to max (all inclusive).
+     */
+    public void forEachSolidBlockInRange(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                                         IntTernaryConsumer consumer) {
+        if (bricks.isEmpty()) {
+            return;
+        }
+        for (int brickX = minX >> 2; brickX <= maxX >> 2; brickX++) {
+            final long xMask = X_MASKS[getAxisMask(brickX, minX, maxX)];
+            for (int brickY = minY >> 2; brickY <= maxY >> 2; brickY++) {
+                final long xyMask = xMask & Y_MASKS[getAxisMask(brickY, minY, maxY)];
+                for (int brickZ = minZ >> 2; brickZ <= maxZ >> 2; brickZ++) {
+                    long bits = bricks.get(getBrickKey(brickX, brickY, brickZ))
+                        & xyMask & Z_MASKS[getAxisMask(brickZ, minZ, maxZ)];
+                    while (bits != 0) {
+                        final int bit = Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        consumer.accept((brickX << 2) | getBrickX(bit), (brickY << 2) | getBrickY(bit),
+                            (brickZ << 2) | getBrickZ(bit));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer with every solid block that has a non solid neighbour on at least one of the given sides.
+     * Every side is -1, 0 or 1 along its axis, 0 means that axis is ignored. The neighbours are found with bit shifts
+     * within a brick, only the neighbours in the next brick over need a lookup.
+     */
+    public void forEachExposedBlock(int sideX, int sideY, int sideZ, IntTernaryConsumer consumer) {
+        if (sideX == 0 && sideY == 0 && sideZ == 0) {
+            return;
+        }
+        final TLongLongIterator iterator = bricks.iterator();
+        while (iterator.hasNext()) {
+            iterator.advance();
+            final long key = iterator.key();
+            final long brick = iterator.value();
+            final int brickX = getBrickKeyX(key);
+            final int brickY = getBrickKeyY(key);
+            final int brickZ = getBrickKeyZ(key);
+            // The blocks whose neighbour on the side is solid, along every axis.
+            final long coveredX = getCoveredBlocks(brick, sideX, 1, X_MASKS,
+                sideX == 0 ? 0 : bricks.get(getBrickKey(brickX + sideX, brickY, brickZ)));
+            final long coveredY = getCoveredBlocks(brick, sideY, 4, Y_MASKS,
+                sideY == 0 ? 0 : bricks.get(getBrickKey(brickX, brickY + sideY, brickZ)));
+            final long coveredZ = getCoveredBlocks(brick, sideZ, 16, Z_MASKS,
+                sideZ == 0 ? 0 : bricks.get(getBrickKey(brickX, brickY, brickZ + sideZ)));
+            long bits = brick & ~(coveredX & coveredY & coveredZ);
+            while (bits != 0) {
+                final int bit = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                consumer.accept((brickX << 2) | getBrickX(bit), (brickY << 2) | getBrickY(bit),
+                    (brickZ << 2) | getBrickZ(bit));
+            }
+        }
+    }
+
+    /**
+     * @param shift     How far the bit of a block is from the bit of its neighbour along the axis.
+     * @param nextBrick The brick next to this one on the side.
+     * @return The bits of the blocks whose neighbour on the side is solid, or every bit if side is 0.
+     */
+    private static long getCoveredBlocks(long brick, int side, int shift, long[] axisMasks, long nextBrick) {
+        if (side > 0) {
+            // Positions 0 to 2 look at the next position of this brick, position 3 at position 0 of the next brick.
+            return ((brick >>> shift) & axisMasks[0b0111]) | ((nextBrick & axisMasks[0b0001]) << (shift * 3));
+        } else if (side < 0) {
+            return ((brick << shift) & axisMasks[0b1110]) | ((nextBrick & axisMasks[0b1000]) >>> (shift * 3));
+        }
+        return -1L;
+    }
+
+    public void clear() {
+        bricks.clear();
+        size = 0;
+    }
+
+    /**
+     * @return The number of solid blocks.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The 4 bit mask of the positions along one axis of the given brick that are from min to max.
+     */
+    private static int getAxisMask(int brick, int min, int max) {
+        final int start = Math.max(min - (brick << 2), 0);
+        final int end = Math.min(max - (brick << 2), 3);
+        return ((1 << (end + 1)) - 1) & ~((1 << start) - 1);
+    }
+
+    // Brick y only goes from 0 to 63, brick x and z get 26 bits each. That covers every ship chunk claim.
+    private static long getBrickKey(int brickX, int brickY, int brickZ) {
+        return ((long) (brickX & 0x3FFFFFF) << 38) | ((long) (brickZ & 0x3FFFFFF) << 12) | (brickY & 0xFFF);
+    }
+
+    private static int getBrickKeyX(long key) {
+        return (int) (key >>> 38) << 6 >> 6;
+    }
+
+    private static int getBrickKeyY(long key) {
+        return (int) (key & 0xFFF) << 20 >> 20;
+    }
+
+    private static int getBrickKeyZ(long key) {
+        return (int) ((key >>> 12) & 0x3FFFFFF) << 6 >> 6;
+    }
+
+    private static int getBrickBit(int x, int y, int z) {
+        return x | (y << 2) | (z << 4);
+    }
+
+    private static int getBrickX(int bit) {
+        return bit & 3;
+    }
+
+    private static int getBrickY(int bit) {
+        return (bit >> 2) & 3;
+    }
+
+    private static int getBrickZ(int bit) {
+        return bit >> 4;
+    }
+}
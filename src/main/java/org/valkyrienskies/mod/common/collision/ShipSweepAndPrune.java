@@ -0,0 +1,119 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntBinaryConsumer;
+
+import java.util.Arrays;
+
+/**
+ * Finds the pairs of overlapping boxes in a set of boxes, by sorting them along the x axis and only comparing the
+ * boxes whose x ranges overlap. That costs about n log n plus the number of pairs, instead of n squared.
+ * <p>
+ * The sorted order is kept between calls. Ships barely move from one physics tick to the next, so as long as the
+ * same boxes are added in the same order the insertion sort only has to fix a few swaps.
+ * <p>
+ * Not thread safe.
+ */
+public class ShipSweepAndPrune {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] minX, minY, minZ, maxX, maxY, maxZ;
+    // The box indices sorted by minX, kept from the previous call of forEachOverlappingPair().
+    private int[] order;
+    private int size;
+    // The number of boxes order was sorted for.
+    private int sortedSize;
+
+    public ShipSweepAndPrune() {
+        this.minX = new double[INITIAL_CAPACITY];
+        this.minY = new double[INITIAL_CAPACITY];
+        this.minZ = new double[INITIAL_CAPACITY];
+        this.maxX = new double[INITIAL_CAPACITY];
+        this.maxY = new double[INITIAL_CAPACITY];
+        this.maxZ = new double[INITIAL_CAPACITY];
+        this.order = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.sortedSize = 0;
+    }
+
+    /**
+     * Removes every box, but keeps the sorted order for the boxes added next.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return The index of the new box, the boxes are numbered in the order they were added.
+     */
+    public int add(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        if (size == order.length) {
+            grow();
+        }
+        this.minX[size] = minX;
+        this.minY[size] = minY;
+        this.minZ[size] = minZ;
+        this.maxX[size] = maxX;
+        this.maxY[size] = maxY;
+        this.maxZ[size] = maxZ;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls the consumer with the indices of every pair of boxes that overlap (touching counts), the lower index
+     * first. Every pair is only given once.
+     */
+    public void forEachOverlappingPair(IntBinaryConsumer consumer) {
+        if (sortedSize != size) {
+            // Different boxes than last time, the old order is meaningless.
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            sortedSize = size;
+        }
+        sortByMinX();
+
+        for (int i = 0; i < size; i++) {
+            final int box = order[i];
+            for (int j = i + 1; j < size; j++) {
+                final int other = order[j];
+                if (minX[other] > maxX[box]) {
+                    // Every box after this one starts even further along x.
+                    break;
+                }
+                if (minY[other] <= maxY[box] && maxY[other] >= minY[box]
+                    && minZ[other] <= maxZ[box] && maxZ[other] >= minZ[box]) {
+                    consumer.accept(Math.min(box, other), Math.max(box, other));
+                }
+            }
+        }
+    }
+
+    private void sortByMinX() {
+        for (int i = 1; i < size; i++) {
+            final int box = order[i];
+            final double boxMinX = minX[box];
+            int j = i - 1;
+            while (j >= 0 && minX[order[j]] > boxMinX) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = box;
+        }
+    }
+
+    private void grow() {
+        final int newCapacity = order.length * 2;
+        minX = Arrays.copyOf(minX, newCapacity);
+        minY = Arrays.copyOf(minY, newCapacity);
+        minZ = Arrays.copyOf(minZ, newCapacity);
+        maxX = Arrays.copyOf(maxX, newCapacity);
+        maxY = Arrays.copyOf(maxY, newCapacity);
+        maxZ = Arrays.copyOf(maxZ, newCapacity);
+        order = Arrays.copyOf(order, newCapacity);
+    }
+}
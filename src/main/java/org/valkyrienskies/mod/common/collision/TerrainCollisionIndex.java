@@ -0,0 +1,203 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryConsumer;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The solid blocks of the chunk sections of one world that ships could touch, shared by all the ships of the world.
+ * When many ships sit in the same area, every section is only scanned once instead of once per ship.
+ * <p>
+ * Every section is kept for as long as at least one {@link CollisionCandidateCache} holds a reference to it, see
+ * {@link #acquire(long)} and {@link #release(long)}. The blocks of a section are scanned again the first time they're
+ * asked for after the section was edited, which is when its solid modification count changed.
+ * <p>
+ * Thread safe, the ships of different islands use it at the same time.
+ */
+public class TerrainCollisionIndex {
+
+    private final ConcurrentHashMap<Long, SectionSlot> sections;
+
+    public TerrainCollisionIndex() {
+        this.sections = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Keeps the section with the given key (see {@link CollisionCandidateCache}) in this index until it's released
+     * as many times as it was acquired.
+     */
+    public void acquire(long sectionKey) {
+        sections.compute(sectionKey, (key, slot) -> {
+            if (slot == null) {
+                slot = new SectionSlot();
+            }
+            slot.referenceCount++;
+            return slot;
+        });
+    }
+
+    public void release(long sectionKey) {
+        sections.computeIfPresent(sectionKey, (key, slot) -> --slot.referenceCount > 0 ? slot : null);
+    }
+
+    /**
+     * @return The solid blocks of the given section, scanned again only if the section changed since they were last
+     * scanned. Sections that nobody acquired are scanned every time.
+     */
+    public SectionBlocks getSectionBlocks(long sectionKey, @Nullable ITerrainOctreeProvider section) {
+        final SectionSlot slot = sections.get(sectionKey);
+        if (slot == null) {
+            return new SectionBlocks(section);
+        }
+        SectionBlocks blocks = slot.blocks;
+        if (blocks == null || !blocks.isUpToDate(section)) {
+            // Two threads may both scan the section here, that's fine, both get the same result.
+            blocks = new SectionBlocks(section);
+            slot.blocks = blocks;
+        }
+        return blocks;
+    }
+
+    /**
+     * @return The number of sections ships hold a reference to.
+     */
+    public int size() {
+        return sections.size();
+    }
+
+    private static final class SectionSlot {
+
+        // Guarded by the lock ConcurrentHashMap.compute() holds for the key.
+        private int referenceCount;
+        private volatile SectionBlocks blocks;
+    }
+
+    /**
+     * The solid blocks of one section that can have an exposed face: the blocks with a non solid neighbour inside of
+     * the section, and the solid blocks on the border of the section. Whether the faces on the border are exposed
+     * depends on the next section over, so {@link CollisionCandidateCache} checks those itself.
+     * <p>
+     * Immutable once created.
+     */
+    public static final class SectionBlocks {
+
+        private static final short[] NO_POSITIONS = new short[0];
+        private static final byte[] NO_FACES = new byte[0];
+
+        @Nullable
+        private final ITerrainOctreeProvider section;
+        private final int solidModificationCount;
+        // The positions of the blocks, x | y << 4 | z << 8 inside of the section.
+        private final short[] positions;
+        // The faces of the block at the same index that are exposed inside of the section.
+        private final byte[] innerExposedFaces;
+
+        SectionBlocks(@Nullable ITerrainOctreeProvider section) {
+            this.section = section;
+            this.solidModificationCount = section != null ? section.getSolidModificationCount() : 0;
+            if (section == null) {
+                this.positions = NO_POSITIONS;
+                this.innerExposedFaces = NO_FACES;
+                return;
+            }
+            final BlockCollector collector = new BlockCollector(section.getSolidOctree());
+            collector.octree.forEachSetBitInRange(0, 0, 0, 15, 15, 15, collector);
+            this.positions = Arrays.copyOf(collector.positions, collector.count);
+            this.innerExposedFaces = Arrays.copyOf(collector.innerExposedFaces, collector.count);
+        }
+
+        /**
+         * @return True if these are still the blocks of the given section.
+         */
+        boolean isUpToDate(@Nullable ITerrainOctreeProvider currentSection) {
+            return currentSection == section
+                && (section == null || section.getSolidModificationCount() == solidModificationCount);
+        }
+
+        public int size() {
+            return positions.length;
+        }
+
+        /**
+         * @return The x position inside of the section of the block at the given index, same for y and z.
+         */
+        public int getX(int index) {
+            return positions[index] & 15;
+        }
+
+        public int getY(int index) {
+            return (positions[index] >> 4) & 15;
+        }
+
+        public int getZ(int index) {
+            return (positions[index] >> 8) & 15;
+        }
+
+        /**
+         * @return The faces of the block at the given index that are exposed inside of the section, as a mask of
+         * {@link CollisionCandidateCache#EXPOSED_X_UP} and friends.
+         */
+        public int getInnerExposedFaces(int index) {
+            return innerExposedFaces[index];
+        }
+
+        private static final class BlockCollector implements IntTernaryConsumer {
+
+            private final IBitOctree octree;
+            private short[] positions = new short[64];
+            private byte[] innerExposedFaces = new byte[64];
+            private int count = 0;
+
+            BlockCollector(IBitOctree octree) {
+                this.octree = octree;
+            }
+
+            @Override
+            public void accept(int x, int y, int z) {
+                final int exposedFaces = getInnerExposedFaces(octree, x, y, z);
+                if (exposedFaces == 0 && !isOnBorder(x) && !isOnBorder(y) && !isOnBorder(z)) {
+                    // Covered on every side, it can't be touched.
+                    return;
+                }
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count * 2);
+                    innerExposedFaces = Arrays.copyOf(innerExposedFaces, count * 2);
+                }
+                positions[count] = (short) (x | (y << 4) | (z << 8));
+                innerExposedFaces[count] = (byte) exposedFaces;
+                count++;
+            }
+        }
+
+        private static boolean isOnBorder(int position) {
+            return position == 0 || position == 15;
+        }
+
+        private static int getInnerExposedFaces(IBitOctree octree, int x, int y, int z) {
+            int exposedFaces = 0;
+            if (x < 15 && !octree.get(x + 1, y, z)) {
+                exposedFaces |= CollisionCandidateCache.EXPOSED_X_UP;
+            }
+            if (x > 0 && !octree.get(x - 1, y, z)) {
+                exposedFaces |= CollisionCandidateCache.EXPOSED_X_DOWN;
+            }
+            if (y < 15 && !octree.get(x, y + 1, z)) {
+                exposedFaces |= CollisionCandidateCache.EXPOSED_Y_UP;
+            }
+            if (y > 0 && !octree.get(x, y - 1, z)) {
+                exposedFaces |= CollisionCandidateCache.EXPOSED_Y_DOWN;
+            }
+            if (z < 15 && !octree.get(x, y, z + 1)) {
+                exposedFaces |= CollisionCandidateCache.EXPOSED_Z_UP;
+            }
+            if (z > 0 && !octree.get(x, y, z - 1)) {
+                exposedFaces |= CollisionCandidateCache.EXPOSED_Z_DOWN;
+            }
+            return exposedFaces;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.joml.Vector3d;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.VSIterationUtils;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.Arrays;
+
+/**
+ * Finds how far a ship can move in a straight line before one of its blocks runs into a solid world block, so fast
+ * ships can't jump over a thin wall from one substep to the next.
+ * <p>
+ * Only the blocks of the ship with an open side facing the direction of the move are swept, the others are behind
+ * them. Every swept block is treated as the point at its center, and walked through the world grid one block at a
+ * time along the move (Amanatides and Woo). Blocks that start inside of a world block are skipped, the collision
+ * solver already handles those.
+ * <p>
+ * Not thread safe.
+ */
+public class TerrainSweep {
+
+    private static final int INITIAL_CAPACITY = 64;
+    // Moves that change a ship space axis by less than this fraction of their length don't sweep that axis's sides.
+    private static final double SIDE_THRESHOLD = 1e-3;
+
+    // The centers of the blocks being swept, in ship space until they're transformed to global.
+    private double[] xs, ys, zs;
+    private int count;
+    // Temp variable
+    private final Vector3d moveInShip;
+    // Reused for every block, so collecting the blocks doesn't allocate a lambda per block.
+    private final VSIterationUtils.IntTernaryConsumer blockCollector = this::collectBlock;
+    // The section isSolid() looked up last, sweeps mostly stay in the same section.
+    private int lastSectionX, lastSectionY, lastSectionZ;
+    private IBitOctree lastSection;
+    private boolean hasLastSection;
+
+    public TerrainSweep() {
+        this.xs = new double[INITIAL_CAPACITY];
+        this.ys = new double[INITIAL_CAPACITY];
+        this.zs = new double[INITIAL_CAPACITY];
+        this.count = 0;
+        this.moveInShip = new Vector3d();
+    }
+
+    /**
+     * @param shipBlocks The solid blocks of the ship.
+     * @param transform  Where the ship is at the start of the move.
+     * @param world      The world blocks to sweep against.
+     * @return The fraction of the move, from 0 to 1, after which the center of a block of the ship first enters a solid
+     * world block. 1 if the ship can make the whole move.
+     */
+    public double findTimeOfImpact(ShipSolidBlockIndex shipBlocks, ShipTransform transform, double moveX,
+                                   double moveY, double moveZ, CollisionCandidateCache.SectionSource world) {
+        final double moveLength = Math.sqrt(moveX * moveX + moveY * moveY + moveZ * moveZ);
+        if (moveLength == 0) {
+            return 1;
+        }
+        // Which sides of the ship face the move, in ship space.
+        transform.transformDirection(moveInShip.set(moveX, moveY, moveZ), TransformType.GLOBAL_TO_SUBSPACE);
+        final double threshold = moveLength * SIDE_THRESHOLD;
+        final int sideX = moveInShip.x > threshold ? 1 : moveInShip.x < -threshold ? -1 : 0;
+        final int sideY = moveInShip.y > threshold ? 1 : moveInShip.y < -threshold ? -1 : 0;
+        final int sideZ = moveInShip.z > threshold ? 1 : moveInShip.z < -threshold ? -1 : 0;
+
+        count = 0;
+        shipBlocks.forEachExposedBlock(sideX, sideY, sideZ, blockCollector);
+        transform.transformPositions(xs, ys, zs, 0, count, TransformType.SUBSPACE_TO_GLOBAL);
+
+        hasLastSection = false;
+        double timeOfImpact = 1;
+        for (int i = 0; i < count; i++) {
+            timeOfImpact = sweepPoint(xs[i], ys[i], zs[i], moveX, moveY, moveZ, timeOfImpact, world);
+        }
+        // Don't keep the world's sections alive.
+        lastSection = null;
+        return timeOfImpact;
+    }
+
+    private void collectBlock(int x, int y, int z) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            zs = Arrays.copyOf(zs, count * 2);
+        }
+        xs[count] = x + .5;
+        ys[count] = y + .5;
+        zs[count] = z + .5;
+        count++;
+    }
+
+    /**
+     * @param limit Only world blocks entered before this fraction of the move matter.
+     * @return The fraction of the move at which the point enters a solid world block, or limit if it doesn't before
+     * then.
+     */
+    private double sweepPoint(double startX, double startY, double startZ, double moveX, double moveY, double moveZ,
+                              double limit, CollisionCandidateCache.SectionSource world) {
+        int x = (int) Math.floor(startX);
+        int y = (int) Math.floor(startY);
+        int z = (int) Math.floor(startZ);
+        if (isSolid(x, y, z, world)) {
+            return limit;
+        }
+        final int stepX = moveX > 0 ? 1 : -1;
+        final int stepY = moveY > 0 ? 1 : -1;
+        final int stepZ = moveZ > 0 ? 1 : -1;
+        // The fraction of the move it takes to cross one block along every axis, and to reach the next block.
+        final double deltaX = moveX == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / moveX);
+        final double deltaY = moveY == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / moveY);
+        final double deltaZ = moveZ == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / moveZ);
+        double nextX = deltaX * (stepX > 0 ? x + 1 - startX : startX - x);
+        double nextY = deltaY * (stepY > 0 ? y + 1 - startY : startY - y);
+        double nextZ = deltaZ * (stepZ > 0 ? z + 1 - startZ : startZ - z);
+        while (true) {
+            final double time;
+            if (nextX <= nextY && nextX <= nextZ) {
+                time = nextX;
+                x += stepX;
+                nextX += deltaX;
+            } else if (nextY <= nextZ) {
+                time = nextY;
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                time = nextZ;
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+            if (time >= limit) {
+                return limit;
+            }
+            if (isSolid(x, y, z, world)) {
+                return time;
+            }
+        }
+    }
+
+    private boolean isSolid(int x, int y, int z, CollisionCandidateCache.SectionSource world) {
+        if (y < 0 || y > 255) {
+            return false;
+        }
+        final int sectionX = x >> 4, sectionY = y >> 4, sectionZ = z >> 4;
+        if (!hasLastSection || sectionX != lastSectionX || sectionY != lastSectionY || sectionZ != lastSectionZ) {
+            final ITerrainOctreeProvider section = world.getSection(sectionX, sectionY, sectionZ);
+            lastSection = section != null ? section.getSolidOctree() : null;
+            lastSectionX = sectionX;
+            lastSectionY = sectionY;
+            lastSectionZ = sectionZ;
+            hasLastSection = true;
+        }
+        return lastSection != null && lastSection.get(x & 15, y & 15, z & 15);
+    }
+}
@@ -15,22 +15,20 @@ import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
 import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
 import valkyrienwarfare.api.TransformType;
 
-import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
-public class WaterForcesTask implements Callable<Void> {
+/**
+ * Computes the buoyancy and drag forces from a range of water hits of a {@link WorldWaterCollider}, all of the same
+ * fluid type.
+ */
+public class WaterForcesTask implements IWaterForcesTask {
 
     public final static int MAX_TASKS_TO_CHECK = 500;
 
     // The radius of the sphere that represents each water block in meters.
-    private static final double SPHERE_RADIUS = .5;
+    static final double SPHERE_RADIUS = .5;
     // Acceleration in m/s^2
-    private static final double GRAVITY_ACCELERATION = 9.8;
-    // Mass in kg
-    private static final double MASS_OF_CUBIC_METER_OF_WATER = 1000;
-    // Density in kg/m^3
-    private static final double DENSITY_OF_WATER = 1000;
-    // Dimensionless constant. Higher values mean more damping force from water.
-    private static final double DRAG_COEFFICIENT_OF_WATER = .3;
+    static final double GRAVITY_ACCELERATION = 9.8;
     // The radius, in meters, of the AABB of water blocks and terrain blocks.
     private static final double AABB_RADIUS = .5;
 
@@ -38,15 +36,36 @@ public class WaterForcesTask implements Callable<Void> {
     private final BlockPos colliderCenter;
     private final TIntList waterHitsToCheck;
     private final int minHitIndex, maxHitIndex;
+    // Shared by every task of the collider, this task only uses the range from minHitIndex to maxHitIndex.
+    private final double[] waterHitXs, waterHitYs, waterHitZs;
+    // The ship blocks deep under water, their buoyancy is added by a DeepBlocksBuoyancyTask instead.
+    private final ShipSolidBlockIndex deepBlocks;
+    // The fluid of every water hit of this task.
+    private final FluidProperties fluid;
+    // The velocity of the current at every water hit in m/s, null if the fluid ignores currents.
+    @Nullable
+    private final double[] currentXs, currentYs, currentZs;
     private final Vector3d addedForce, addedTorque;
 
     public WaterForcesTask(final PhysicsObject parent, final BlockPos colliderCenter, final TIntList waterHitsToCheck,
-                           final int minHitIndex, final int maxHitIndex) {
+                           final int minHitIndex, final int maxHitIndex, final double[] waterHitXs,
+                           final double[] waterHitYs, final double[] waterHitZs,
+                           final ShipSolidBlockIndex deepBlocks, final FluidProperties fluid,
+                           @Nullable final double[] currentXs, @Nullable final double[] currentYs,
+                           @Nullable final double[] currentZs) {
         this.parent = parent;
         this.colliderCenter = colliderCenter;
         this.waterHitsToCheck = waterHitsToCheck;
         this.minHitIndex = minHitIndex;
         this.maxHitIndex = maxHitIndex;
+        this.waterHitXs = waterHitXs;
+        this.waterHitYs = waterHitYs;
+        this.waterHitZs = waterHitZs;
+        this.deepBlocks = deepBlocks;
+        this.fluid = fluid;
+        this.currentXs = currentXs;
+        this.currentYs = currentYs;
+        this.currentZs = currentZs;
         this.addedForce = new Vector3d();
         this.addedTorque = new Vector3d();
     }
@@ -54,6 +73,7 @@ public class WaterForcesTask implements Callable<Void> {
     /**
      * Adds the computed force and torque to the parent ship
      */
+    @Override
     public void addForcesToShip() {
         final PhysicsCalculations physicsEngine = parent.getPhysicsCalculations();
         physicsEngine.addForceAndTorque(addedForce, addedTorque);
@@ -80,11 +100,21 @@ public class WaterForcesTask implements Callable<Void> {
         final Vector3d temp8 = new Vector3d();
         final Vector3d temp9 = new Vector3d();
 
+        // Transform all the water blocks to ship space in one batch
+        for (int index = minHitIndex; index <= maxHitIndex; index++) {
+            SpatialDetector.setPosWithRespectTo(waterHitsToCheck.get(index), colliderCenter, currentPos);
+            waterHitXs[index] = currentPos.getX() + .5;
+            waterHitYs[index] = currentPos.getY() + .5;
+            waterHitZs[index] = currentPos.getZ() + .5;
+        }
+        physicsTransform.transformPositions(waterHitXs, waterHitYs, waterHitZs, minHitIndex, maxHitIndex + 1,
+            TransformType.GLOBAL_TO_SUBSPACE);
+
         for (int index = minHitIndex; index <= maxHitIndex; index++) {
             final int waterHitPosHash = waterHitsToCheck.get(index);
             SpatialDetector.setPosWithRespectTo(waterHitPosHash, colliderCenter, currentPos);
 
-            final Vector3dc waterPosInShipSpace = physicsTransform.transformPositionNew(JOML.convertDouble(currentPos, temp0).add(.5, .5, .5), TransformType.GLOBAL_TO_SUBSPACE);
+            final Vector3dc waterPosInShipSpace = temp0.set(waterHitXs[index], waterHitYs[index], waterHitZs[index]);
 
             final int minX = (int) Math.floor(waterPosInShipSpace.x() - .5);
             final int minY = (int) Math.floor(waterPosInShipSpace.y() - .5);
@@ -105,7 +135,7 @@ public class WaterForcesTask implements Callable<Void> {
                         final ExtendedBlockStorage blockStorage = chunk.storageArrays[y >> 4];
                         if (blockStorage != null) {
                             final IBitOctree terrainOctree = ((ITerrainOctreeProvider) blockStorage.data).getSolidOctree();
-                            if (terrainOctree.get(x & 15, y & 15, z & 15)) {
+                            if (terrainOctree.get(x & 15, y & 15, z & 15) && !deepBlocks.isSolid(x, y, z)) {
                                 // Assume both the water block and terrain block are spheres, then compute the volume
                                 // that overlaps
                                 final Vector3dc shipSolidBlockPosInWorld = physicsTransform.transformPositionNew(temp2.set(x + .5, y + .5, z + .5), TransformType.SUBSPACE_TO_GLOBAL);
@@ -124,14 +154,17 @@ public class WaterForcesTask implements Callable<Void> {
                                 // Collision position is average of ship solid block pos and water pos
                                 final Vector3dc collisionPosInWorld = shipSolidBlockPosInWorld.add(waterPosInWorld, temp3).mul(.5);
 
-                                final Vector3dc buoyancyForce = temp4.set(0, volumeDisplaced * GRAVITY_ACCELERATION * MASS_OF_CUBIC_METER_OF_WATER, 0);
+                                final Vector3dc buoyancyForce = temp4.set(0, volumeDisplaced * GRAVITY_ACCELERATION * fluid.getDensity(), 0);
                                 final Vector3dc collisionPosRelativeToShipCenterInWorld = temp5.set(collisionPosInWorld).sub(physicsTransform.getPosX(), physicsTransform.getPosY(), physicsTransform.getPosZ());
 
                                 addForceAtPoint(collisionPosRelativeToShipCenterInWorld, buoyancyForce, temp7);
 
                                 {
-                                    // Compute water damping force
-                                    final Vector3dc velocity = physicsEngine.getVelocityAtPoint(collisionPosRelativeToShipCenterInWorld, temp9);
+                                    // Compute water damping force, from the velocity of the ship relative to the current
+                                    final Vector3d velocity = physicsEngine.getVelocityAtPoint(collisionPosRelativeToShipCenterInWorld, temp9);
+                                    if (currentXs != null) {
+                                        velocity.sub(currentXs[index], currentYs[index], currentZs[index]);
+                                    }
 
                                     if (!isVectorLengthZero(velocity)) {
                                         // TODO: This is WRONG, but it'll do for now
@@ -141,7 +174,7 @@ public class WaterForcesTask implements Callable<Void> {
                                         final double velocitySquared = velocity.lengthSquared();
 
                                         // Drag formula from https://en.wikipedia.org/wiki/Drag_(physics)
-                                        final double forceMagnitude = (.5) * DENSITY_OF_WATER * velocitySquared * DRAG_COEFFICIENT_OF_WATER * area;
+                                        final double forceMagnitude = (.5) * fluid.getDensity() * velocitySquared * fluid.getDragCoefficient() * area;
 
                                         final Vector3dc dragForce = temp6.set(velocity).normalize().mul(-forceMagnitude);
 
@@ -185,7 +218,7 @@ public class WaterForcesTask implements Callable<Void> {
 
     private static final double VECTOR_LENGTH_SQUARED_ZERO_THRESHOLD = .01;
 
-    private static boolean isVectorLengthZero(Vector3dc vector) {
+    static boolean isVectorLengthZero(Vector3dc vector) {
         return vector.lengthSquared() < VECTOR_LENGTH_SQUARED_ZERO_THRESHOLD;
     }
 }
\ No newline at end of file
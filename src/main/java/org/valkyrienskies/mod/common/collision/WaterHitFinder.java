@@ -0,0 +1,225 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.set.hash.TIntHashSet;
+import lombok.Getter;
+import net.minecraft.util.math.BlockPos;
+import org.joml.Vector3d;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the water blocks that overlap the solid blocks of a ship, starting from the blocks of the ship instead of from
+ * every water block near the ship. {@link WaterForcesTask} treats water blocks and ship blocks as axis aligned unit
+ * cubes centered on the blocks, so a ship block can only overlap the 2x2x2 world blocks around its center in global
+ * space. Water below the keel, or anywhere else the hull doesn't reach, is never looked at.
+ * <p>
+ * A ship block whose 2x2x2 world blocks are all liquid is deep under water. The parts of it those 8 water blocks
+ * overlap add up to exactly the whole block, centered on the block. So instead of keeping their water blocks, the deep
+ * blocks are summed up into a single submerged volume (see {@link #getDeepBlockCenter(Vector3d)}), and only the water
+ * blocks touching the waterline blocks become water hits. {@link WaterForcesTask} skips the deep blocks, so no water
+ * is counted twice.
+ * <p>
+ * Water hits and deep blocks are kept by {@link FluidPropertiesRegistry} fluid type, so the forces of each fluid type
+ * can be computed together. A ship block is only deep if its 8 world blocks are all the same fluid type.
+ * <p>
+ * Not thread safe.
+ */
+public class WaterHitFinder {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // The solid blocks of the ship in ship space, and their centers, transformed to global by find().
+    private int[] blockXs, blockYs, blockZs;
+    private double[] xs, ys, zs;
+    private int count;
+    // The water hits and deep blocks of every fluid type found so far, by fluid type.
+    private final List<FluidTypeHits> fluidTypes;
+    // The ship blocks fully in water, of any fluid type.
+    @Getter
+    private final ShipSolidBlockIndex deepBlocks;
+    // The fluid types of the 2x2x2 world blocks around a ship block, -1 for blocks that aren't liquid.
+    private final int[] cornerFluidTypes;
+    // The section getFluidType() looked up last, neighbouring ship blocks are mostly in the same world section.
+    private int lastSectionX, lastSectionY, lastSectionZ;
+    private ITerrainOctreeProvider lastSection;
+    private IBitOctree lastLiquidOctree;
+    private boolean hasLastSection;
+
+    public WaterHitFinder() {
+        this.blockXs = new int[INITIAL_CAPACITY];
+        this.blockYs = new int[INITIAL_CAPACITY];
+        this.blockZs = new int[INITIAL_CAPACITY];
+        this.xs = new double[INITIAL_CAPACITY];
+        this.ys = new double[INITIAL_CAPACITY];
+        this.zs = new double[INITIAL_CAPACITY];
+        this.count = 0;
+        this.fluidTypes = new ArrayList<>();
+        this.deepBlocks = new ShipSolidBlockIndex();
+        this.cornerFluidTypes = new int[8];
+    }
+
+    /**
+     * Forgets the ship blocks and the deep blocks found by the last find().
+     */
+    public void clear() {
+        count = 0;
+        deepBlocks.clear();
+        for (FluidTypeHits fluidType : fluidTypes) {
+            fluidType.clear();
+        }
+    }
+
+    /**
+     * Adds a solid block of the ship, at the given position in ship space.
+     */
+    public void addShipBlock(int x, int y, int z) {
+        if (count == blockXs.length) {
+            blockXs = Arrays.copyOf(blockXs, count * 2);
+            blockYs = Arrays.copyOf(blockYs, count * 2);
+            blockZs = Arrays.copyOf(blockZs, count * 2);
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            zs = Arrays.copyOf(zs, count * 2);
+        }
+        blockXs[count] = x;
+        blockYs[count] = y;
+        blockZs[count] = z;
+        count++;
+    }
+
+    /**
+     * Sorts the water blocks around the ship blocks added since the last clear() into deep blocks and water hits.
+     *
+     * @param transform Where the ship is.
+     * @param world     The world sections the liquid blocks come from.
+     * @param center    The water hits are {@link SpatialDetector} hashes relative to this.
+     * @param hitsOut   The water blocks that overlap a ship block that isn't deep get added to this, once each, in
+     *                  order of fluid type.
+     * @param hitFluidTypesOut The fluid type of every water block added to hitsOut.
+     */
+    public void find(ShipTransform transform, CollisionCandidateCache.SectionSource world, BlockPos center,
+                     TIntList hitsOut, TIntList hitFluidTypesOut) {
+        for (int i = 0; i < count; i++) {
+            xs[i] = blockXs[i] + .5;
+            ys[i] = blockYs[i] + .5;
+            zs[i] = blockZs[i] + .5;
+        }
+        transform.transformPositions(xs, ys, zs, 0, count, TransformType.SUBSPACE_TO_GLOBAL);
+
+        hasLastSection = false;
+        for (int i = 0; i < count; i++) {
+            // The lowest corner of the 2x2x2 world blocks the ship block can overlap
+            final int minX = (int) Math.floor(xs[i] - .5);
+            final int minY = (int) Math.floor(ys[i] - .5);
+            final int minZ = (int) Math.floor(zs[i] - .5);
+            boolean isDeep = true;
+            for (int corner = 0; corner < 8; corner++) {
+                cornerFluidTypes[corner] = getFluidType(minX + (corner & 1), minY + ((corner >> 1) & 1),
+                    minZ + (corner >> 2), world);
+                isDeep &= cornerFluidTypes[corner] != -1 && cornerFluidTypes[corner] == cornerFluidTypes[0];
+            }
+            if (isDeep) {
+                deepBlocks.set(blockXs[i], blockYs[i], blockZs[i], true);
+                final FluidTypeHits fluidType = getFluidTypeHits(cornerFluidTypes[0]);
+                fluidType.deepBlockCount++;
+                fluidType.deepBlockSumX += blockXs[i] + .5;
+                fluidType.deepBlockSumY += blockYs[i] + .5;
+                fluidType.deepBlockSumZ += blockZs[i] + .5;
+                continue;
+            }
+            for (int corner = 0; corner < 8; corner++) {
+                if (cornerFluidTypes[corner] != -1) {
+                    getFluidTypeHits(cornerFluidTypes[corner]).hits.add(SpatialDetector.getHashWithRespectTo(
+                        minX + (corner & 1), minY + ((corner >> 1) & 1), minZ + (corner >> 2), center));
+                }
+            }
+        }
+        // Don't keep the world's sections alive.
+        lastSection = null;
+        lastLiquidOctree = null;
+        for (int fluidType = 0; fluidType < fluidTypes.size(); fluidType++) {
+            final TIntHashSet hits = fluidTypes.get(fluidType).hits;
+            hitsOut.addAll(hits);
+            for (int i = 0; i < hits.size(); i++) {
+                hitFluidTypesOut.add(fluidType);
+            }
+        }
+    }
+
+    /**
+     * @return One more than the highest fluid type with water hits or deep blocks.
+     */
+    public int getFluidTypeCount() {
+        return fluidTypes.size();
+    }
+
+    /**
+     * @return The number of deep blocks in the given fluid type, which is also their submerged volume in cubic meters.
+     */
+    public int getDeepBlockCount(int fluidType) {
+        return fluidType < fluidTypes.size() ? fluidTypes.get(fluidType).deepBlockCount : 0;
+    }
+
+    /**
+     * @return The average center of the deep blocks in the given fluid type, in ship space. Only meaningful if there
+     * is at least one.
+     */
+    public Vector3d getDeepBlockCenter(int fluidType, Vector3d dest) {
+        final FluidTypeHits hits = fluidTypes.get(fluidType);
+        return dest.set(hits.deepBlockSumX, hits.deepBlockSumY, hits.deepBlockSumZ).div(hits.deepBlockCount);
+    }
+
+    private FluidTypeHits getFluidTypeHits(int fluidType) {
+        while (fluidTypes.size() <= fluidType) {
+            fluidTypes.add(new FluidTypeHits());
+        }
+        return fluidTypes.get(fluidType);
+    }
+
+    /**
+     * @return The fluid type of the world block at x, y, z, -1 if it isn't liquid.
+     */
+    private int getFluidType(int x, int y, int z, CollisionCandidateCache.SectionSource world) {
+        if (y < 0 || y > 255) {
+            return -1;
+        }
+        final int sectionX = x >> 4, sectionY = y >> 4, sectionZ = z >> 4;
+        if (!hasLastSection || sectionX != lastSectionX || sectionY != lastSectionY || sectionZ != lastSectionZ) {
+            lastSection = world.getSection(sectionX, sectionY, sectionZ);
+            lastLiquidOctree = lastSection != null ? lastSection.getLiquidOctree() : null;
+            lastSectionX = sectionX;
+            lastSectionY = sectionY;
+            lastSectionZ = sectionZ;
+            hasLastSection = true;
+        }
+        if (lastLiquidOctree == null || !lastLiquidOctree.get(x & 15, y & 15, z & 15)) {
+            return -1;
+        }
+        return lastSection.getFluidType(x & 15, y & 15, z & 15);
+    }
+
+    private static class FluidTypeHits {
+
+        // Used to give every water block to the hits once.
+        final TIntHashSet hits = new TIntHashSet();
+        int deepBlockCount;
+        // The sum of the centers of the deep blocks in ship space.
+        double deepBlockSumX, deepBlockSumY, deepBlockSumZ;
+
+        void clear() {
+            hits.clear();
+            deepBlockCount = 0;
+            deepBlockSumX = 0;
+            deepBlockSumY = 0;
+            deepBlockSumZ = 0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+
+/**
+ * Answers how high the liquid is in the columns of a world, from the liquid tops every section keeps up to date (see
+ * {@link ITerrainOctreeProvider#getLiquidTop(int, int)}). Only the sections from the top of the world down to the
+ * highest one with liquid are looked at, so the cost doesn't depend on how deep the liquid is.
+ */
+public class WaterSurface {
+
+    /**
+     * @return The y of the highest liquid block in the column at x, z. -1 if the column has no liquid.
+     */
+    public static int getSurfaceY(CollisionCandidateCache.SectionSource world, int x, int z) {
+        for (int sectionY = 15; sectionY >= 0; sectionY--) {
+            final ITerrainOctreeProvider section = world.getSection(x >> 4, sectionY, z >> 4);
+            if (section != null) {
+                final int top = section.getLiquidTop(x & 15, z & 15);
+                if (top != -1) {
+                    return sectionY << 4 | top;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The highest {@link #getSurfaceY} of the columns from minX, minZ to maxX, maxZ (inclusive). -1 if none
+     * of them have liquid.
+     */
+    public static int getHighestSurfaceY(CollisionCandidateCache.SectionSource world, int minX, int minZ, int maxX,
+                                         int maxZ) {
+        int highest = -1;
+        for (int sectionX = minX >> 4; sectionX <= maxX >> 4; sectionX++) {
+            for (int sectionZ = minZ >> 4; sectionZ <= maxZ >> 4; sectionZ++) {
+                // Sections entirely below the highest liquid found so far can't raise it
+                for (int sectionY = 15; sectionY >= 0 && (sectionY << 4 | 15) > highest; sectionY--) {
+                    final ITerrainOctreeProvider section = world.getSection(sectionX, sectionY, sectionZ);
+                    if (section == null || section.getLiquidOctree().getSetBitCount() == 0) {
+                        continue;
+                    }
+                    int top = -1;
+                    for (int x = Math.max(minX, sectionX << 4); x <= Math.min(maxX, sectionX << 4 | 15); x++) {
+                        for (int z = Math.max(minZ, sectionZ << 4); z <= Math.min(maxZ, sectionZ << 4 | 15); z++) {
+                            top = Math.max(top, section.getLiquidTop(x & 15, z & 15));
+                        }
+                    }
+                    if (top != -1) {
+                        highest = Math.max(highest, sectionY << 4 | top);
+                        break;
+                    }
+                }
+            }
+        }
+        return highest;
+    }
+}
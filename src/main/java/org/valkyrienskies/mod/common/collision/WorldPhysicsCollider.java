@@ -1,34 +1,31 @@
 package org.valkyrienskies.mod.common.collision;
 
+import gnu.trove.list.TByteList;
 import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TByteArrayList;
 import gnu.trove.list.array.TIntArrayList;
+import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.BlockPos.MutableBlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.ChunkCache;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
-import org.apache.commons.lang3.tuple.ImmutableTriple;
-import org.apache.commons.lang3.tuple.Triple;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
-import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
-import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.ships.ship_world.GameTickSnapshot;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
-import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.ValkyrienUtils;
 import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
 import valkyrienwarfare.api.TransformType;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
+import javax.annotation.Nullable;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
 /**
@@ -42,96 +39,280 @@ public class WorldPhysicsCollider {
     // Used to expand the AABB used to check for potential collisions; helps prevent
     // ships ghosting through blocks
     public static final double AABB_EXPANSION = 2D;
-    // The range we check for possible collisions with a block.
-    public static final double RANGE_CHECK = 1.8D;
     // The minimum depth a collision projection must have, to not use the default
     // collision normal of <0, 1, 0>
     public static final double AXIS_TOLERANCE = .3D;
-    // Time in seconds between collision cache updates. A value of .1D means we
-    // update the collision cache every 1/10th of a second.
-    public static final double CACHE_UPDATE_PERIOD = .01;
+    // The collision cache is rebuilt before any point of the ship could have moved this many blocks since the last
+    // rebuild. The cache covers a few blocks more than the ship, so this keeps the ship inside of it.
+    public static final double CACHE_MAX_DRIFT = 1D;
     // Determines how 'bouncy' collisions are
     public static final double COEFFICIENT_OF_RESTITUTION = .52D;
 
     // Greater coefficients result in more friction
     public static final double KINETIC_FRICTION_COEFFICIENT = .15D;
-    // Use ThreadLocalRandom because its much faster than Random.
-    private final ThreadLocalRandom rand;
-    private final Collection<ShipCollisionTask> tasks;
+    // Collision tasks smaller than this are never split, the overhead of a task would be bigger than its work.
+    private static final int MIN_COLLISION_TASK_SIZE = 16;
+    // Weight of the newest sample in the moving average of the cost of checking a potential hit.
+    private static final double HIT_COST_SMOOTHING = .1;
+    // A swept ship stops this many blocks before the center of one of its blocks would enter a world block. Close
+    // enough for the blocks to overlap, so the collision solver sees the contact in the next substep.
+    private static final double SWEEP_SKIN = .1;
+    // The collision cache isn't updated for swept boxes with more blocks than this, the size of a 256 x 64 x 256 box.
+    // The first update of the cache scans every block of the box, which would freeze the physics thread for longer.
+    private static final double MAX_COLLISION_BOX_BLOCKS = 1 << 22;
+    private final ShipCollisionTask rootCollisionTask;
     private final PhysicsCalculations calculator;
     private final PhysicsObject parent;
     private final TIntList cachedPotentialHits;
-    private final TIntArrayList cachedHitsToRemove;
-    // Ensures this always updates the first tick after creation
-    private double ticksSinceCacheUpdate;
-    private boolean updateCollisionTasksCache;
+    // The exposed faces (see CollisionCandidateCache) of the cached potential hit at the same index.
+    private final TByteList cachedPotentialHitExposedFaces;
+    // The solid world blocks near the ship, updated incrementally as the ship moves. Created on the physics thread,
+    // because it shares the terrain collision index of the world's physics loop.
+    @Nullable
+    private CollisionCandidateCache candidateCache;
+    // The solid blocks of the ship, updated from the block edits of every physics tick.
+    private final ShipSolidBlockIndex shipBlockIndex;
+    // True if shipBlockIndex may have missed block edits, and has to be rebuilt from the ship's chunks.
+    private boolean shipBlockIndexStale;
+    private final TerrainSweep terrainSweep;
+    // Seconds since the last rebuild, starts high so this always updates the first tick after creation
+    private double secondsSinceCacheUpdate;
+    // Seconds since the last rebuild, without the random offset of secondsSinceCacheUpdate.
+    private double cacheAge;
+    // Half the diagonal of the ship's bounding box as of the last collision cache rebuild.
+    private double shipRadius;
     private BlockPos centerPotentialHit;
+    private AxisAlignedBB localShipBB;
+    // Moving average of the nanoseconds it takes to check one potential hit, used to size the collision tasks.
+    private double averageNanosPerHit;
+    private int collisionTaskCount;
+    // Reused by applyContactVelocityChanges(), so summing the velocity changes doesn't allocate anything.
+    private final Consumer<ShipCollisionTask> leafVelocityChangeSummer;
+    private final Vector3d linearVelocityChangeSum;
+    private final Vector3d angularVelocityChangeSum;
+    private int impulseCountSum;
+    // The number of ship blocks touching world blocks found by this physics tick, and by the previous one.
+    private int contactCount;
+    private int previousContactCount;
 
     public WorldPhysicsCollider(PhysicsCalculations calculations) {
         this.calculator = calculations;
         this.parent = calculations.getParent();
         this.cachedPotentialHits = new TIntArrayList();
-        this.cachedHitsToRemove = new TIntArrayList();
-        this.rand = ThreadLocalRandom.current();
-        this.tasks = new ArrayList<>();
-        this.ticksSinceCacheUpdate = 25D;
-        this.updateCollisionTasksCache = true;
+        this.cachedPotentialHitExposedFaces = new TByteArrayList();
+        this.candidateCache = null;
+        this.shipBlockIndex = new ShipSolidBlockIndex();
+        this.shipBlockIndexStale = true;
+        this.terrainSweep = new TerrainSweep();
+        this.rootCollisionTask = new ShipCollisionTask(this);
+        this.secondsSinceCacheUpdate = 25D;
+        this.cacheAge = 25D;
+        this.shipRadius = 0;
         this.centerPotentialHit = null;
+        this.localShipBB = null;
+        // A guess until we've measured it, this gives tasks about the size they used to have.
+        this.averageNanosPerHit = 1000;
+        this.collisionTaskCount = 0;
+        this.leafVelocityChangeSummer = this::sumLeafVelocityChanges;
+        this.linearVelocityChangeSum = new Vector3d();
+        this.angularVelocityChangeSum = new Vector3d();
+        this.impulseCountSum = 0;
+        this.contactCount = 0;
+        this.previousContactCount = 0;
     }
 
     public void tickUpdatingTheCollisionCache() {
-        // Multiply by 20 to convert seconds (physTickSpeed) into ticks
-        ticksSinceCacheUpdate += calculator.getPhysicsTimeDeltaPerPhysTick();
-        for (int i = 0; i < cachedHitsToRemove.size(); i++) {
-            cachedPotentialHits.remove(cachedHitsToRemove.get(i));
+        if (shipBlockIndexStale) {
+            rebuildShipBlockIndex();
         }
-        cachedHitsToRemove.resetQuick();
-        if (ticksSinceCacheUpdate > CACHE_UPDATE_PERIOD) {
+        secondsSinceCacheUpdate += calculator.getPhysicsTimeDeltaPerPhysTick();
+        cacheAge += calculator.getPhysicsTimeDeltaPerPhysTick();
+        // Rebuild on our own cadence, unless the ship moves fast enough to leave the cached area before then.
+        if (secondsSinceCacheUpdate > VSConfig.SUBSTEP_SETTINGS.collisionCacheUpdatePeriod
+            || calculator.getMaxPointSpeed() * cacheAge > CACHE_MAX_DRIFT) {
             updatePotentialCollisionCache();
-            updateCollisionTasksCache = true;
         }
     }
 
-    public void splitIntoCollisionTasks(List<ShipCollisionTask> toAdd) {
-        if (updateCollisionTasksCache) {
-            tasks.clear();
-            int index = 0;
-            int size = cachedPotentialHits.size();
-            while (index < size) {
-                ShipCollisionTask task = new ShipCollisionTask(this, index);
-                index += ShipCollisionTask.MAX_TASKS_TO_CHECK;
-                tasks.add(task);
+    /**
+     * Updates the solid blocks of the ship with the block edits of this physics tick.
+     *
+     * @param editsMissed True if some block edits never made it to the physics thread.
+     */
+    public void applyBlockEdits(List<GameTickSnapshot.BlockEdit> blockEdits, boolean editsMissed) {
+        if (editsMissed) {
+            shipBlockIndexStale = true;
+        }
+        if (shipBlockIndexStale) {
+            // It will be rebuilt from the chunks anyways.
+            return;
+        }
+        for (GameTickSnapshot.BlockEdit edit : blockEdits) {
+            final BlockPos pos = edit.getPos();
+            shipBlockIndex.set(pos.getX(), pos.getY(), pos.getZ(), edit.getNewState().getMaterial().isSolid());
+        }
+    }
+
+    /**
+     * Called while the ship's physics isn't active. The game thread throws the block edits of inactive ships away, so
+     * the solid blocks of the ship have to be rebuilt once it is active again.
+     */
+    public void invalidateShipBlockIndex() {
+        shipBlockIndexStale = true;
+    }
+
+    /**
+     * Lets go of the world sections the collision cache holds on to, so the terrain collision index can forget them.
+     * Called once the ship's physics isn't active, or the ship isn't loaded anymore. The cache is rebuilt by the next
+     * collision cache update.
+     */
+    public void releaseCollisionCache() {
+        if (candidateCache != null) {
+            candidateCache.clear();
+        }
+        secondsSinceCacheUpdate = 25D;
+    }
+
+    private void rebuildShipBlockIndex() {
+        shipBlockIndexStale = false;
+        shipBlockIndex.clear();
+        // From the solid octrees of the ship's chunks, the block positions of the ship are only safe to read from the
+        // game thread.
+        for (ChunkPos chunkPos : parent.getChunkClaim()) {
+            final Chunk chunk = parent.getChunkAt(chunkPos.x, chunkPos.z);
+            if (chunk == null) {
+                continue;
             }
-            updateCollisionTasksCache = false;
+            for (int sectionY = 0; sectionY < 16; sectionY++) {
+                final ExtendedBlockStorage storage = chunk.storageArrays[sectionY];
+                if (storage == null) {
+                    continue;
+                }
+                final int minX = chunkPos.x << 4, minY = sectionY << 4, minZ = chunkPos.z << 4;
+                ((ITerrainOctreeProvider) storage.getData()).getSolidOctree().forEachSetBitInRange(0, 0, 0, 15, 15,
+                    15, (x, y, z) -> shipBlockIndex.set(minX | x, minY | y, minZ | z, true));
+            }
+        }
+    }
+
+    /**
+     * Sweeps the ship along a move from its current physics transform, for continuous collision.
+     *
+     * @return The fraction of the move the ship can make before it hits the world, from 0 to 1.
+     */
+    public double getSweptMoveFraction(double moveX, double moveY, double moveZ) {
+        final ChunkCache cache = parent.getCachedSurroundingChunks();
+        if (cache == null || shipBlockIndexStale) {
+            return 1;
+        }
+        final double timeOfImpact = terrainSweep.findTimeOfImpact(shipBlockIndex,
+            parent.getShipTransformationManager().getCurrentPhysicsTransform(), moveX, moveY, moveZ,
+            (sectionX, sectionY, sectionZ) -> getTerrainSection(cache, sectionX, sectionY, sectionZ));
+        if (timeOfImpact >= 1) {
+            return 1;
+        }
+        final double moveLength = Math.sqrt(moveX * moveX + moveY * moveY + moveZ * moveZ);
+        return Math.max(0, timeOfImpact - SWEEP_SKIN / moveLength);
+    }
+
+    /**
+     * Splits the cached potential hits into collision tasks, sized using the measured cost of a hit so that every
+     * task takes about {@link VSConfig.MultithreadingSettings#targetCollisionTaskMicros}. The tasks are reused every
+     * tick.
+     *
+     * @return The root collision task, or null if there is nothing to check.
+     */
+    public ShipCollisionTask prepareCollisionTask() {
+        previousContactCount = contactCount;
+        contactCount = 0;
+        final int size = cachedPotentialHits.size();
+        if (size == 0) {
+            collisionTaskCount = 0;
+            return null;
+        }
+        final double targetTaskNanos = VSConfig.MULTITHREADING_SETTINGS.targetCollisionTaskMicros * 1000;
+        final int grainSize = (int) Math.max(MIN_COLLISION_TASK_SIZE, targetTaskNanos / averageNanosPerHit);
+        collisionTaskCount = rootCollisionTask.prepare(0, size, grainSize);
+        return rootCollisionTask;
+    }
+
+    /**
+     * Counts the contacts found by the collision task, and updates the measured cost of checking a potential hit.
+     * Must be called once after the collision task found its contacts, before they are resolved.
+     */
+    public void processCollisionTask(ShipCollisionTask rootTask) {
+        contactCount = rootTask.getContactCount();
+
+        if (rootTask.getTaskSize() > 0) {
+            final double nanosPerHit = (double) rootTask.getComputeTimeNano() / rootTask.getTaskSize();
+            averageNanosPerHit += (nanosPerHit - averageNanosPerHit) * HIT_COST_SMOOTHING;
         }
-        cachedPotentialHits.shuffle(rand);
-        toAdd.addAll(tasks);
     }
 
-    public void processCollisionTask(ShipCollisionTask task) {
-        MutableBlockPos inWorldPos = new MutableBlockPos();
-        MutableBlockPos inLocalPos = new MutableBlockPos();
+    /**
+     * Works out the velocity change one contact asks for, against the current velocity of the ship, and adds it to
+     * the accumulator. Doesn't change the ship, so any number of threads can call this at once.
+     */
+    void resolveContact(ContactBuffer contacts, int index, ContactImpulseAccumulator accumulator) {
+        accumulator.inWorldPos.setPos(contacts.getInWorldX(index), contacts.getInWorldY(index),
+            contacts.getInWorldZ(index));
+        accumulator.inLocalPos.setPos(contacts.getInLocalX(index), contacts.getInLocalY(index),
+            contacts.getInLocalZ(index));
+        handleActualCollision(accumulator.inWorldPos, accumulator.inLocalPos,
+            Block.getStateById(contacts.getInWorldStateId(index)),
+            Block.getStateById(contacts.getInLocalStateId(index)), contacts.getInWorldExposedFaces(index), accumulator);
+    }
 
-        Iterator<CollisionInformationHolder> collisionIterator = task
-            .getCollisionInformationIterator();
+    /**
+     * Applies the average of the velocity changes every contact asked for in the last resolution of the collision
+     * task. The velocity changes are summed in the order of the potential hits, which doesn't depend on how the task
+     * was split, so the result is the same no matter how many threads resolved the contacts.
+     */
+    public void applyContactVelocityChanges(ShipCollisionTask rootTask) {
+        linearVelocityChangeSum.zero();
+        angularVelocityChangeSum.zero();
+        impulseCountSum = 0;
+        rootTask.forEachLeaf(leafVelocityChangeSummer);
+        if (impulseCountSum == 0) {
+            return;
+        }
+        // Every contact asked for the velocity change that resolves it alone, so splitting the velocity change between
+        // them keeps contacts that push the same way from adding up to a way too strong push.
+        final double weight = 1D / impulseCountSum;
+        calculator.getLinearVelocity().add(linearVelocityChangeSum.mul(weight));
+        calculator.getAngularVelocity().add(angularVelocityChangeSum.mul(weight));
+    }
 
-        while (collisionIterator.hasNext()) {
-            CollisionInformationHolder info = collisionIterator.next();
-            inWorldPos.setPos(info.inWorldX, info.inWorldY, info.inWorldZ);
-            inLocalPos.setPos(info.inLocalX, info.inLocalY, info.inLocalZ);
-            handleActualCollision(inWorldPos, inLocalPos, info.inWorldState,
-                info.inLocalState);
+    private void sumLeafVelocityChanges(ShipCollisionTask task) {
+        final ContactBuffer contacts = task.getContacts();
+        for (int i = 0; i < contacts.size(); i++) {
+            linearVelocityChangeSum.add(contacts.getLinearVelocityChangeX(i), contacts.getLinearVelocityChangeY(i),
+                contacts.getLinearVelocityChangeZ(i));
+            angularVelocityChangeSum.add(contacts.getAngularVelocityChangeX(i), contacts.getAngularVelocityChangeY(i),
+                contacts.getAngularVelocityChangeZ(i));
+            impulseCountSum += contacts.getImpulseCount(i);
         }
+    }
 
-        /*
-         * for (CollisionInformationHolder info :
-         * task.getCollisionInformationGenerated()) { inWorldPos.setPos(info.inWorldX,
-         * info.inWorldY, info.inWorldZ); inLocalPos.setPos(info.inLocalX,
-         * info.inLocalY, info.inLocalZ); handleActualCollision(info.collider,
-         * inWorldPos, inLocalPos, info.inWorldState, info.inLocalState); }
-         */
+    /**
+     * @return The number of ship blocks touching world blocks found by the last collision task.
+     */
+    public int getContactCount() {
+        return contactCount;
+    }
+
+    /**
+     * @return True if the ship touches the world in this physics tick, but didn't touch it in the previous one.
+     */
+    public boolean hasNewContact() {
+        return contactCount > 0 && previousContactCount == 0;
+    }
 
-        task.getCollisionInformationGenerated().clear();
+    /**
+     * @return The number of leaf tasks the last {@link #prepareCollisionTask()} split the collision check into.
+     */
+    public int getCollisionTaskCount() {
+        return collisionTaskCount;
     }
 
     private static final byte[] combinationsOfOnes = new byte[] {
@@ -145,11 +326,6 @@ public class WorldPhysicsCollider {
             -1, -1, -1
     };
 
-    // Temp variables
-    private final Vector3d temp0 = new Vector3d();
-    private final Vector3d temp1 = new Vector3d();
-    private final Vector3d temp2 = new Vector3d();
-    private final Vector3d temp3 = new Vector3d();
 
     private static final double SPHERE_RADIUS = .25;
 
@@ -157,31 +333,38 @@ public class WorldPhysicsCollider {
     // ideal value that is to be followed
     private boolean handleActualCollision(BlockPos inWorldPos,
         BlockPos inLocalPos,
-        IBlockState inWorldState, IBlockState inLocalState) {
+        IBlockState inWorldState, IBlockState inLocalState, int inWorldExposedFaces,
+        ContactImpulseAccumulator accumulator) {
 
         final ShipTransform parentTransform = parent.getShipTransformationManager().getCurrentPhysicsTransform();
 
-        final boolean isXUpSolid = isBlockInWorldSolidFast(inWorldPos.getX() + 1, inWorldPos.getY(), inWorldPos.getZ());
-        final boolean isXDownSolid = isBlockInWorldSolidFast(inWorldPos.getX() - 1, inWorldPos.getY(), inWorldPos.getZ());
-        final boolean isYUpSolid = isBlockInWorldSolidFast(inWorldPos.getX(), inWorldPos.getY() + 1, inWorldPos.getZ());
-        final boolean isYDownSolid = isBlockInWorldSolidFast(inWorldPos.getX(), inWorldPos.getY() - 1, inWorldPos.getZ());
-        final boolean isZUpSolid = isBlockInWorldSolidFast(inWorldPos.getX(), inWorldPos.getY(), inWorldPos.getZ() + 1);
-        final boolean isZDownSolid = isBlockInWorldSolidFast(inWorldPos.getX(), inWorldPos.getY(), inWorldPos.getZ() - 1);
+        // The candidate cache already worked out which neighbours of the world block are solid.
+        final boolean isXUpSolid = (inWorldExposedFaces & CollisionCandidateCache.EXPOSED_X_UP) == 0;
+        final boolean isXDownSolid = (inWorldExposedFaces & CollisionCandidateCache.EXPOSED_X_DOWN) == 0;
+        final boolean isYUpSolid = (inWorldExposedFaces & CollisionCandidateCache.EXPOSED_Y_UP) == 0;
+        final boolean isYDownSolid = (inWorldExposedFaces & CollisionCandidateCache.EXPOSED_Y_DOWN) == 0;
+        final boolean isZUpSolid = (inWorldExposedFaces & CollisionCandidateCache.EXPOSED_Z_UP) == 0;
+        final boolean isZDownSolid = (inWorldExposedFaces & CollisionCandidateCache.EXPOSED_Z_DOWN) == 0;
 
         if (isXUpSolid && isXDownSolid && isYUpSolid && isYDownSolid && isZUpSolid && isZDownSolid) {
             // Interior block, skip
             return false;
         }
 
+        // Transform the 8 spheres of the ship block to global all at once
+        final double[] cornerXs = accumulator.cornerXs;
+        final double[] cornerYs = accumulator.cornerYs;
+        final double[] cornerZs = accumulator.cornerZs;
         for (int i = 0; i < 8; i++) {
-            final int xAxis = combinationsOfOnes[i * 3];
-            final int yAxis = combinationsOfOnes[i * 3 + 1];
-            final int zAxis = combinationsOfOnes[i * 3 + 2];
+            cornerXs[i] = inLocalPos.getX() + .5 + combinationsOfOnes[i * 3] * SPHERE_RADIUS;
+            cornerYs[i] = inLocalPos.getY() + .5 + combinationsOfOnes[i * 3 + 1] * SPHERE_RADIUS;
+            cornerZs[i] = inLocalPos.getZ() + .5 + combinationsOfOnes[i * 3 + 2] * SPHERE_RADIUS;
+        }
+        parentTransform.transformPositions(cornerXs, cornerYs, cornerZs, 0, 8, TransformType.SUBSPACE_TO_GLOBAL);
 
-            // Position of the World's block in global
-            final Vector3dc shipBlockInLocal = temp0.set(inLocalPos.getX() + .5 + xAxis * SPHERE_RADIUS, inLocalPos.getY() + .5 + yAxis * SPHERE_RADIUS, inLocalPos.getZ() + .5 + zAxis * SPHERE_RADIUS);
-            // Position of the World's block in local
-            final Vector3dc shipBlockInGlobal = parentTransform.transformPositionNew(temp1.set(shipBlockInLocal), TransformType.SUBSPACE_TO_GLOBAL);
+        for (int i = 0; i < 8; i++) {
+            // Position of the ship block sphere in global
+            final Vector3dc shipBlockInGlobal = accumulator.temp1.set(cornerXs[i], cornerYs[i], cornerZs[i]);
 
             double xUpOffset = .5 - (shipBlockInGlobal.x() - (inWorldPos.getX() + .5)) + SPHERE_RADIUS;
             double xDownOffset = .5 - ((inWorldPos.getX() + .5) - shipBlockInGlobal.x()) + SPHERE_RADIUS;
@@ -224,79 +407,58 @@ public class WorldPhysicsCollider {
                     // Ignore other axes just use Y
                     if (yUpOffset < yDownOffset) {
                         // yUpOffset is minimum
-                        axis = temp2.set(0, -1, 0);
-                        response = axis.mul(yUpOffset, temp3);
+                        axis = accumulator.temp2.set(0, -1, 0);
+                        response = axis.mul(yUpOffset, accumulator.temp3);
                     } else {
                         // yDownOffset is minimum
-                        axis = temp2.set(0, 1, 0);
-                        response = axis.mul(yDownOffset, temp3);
+                        axis = accumulator.temp2.set(0, 1, 0);
+                        response = axis.mul(yDownOffset, accumulator.temp3);
                     }
                 } else {
                     // Use the minimum overlapping axis
                     if (xUpOffset < xDownOffset && xUpOffset < yUpOffset && xUpOffset < yDownOffset && xUpOffset < zUpOffset && xUpOffset < zDownOffset) {
                         // xUpOffset is minimum
-                        axis = temp2.set(-1, 0, 0);
-                        response = axis.mul(xUpOffset, temp3);
+                        axis = accumulator.temp2.set(-1, 0, 0);
+                        response = axis.mul(xUpOffset, accumulator.temp3);
                     } else if (xDownOffset < yUpOffset && xDownOffset < yDownOffset && xDownOffset < zUpOffset && xDownOffset < zDownOffset) {
                         // xDownOffset is minimum
-                        axis = temp2.set(1, 0, 0);
-                        response = axis.mul(xDownOffset, temp3);
+                        axis = accumulator.temp2.set(1, 0, 0);
+                        response = axis.mul(xDownOffset, accumulator.temp3);
                     } else if (yUpOffset < yDownOffset && yUpOffset < zUpOffset && yUpOffset < zDownOffset) {
                         // yUpOffset is minimum
-                        axis = temp2.set(0, -1, 0);
-                        response = axis.mul(yUpOffset, temp3);
+                        axis = accumulator.temp2.set(0, -1, 0);
+                        response = axis.mul(yUpOffset, accumulator.temp3);
                     } else if (yDownOffset < zUpOffset && yDownOffset < zDownOffset) {
                         // yDownOffset is minimum
-                        axis = temp2.set(0, 1, 0);
-                        response = axis.mul(yDownOffset, temp3);
+                        axis = accumulator.temp2.set(0, 1, 0);
+                        response = axis.mul(yDownOffset, accumulator.temp3);
                     } else if (zUpOffset < zDownOffset) {
                         // zUpOffset is minimum
-                        axis = temp2.set(0, 0, -1);
-                        response = axis.mul(zUpOffset, temp3);
+                        axis = accumulator.temp2.set(0, 0, -1);
+                        response = axis.mul(zUpOffset, accumulator.temp3);
                     } else {
                         // zDownOffset is minimum
-                        axis = temp2.set(0, 0, 1);
-                        response = axis.mul(zDownOffset, temp3);
+                        axis = accumulator.temp2.set(0, 0, 1);
+                        response = axis.mul(zDownOffset, accumulator.temp3);
                     }
                 }
-                handleCollision(shipBlockInGlobal, axis, response, 1);
+                handleCollision(shipBlockInGlobal, axis, response, 1, accumulator);
             }
         }
 
         return false;
     }
 
-    private boolean isBlockInWorldSolidFast(final int posX, final int posY, final int posZ) {
-        if (posY < 0 || posY >= 256) {
-            return false;
-        }
-        final ChunkCache surroundingChunks = parent.getCachedSurroundingChunks();
-        final int relativeChunkX = (posX >> 4) - surroundingChunks.chunkX;
-        final int relativeChunkZ = (posZ >> 4) - surroundingChunks.chunkZ;
-        if (relativeChunkX < 0 || relativeChunkX >= surroundingChunks.chunkArray.length || relativeChunkZ < 0 || relativeChunkZ >= surroundingChunks.chunkArray[relativeChunkX].length) {
-            return false;
-        }
-        final Chunk chunk = surroundingChunks.chunkArray[relativeChunkX][relativeChunkZ];
-        if (chunk == null) {
-            return false;
-        }
-        final ExtendedBlockStorage blockStorage = chunk.storageArrays[posY >> 4];
-        if (blockStorage == null) {
-            return false;
-        }
-        final IBitOctree octree = ITerrainOctreeProvider.class.cast(blockStorage.data).getSolidOctree();
-        return octree.get(posX & 15, posY & 15, posZ & 15);
-    }
-
-    private void handleCollision(final Vector3dc collisionPos, final Vector3dc axis, final Vector3dc offsetVector, final double impulseApplied) {
-        Vector3d inBody = new Vector3d(
+    private void handleCollision(final Vector3dc collisionPos, final Vector3dc axis, final Vector3dc offsetVector, final double impulseApplied,
+                                 final ContactImpulseAccumulator accumulator) {
+        Vector3d inBody = accumulator.collisionInBody.set(
                 collisionPos.x() - parent.getShipTransform().getPosX(),
                 collisionPos.y() - parent.getShipTransform().getPosY(),
                 collisionPos.z() - parent.getShipTransform().getPosZ());
         Vector3d momentumAtPoint = calculator
-                .getVelocityAtPoint(inBody);
+                .getVelocityAtPoint(inBody, accumulator.collisionVelocity);
         calculateCollisionImpulseForce(inBody, momentumAtPoint, axis, offsetVector, false,
-                false, impulseApplied);
+                false, impulseApplied, accumulator);
     }
 
     // Finally, the end of all this spaghetti code! This step takes all of the math
@@ -307,7 +469,8 @@ public class WorldPhysicsCollider {
                                                 Vector3dc offsetVector,
                                                 boolean didBlockBreakInShip,
                                                 boolean didBlockBreakInWorld,
-                                                double impulseApplied) {
+                                                double impulseApplied,
+                                                ContactImpulseAccumulator accumulator) {
         // Our ideal velocity is to negate the velocity at the point, and the collision offset.
         final double multiplier = 2;
 
@@ -315,7 +478,7 @@ public class WorldPhysicsCollider {
 
 
 
-        Vector3d firstCross = inBody.cross(axis, new Vector3d());
+        Vector3d firstCross = inBody.cross(axis, accumulator.impulseTemp0);
 
         calculator.getPhysInvMOITensor().transform(firstCross);
 
@@ -334,7 +497,7 @@ public class WorldPhysicsCollider {
             // impulseMagnitude *= .5D;
         }
 
-        Vector3d collisionImpulseForce = axis.mul(impulseMagnitude, new Vector3d());
+        Vector3d collisionImpulseForce = axis.mul(impulseMagnitude, accumulator.impulseTemp1);
 
         // This is just an optimized way to add this force as quickly as possible.
         // Added collisionImpulseForce.dot(inBody) > 0 to force all collision to move in
@@ -343,23 +506,26 @@ public class WorldPhysicsCollider {
             // collisionImpulseForce.multiply(1.8D);
             double collisionVelocity = velocityAtPointOfCollision.dot(axis);
 
-            addFrictionToNormalForce(velocityAtPointOfCollision, collisionImpulseForce, inBody);
-            calculator.getLinearVelocity().add(collisionImpulseForce.mul(calculator.getInvMass(), new Vector3d()));
-            Vector3d thirdCross = inBody.cross(collisionImpulseForce, new Vector3d());
+            addFrictionToNormalForce(velocityAtPointOfCollision, collisionImpulseForce, inBody, accumulator);
+            accumulator.linearVelocityChange.add(collisionImpulseForce.x() * calculator.getInvMass(),
+                collisionImpulseForce.y() * calculator.getInvMass(), collisionImpulseForce.z() * calculator.getInvMass());
+            Vector3d thirdCross = inBody.cross(collisionImpulseForce, accumulator.impulseTemp0);
 
             calculator.getPhysInvMOITensor().transform(thirdCross);
 
-            calculator.getAngularVelocity().add(thirdCross, calculator.getAngularVelocity());
+            accumulator.angularVelocityChange.add(thirdCross);
+            accumulator.impulseCount++;
         }
     }
 
     // Applies the friction force generated by the collision.
     // The magnitude of this vector must be adjusted to minimize energy
-    private void addFrictionToNormalForce(Vector3dc momentumAtPoint, Vector3d impulseVector, Vector3dc inBody) {
-        Vector3d contactNormal = new Vector3d(impulseVector);
+    private void addFrictionToNormalForce(Vector3dc momentumAtPoint, Vector3d impulseVector, Vector3dc inBody,
+                                          ContactImpulseAccumulator accumulator) {
+        Vector3d contactNormal = accumulator.frictionTemp0.set(impulseVector);
         contactNormal.normalize();
 
-        Vector3d frictionVector = new Vector3d(momentumAtPoint);
+        Vector3d frictionVector = accumulator.frictionTemp1.set(momentumAtPoint);
         frictionVector.normalize();
         frictionVector.mul(impulseVector.length() * KINETIC_FRICTION_COEFFICIENT);
 
@@ -369,15 +535,15 @@ public class WorldPhysicsCollider {
 
         // Remove all friction components along the impulse vector
         double frictionImpulseDot = frictionVector.dot(contactNormal);
-        Vector3d toRemove = contactNormal.mul(frictionImpulseDot, new Vector3d());
-        frictionVector.sub(toRemove);
+        frictionVector.sub(contactNormal.x() * frictionImpulseDot, contactNormal.y() * frictionImpulseDot,
+            contactNormal.z() * frictionImpulseDot);
 
         double inertiaScalarAlongAxis = parent.getPhysicsCalculations()
             .getInertiaAlongRotationAxis();
         // The change in velocity vector
         Vector3dc initialVelocity = parent.getPhysicsCalculations().getLinearVelocity();
         // Don't forget to multiply by delta t
-        Vector3d deltaVelocity = new Vector3d(frictionVector);
+        Vector3d deltaVelocity = accumulator.frictionTemp2.set(frictionVector);
         deltaVelocity.mul(parent.getPhysicsCalculations().getInvMass() * parent.getPhysicsCalculations()
                 .getDragForPhysTick());
 
@@ -385,8 +551,8 @@ public class WorldPhysicsCollider {
         double B = 2 * initialVelocity.dot(deltaVelocity);
         double C = deltaVelocity.lengthSquared();
 
-        Vector3d initialAngularVelocity = new Vector3d(parent.getPhysicsCalculations().getAngularVelocity());
-        Vector3d deltaAngularVelocity = inBody.cross(frictionVector, new Vector3d());
+        Vector3dc initialAngularVelocity = parent.getPhysicsCalculations().getAngularVelocity();
+        Vector3d deltaAngularVelocity = inBody.cross(frictionVector, accumulator.frictionTemp3);
         // This might need to be 1 / inertiaScalarAlongAxis
         deltaAngularVelocity.mul(parent.getPhysicsCalculations().getDragForPhysTick() / inertiaScalarAlongAxis);
 
@@ -411,7 +577,7 @@ public class WorldPhysicsCollider {
 
         double scaleFactor = -secondCoefficient / (thirdCoefficient * 2);
 
-        if (new Double(scaleFactor).isNaN()) {
+        if (Double.isNaN(scaleFactor)) {
             scaleFactor = 0;
         } else {
             scaleFactor = Math.max(0, Math.min(scaleFactor, 1));
@@ -424,25 +590,31 @@ public class WorldPhysicsCollider {
         impulseVector.add(frictionVector);
     }
 
-    // TODO: The greatest physics lag starts here.
     private void updatePotentialCollisionCache() {
-        ticksSinceCacheUpdate = 0D;
+        secondsSinceCacheUpdate = 0D;
+        cacheAge = 0D;
         // This is being used to occasionally offset the collision cache update, in the
         // hopes this will prevent multiple ships from all updating
         // in the same tick
         if (Math.random() > .5) {
-            ticksSinceCacheUpdate -= .05D;
+            secondsSinceCacheUpdate -= VSConfig.SUBSTEP_SETTINGS.collisionCacheUpdatePeriod / 2;
         }
-        int oldSize = cachedPotentialHits.size();
-        // Resets the potential hits array in O(1) time! Isn't that something.
-        // cachedPotentialHits.resetQuick();
-        cachedPotentialHits.clear();
 
         AxisAlignedBB shipBBOriginal = parent.getPhysicsTransformAABB();
+        final AxisAlignedBB shipBlocksBB = parent.getBlockPositions().makeAABB();
 
-        if (shipBBOriginal == null) {
+        if (shipBBOriginal == null || shipBlocksBB == null) {
+            cachedPotentialHits.clear();
+            cachedPotentialHitExposedFaces.clear();
             return;
         }
+        final double sizeX = shipBBOriginal.maxX - shipBBOriginal.minX;
+        final double sizeY = shipBBOriginal.maxY - shipBBOriginal.minY;
+        final double sizeZ = shipBBOriginal.maxZ - shipBBOriginal.minZ;
+        shipRadius = .5 * Math.sqrt(sizeX * sizeX + sizeY * sizeY + sizeZ * sizeZ);
+        // The blocks of the ship end 1 past the max of makeAABB(). A world block can only touch a ship block if their
+        // centers are less than sqrt(3) apart, grow by 2 so blocks added before the next update are still checked.
+        localShipBB = shipBlocksBB.expand(1, 1, 1).grow(2);
 
         final AxisAlignedBB shipBB = shipBBOriginal.grow(3);
 
@@ -455,262 +627,101 @@ public class WorldPhysicsCollider {
                 calculator.getLinearVelocity().y * .2,
                 calculator.getLinearVelocity().z * .2);
 
-
         // Ship is outside of world blockSpace, just skip this all togvalkyrium
         if (collisionBB.maxY < 0 || collisionBB.minY > 255) {
+            if (candidateCache != null) {
+                candidateCache.clear();
+            }
+            cachedPotentialHits.clear();
+            cachedPotentialHitExposedFaces.clear();
             return;
         }
 
-        // Has a -1 on the minY value, I hope this helps with preventing things from
-        // falling through the floor
-        BlockPos min = new BlockPos(collisionBB.minX, Math.max(collisionBB.minY - 1, 0),
-            collisionBB.minZ);
-        BlockPos max = new BlockPos(collisionBB.maxX, Math.min(collisionBB.maxY, 255),
-            collisionBB.maxZ);
-        centerPotentialHit = new BlockPos((min.getX() + max.getX()) / 2D,
-            (min.getY() + max.getY()) / 2D,
-            (min.getZ() + max.getZ()) / 2D);
-
-        ChunkCache cache = parent.getCachedSurroundingChunks();
+        final ChunkCache cache = parent.getCachedSurroundingChunks();
 
         if (cache == null) {
             System.err.println(
                 "VS Cached Surrounding Chunks was null! This is going to cause catastophric terrible events!!");
+            cachedPotentialHits.clear();
+            cachedPotentialHitExposedFaces.clear();
             return;
         }
 
-        int chunkMinX = min.getX() >> 4;
-        int chunkMaxX = (max.getX() >> 4) + 1;
-        int chunkMinZ = min.getZ() >> 4;
-        int chunkMaxZ = (max.getZ() >> 4) + 1;
-        // long startTime = System.nanoTime();
-
-        int minX = min.getX();
-        int minY = min.getY();
-        int minZ = min.getZ();
-        int maxX = max.getX();
-        int maxY = max.getY();
-        int maxZ = max.getZ();
-
-        // More multithreading!
-        if (VSConfig.MULTITHREADING_SETTINGS.multithreadCollisionCacheUpdate &&
-            parent.getBlockPositions().size() > 100) {
-
-            List<Triple<Integer, Integer, TIntList>> tasks = new ArrayList<>();
-
-            for (int chunkX = chunkMinX; chunkX < chunkMaxX; chunkX++) {
-                for (int chunkZ = chunkMinZ; chunkZ < chunkMaxZ; chunkZ++) {
-                    tasks.add(new ImmutableTriple<>(chunkX, chunkZ, new TIntArrayList()));
-                }
-            }
-
-            Consumer<Triple<Integer, Integer, TIntList>> consumer = i -> { // i is a Tuple<Integer, Integer>
-                // updateCollisionCacheParrallel(cache, cachedPotentialHits, i.getFirst(),
-                // i.getSecond(), minX, minY, minZ, maxX, maxY, maxZ);
-                updateCollisionCacheSequential(cache, i.getLeft(), i.getMiddle(), minX, minY, minZ,
-                    maxX, maxY, maxZ,
-                    shipBB, i.getRight());
-            };
-            ValkyrienSkiesMod.getPhysicsThreadPool().submit(
-                () -> tasks.parallelStream().forEach(consumer))
-            .join();
-
-            tasks.forEach(task -> cachedPotentialHits.addAll(task.getRight()));
-        } else {
-            // Cast to double to avoid overflow errors
-            double size = ((double) (chunkMaxX - chunkMinX)) * ((double) (chunkMaxZ - chunkMinZ));
-            if (size > 300000) {
-                // Sanity check; don't execute the rest of the code because we'll just freeze the physics thread.
-                return;
-            }
-            // TODO: VS thread freezes here.
-            for (int chunkX = chunkMinX; chunkX < chunkMaxX; chunkX++) {
-                for (int chunkZ = chunkMinZ; chunkZ < chunkMaxZ; chunkZ++) {
-                    updateCollisionCacheSequential(cache, chunkX, chunkZ, minX, minY, minZ, maxX,
-                        maxY, maxZ, shipBB, cachedPotentialHits);
-                }
-            }
+        // Only the blocks inside of the world get scanned.
+        final double blocksInBox = (collisionBB.maxX - collisionBB.minX)
+            * (Math.min(collisionBB.maxY, 255) - Math.max(collisionBB.minY, 0))
+            * (collisionBB.maxZ - collisionBB.minZ);
+        if (blocksInBox > MAX_COLLISION_BOX_BLOCKS) {
+            // Sanity check; don't execute the rest of the code because we'll just freeze the physics thread.
+            cachedPotentialHits.clear();
+            cachedPotentialHitExposedFaces.clear();
+            return;
         }
-    }
 
-    private void updateCollisionCacheSequential(ChunkCache cache, int chunkX, int chunkZ, int minX,
-        int minY, int minZ,
-        int maxX, int maxY, int maxZ, AxisAlignedBB shipBB, TIntList output) {
-        int arrayChunkX = chunkX - cache.chunkX;
-        int arrayChunkZ = chunkZ - cache.chunkZ;
-
-        if (!(arrayChunkX < 0 || arrayChunkZ < 0 || arrayChunkX > cache.chunkArray.length - 1
-            || arrayChunkZ > cache.chunkArray[0].length - 1)
-            && cache.chunkArray[arrayChunkX][arrayChunkZ] != null) {
-
-            Vector3d temp1 = new Vector3d();
-            Vector3d temp2 = new Vector3d();
-            Vector3d temp3 = new Vector3d();
-
-            Chunk chunk = cache.chunkArray[arrayChunkX][arrayChunkZ];
-            for (int storageY = minY >> 4; storageY <= maxY >> 4; storageY++) {
-                ExtendedBlockStorage extendedblockstorage = chunk.storageArrays[storageY];
-                if (extendedblockstorage != null) {
-                    int minStorageX = chunkX << 4;
-                    int minStorageY = storageY << 4;
-                    int minStorageZ = chunkZ << 4;
-
-                    int maxStorageX = minStorageX + 16;
-                    int maxStorageY = minStorageY + 16;
-                    int maxStorageZ = minStorageZ + 16;
-
-                    final ITerrainOctreeProvider provider = (ITerrainOctreeProvider) extendedblockstorage.data;
-                    final IBitOctree octree = provider.getSolidOctree();
-
-                    for (int x = minStorageX; x < maxStorageX; x++) {
-                        for (int y = minStorageY; y < maxStorageY; y++) {
-                            for (int z = minStorageZ; z < maxStorageZ; z++) {
-                                checkForCollision(x, y, z, extendedblockstorage, octree, temp1,
-                                    temp2, temp3,
-                                    shipBB, output);
-                            }
-                        }
-                    }
-                }
-            }
+        if (candidateCache == null) {
+            candidateCache = new CollisionCandidateCache(ValkyrienUtils.getServerShipManager(parent.getWorld())
+                .getPhysicsLoop().getTerrainCollisionIndex());
         }
+        // Has a -1 on the minY value, I hope this helps with preventing things from
+        // falling through the floor
+        candidateCache.update((sectionX, sectionY, sectionZ) -> getTerrainSection(cache, sectionX, sectionY, sectionZ),
+            MathHelper.floor(collisionBB.minX), MathHelper.floor(collisionBB.minY) - 1,
+            MathHelper.floor(collisionBB.minZ), MathHelper.floor(collisionBB.maxX),
+            MathHelper.floor(collisionBB.maxY), MathHelper.floor(collisionBB.maxZ));
+        candidateCache.copyCandidatesTo(cachedPotentialHits, cachedPotentialHitExposedFaces);
+        centerPotentialHit = candidateCache.getCenter();
     }
 
-    private void checkForCollision(int x, int y, int z, ExtendedBlockStorage storage,
-        IBitOctree octree, Vector3d inLocal,
-        Vector3d inBody,
-        Vector3d speedInBody, AxisAlignedBB shipBB, TIntList output) {
-        if (octree.get(x & 15, y & 15, z & 15)) {
-            inLocal.x = x + .5D;
-            inLocal.y = y + .5D;
-            inLocal.z = z + .5D;
-            // TODO: Something
-            // parent.coordTransform.fromGlobalToLocal(inLocal);
-            if (inLocal.x > shipBB.minX && inLocal.x < shipBB.maxX && inLocal.y > shipBB.minY
-                && inLocal.y < shipBB.maxY
-                && inLocal.z > shipBB.minZ && inLocal.z < shipBB.maxZ) {
-                parent.getShipTransformationManager().getCurrentPhysicsTransform()
-                    .transformPosition(inLocal, TransformType.GLOBAL_TO_SUBSPACE);
-
-                inLocal.sub(parent.getCenterCoord(), inBody);
-                // parent.physicsProcessor.setVectorToVelocityAtPoint(inBody, speedInBody);
-                // speedInBody.multiply(-parent.physicsProcessor.getPhysicsTimeDeltaPerGameTick());
-
-                // TODO: This isnt ideal, but we do gain a lot of performance.
-                speedInBody.zero();
-
-                // double RANGE_CHECK = 1;
-
-                int minX, minY, minZ, maxX, maxY, maxZ;
-                if (speedInBody.x > 0) {
-                    minX = MathHelper.floor(inLocal.x - RANGE_CHECK);
-                    maxX = MathHelper.floor(inLocal.x + RANGE_CHECK + speedInBody.x);
-                } else {
-                    minX = MathHelper.floor(inLocal.x - RANGE_CHECK + speedInBody.x);
-                    maxX = MathHelper.floor(inLocal.x + RANGE_CHECK);
-                }
-
-                if (speedInBody.y > 0) {
-                    minY = MathHelper.floor(inLocal.y - RANGE_CHECK);
-                    maxY = MathHelper.floor(inLocal.y + RANGE_CHECK + speedInBody.y);
-                } else {
-                    minY = MathHelper.floor(inLocal.y - RANGE_CHECK + speedInBody.y);
-                    maxY = MathHelper.floor(inLocal.y + RANGE_CHECK);
-                }
-
-                if (speedInBody.z > 0) {
-                    minZ = MathHelper.floor(inLocal.z - RANGE_CHECK);
-                    maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK + speedInBody.z);
-                } else {
-                    minZ = MathHelper.floor(inLocal.z - RANGE_CHECK + speedInBody.z);
-                    maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK);
-                }
-
-                minY = Math.min(255, Math.max(minY, 0));
-                maxY = Math.min(255, Math.max(maxY, 0));
-
-                // int localX = MathHelper.floor(inLocal.X);
-                // int localY = MathHelper.floor(inLocal.Y);
-                // int localZ = MathHelper.floor(inLocal.Z);
-
-                // tooTiredToName(localX, localY, localZ, x, y, z);
-                // if (false)
-                // maxX = Math.min(maxX, minX << 4);
-                // maxZ = Math.min(maxZ, minZ << 4);
-
-                Chunk chunkIn00 = parent.getChunkClaim().containsChunk(minX >> 4, minZ >> 4) ? parent.getChunkAt(minX >> 4, minZ >> 4) : null;
-                Chunk chunkIn01 = parent.getChunkClaim().containsChunk(minX >> 4, maxZ >> 4) ? parent.getChunkAt(minX >> 4, maxZ >> 4) : null;
-                Chunk chunkIn10 = parent.getChunkClaim().containsChunk(maxX >> 4, minZ >> 4) ? parent.getChunkAt(maxX >> 4, minZ >> 4) : null;
-                Chunk chunkIn11 = parent.getChunkClaim().containsChunk(maxX >> 4, maxZ >> 4) ? parent.getChunkAt(maxX >> 4, maxZ >> 4) : null;
-
-                breakThisLoop:
-                for (int localX = minX; localX < maxX; localX++) {
-                    for (int localZ = minZ; localZ < maxZ; localZ++) {
-                        Chunk theChunk;
-                        if (localX >> 4 == minX >> 4) {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn00;
-                            } else {
-                                theChunk = chunkIn01;
-                            }
-                        } else {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn10;
-                            } else {
-                                theChunk = chunkIn11;
-                            }
-                        }
-                        if (theChunk == null) {
-                            // No collision here
-                            continue;
-                        }
-                        for (int localY = minY; localY < maxY; localY++) {
-                            boolean result = checkForCollisionFast(theChunk, localX, localY,
-                                localZ, x, y, z, output);
-                            if (result) {
-                                break breakThisLoop;
-                            }
-
-                            /*
-                             * if (false) // TODO: This code isn't thread safe. try { boolean result =
-                             * tooTiredToName(localX, localY, localZ, x, y, z); if (result) { break
-                             * breakThisLoop; } } catch (Exception e) { e.printStackTrace(); }
-                             */
-                        }
-                    }
-                }
-            }
+    @Nullable
+    static ITerrainOctreeProvider getTerrainSection(ChunkCache cache, int sectionX, int sectionY, int sectionZ) {
+        final int arrayChunkX = sectionX - cache.chunkX;
+        final int arrayChunkZ = sectionZ - cache.chunkZ;
+        if (arrayChunkX < 0 || arrayChunkZ < 0 || arrayChunkX > cache.chunkArray.length - 1
+            || arrayChunkZ > cache.chunkArray[0].length - 1 || sectionY < 0 || sectionY > 15) {
+            return null;
         }
+        final Chunk chunk = cache.chunkArray[arrayChunkX][arrayChunkZ];
+        if (chunk == null) {
+            return null;
+        }
+        final ExtendedBlockStorage storage = chunk.storageArrays[sectionY];
+        return storage != null ? (ITerrainOctreeProvider) storage.getData() : null;
     }
 
-    private boolean checkForCollisionFast(final Chunk chunk, final int localX, final int localY,
-        final int localZ,
-        final int x, final int y, final int z, final TIntList output) {
-        if (chunk.storageArrays[localY >> 4] != null) {
-            ITerrainOctreeProvider provider = (ITerrainOctreeProvider) chunk.storageArrays[localY >> 4]
-                .getData();
-            IBitOctree octreeInLocal = provider.getSolidOctree();
-            if (octreeInLocal.get(localX & 15, localY & 15, localZ & 15)) {
-                int hash = SpatialDetector.getHashWithRespectTo(x, y, z, centerPotentialHit);
-                // Sometimes we end up adding to the hits array in multiple threads at once,
-                // crashing the physics.
-                output.add(hash);
-                return true;
-                // break outermostloop;
-            }
-            // }
-        }
-        return false;
+    /**
+     * @return Half the diagonal of the ship's bounding box, as of the last collision cache rebuild.
+     */
+    public double getShipRadius() {
+        return shipRadius;
     }
 
     public BlockPos getCenterPotentialHit() {
         return centerPotentialHit;
     }
 
+    /**
+     * @return The ship space box that a world block must be in to possibly touch the ship, as of the last collision
+     * cache update.
+     */
+    public AxisAlignedBB getLocalShipBB() {
+        return localShipBB;
+    }
+
+    /**
+     * @return The solid blocks of the ship. Only read this while the collision tasks run.
+     */
+    public ShipSolidBlockIndex getShipBlockIndex() {
+        return shipBlockIndex;
+    }
+
     public int getCachedPotentialHit(int offset) {
         return cachedPotentialHits.get(offset);
     }
 
+    public int getCachedPotentialHitExposedFaces(int offset) {
+        return cachedPotentialHitExposedFaces.get(offset);
+    }
+
     public int getCachedPotentialHitSize() {
         return cachedPotentialHits.size();
     }
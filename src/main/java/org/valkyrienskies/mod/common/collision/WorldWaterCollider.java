@@ -2,81 +2,201 @@ package org.valkyrienskies.mod.common.collision;
 
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.ChunkCache;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
-import org.apache.commons.lang3.tuple.ImmutableTriple;
-import org.apache.commons.lang3.tuple.Triple;
 import org.joml.Vector3d;
-import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
 import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
-import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
 import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
-import valkyrienwarfare.api.TransformType;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Consumer;
 
 /**
- * This collider adds the water buoyancy and drag forces to a ship.
+ * This collider adds the water buoyancy and drag forces to a ship. Every liquid gets the {@link FluidProperties} of its
+ * fluid type, and the forces of each fluid type are computed by their own tasks.
  */
 public class WorldWaterCollider {
 
-    // Used to expand the AABB used to check for potential collisions; helps prevent
-    // ships ghosting through blocks
-    private static final double AABB_EXPANSION = 2;
-    // The radius of the range we check when considering adding a water block to the collision cache
-    private static final double RANGE_CHECK = 2;
-    // Time in seconds between collision cache updates. A value of .1 means we
-    // update the collision cache every 1/10th of a second.
-    private static final double CACHE_UPDATE_PERIOD = .1;
-
     private static final int MAX_HITS_PER_TASK = 500;
+    // Waterline sections look at up to 4096 blocks each, fully wet or dry ones cost next to nothing.
+    private static final int MAX_SECTIONS_PER_TASK = 8;
 
     private final PhysicsCalculations calculator;
     private final PhysicsObject parent;
     private final TIntList cachedPotentialHits;
+    // The fluid type of every cached potential hit, the hits are in order of fluid type.
+    private final TIntList cachedPotentialHitFluidTypes;
     private double secondsSinceCollisionCacheUpdate;
     private BlockPos centerPotentialHit;
+    // The cached potential hits transformed to ship space, every WaterForcesTask fills its own range.
+    private double[] potentialHitXs, potentialHitYs, potentialHitZs;
+    // The velocity of the current at every cached potential hit, sampled when the cache updates. Only filled for fluid
+    // types with currents.
+    private double[] potentialHitCurrentXs, potentialHitCurrentYs, potentialHitCurrentZs;
+    // Finds the water blocks of cachedPotentialHits, and keeps the ship blocks deep under water.
+    private final WaterHitFinder waterHitFinder;
+    // The sections of the ship with solid blocks, and the same sections by CollisionCandidateCache section key. Only
+    // used with section buoyancy, refreshed as often as the collision cache would be.
+    private final List<SectionBuoyancy.ShipSection> shipSections;
+    private TLongObjectHashMap<SectionBuoyancy.ShipSection> shipSectionsByKey;
+    // One for every section buoyancy task of the ship, reused between ticks.
+    private final List<SectionBuoyancy> sectionBuoyancies;
+    // False if the ship was above the highest liquid under it when the cache last updated.
+    private boolean isNearLiquid;
 
     public WorldWaterCollider(PhysicsCalculations calculations) {
         this.calculator = calculations;
         this.parent = calculations.getParent();
         this.cachedPotentialHits = new TIntArrayList();
-        this.secondsSinceCollisionCacheUpdate = 2500; // Any number large than CACHE_UPDATE_PERIOD works
+        this.cachedPotentialHitFluidTypes = new TIntArrayList();
+        // Any number larger than the collision cache update period works
+        this.secondsSinceCollisionCacheUpdate = 2500;
         this.centerPotentialHit = null;
+        this.potentialHitXs = new double[0];
+        this.potentialHitYs = new double[0];
+        this.potentialHitZs = new double[0];
+        this.potentialHitCurrentXs = new double[0];
+        this.potentialHitCurrentYs = new double[0];
+        this.potentialHitCurrentZs = new double[0];
+        this.waterHitFinder = new WaterHitFinder();
+        this.shipSections = new ArrayList<>();
+        this.shipSectionsByKey = new TLongObjectHashMap<>();
+        this.sectionBuoyancies = new ArrayList<>();
+        this.isNearLiquid = false;
     }
 
     public void tickUpdatingTheCollisionCache() {
         secondsSinceCollisionCacheUpdate += calculator.getPhysicsTimeDeltaPerPhysTick();
-        if (secondsSinceCollisionCacheUpdate > CACHE_UPDATE_PERIOD) {
-            updatePotentialCollisionCache();
+        // The same cadence as the world collision cache.
+        if (secondsSinceCollisionCacheUpdate > VSConfig.SUBSTEP_SETTINGS.collisionCacheUpdatePeriod) {
+            if (VSConfig.WATER_SETTINGS.sectionBuoyancy) {
+                // Section buoyancy doesn't need the water blocks.
+                secondsSinceCollisionCacheUpdate = 0;
+                cachedPotentialHits.clear();
+                cachedPotentialHitFluidTypes.clear();
+                updateShipSections();
+                final AxisAlignedBB shipBB = parent.getPhysicsTransformAABB();
+                final ChunkCache cache = parent.getCachedSurroundingChunks();
+                isNearLiquid = shipBB != null && cache != null && isNearLiquid(shipBB, cache);
+            } else {
+                updatePotentialCollisionCache();
+            }
         }
     }
 
     /**
      * Adds the water buoyancy and water drag forces to the ship.
      */
-    public List<WaterForcesTask> generateWaterForceTasks() {
-        final List<WaterForcesTask> waterForcesTasks = new ArrayList<>();
+    public List<IWaterForcesTask> generateWaterForceTasks() {
+        if (VSConfig.WATER_SETTINGS.sectionBuoyancy) {
+            return generateSectionBuoyancyTasks();
+        }
+        final List<IWaterForcesTask> waterForcesTasks = new ArrayList<>();
+
+        if (potentialHitXs.length < cachedPotentialHits.size()) {
+            potentialHitXs = new double[cachedPotentialHits.size()];
+            potentialHitYs = new double[cachedPotentialHits.size()];
+            potentialHitZs = new double[cachedPotentialHits.size()];
+        }
 
-        for (int i = 0; i < cachedPotentialHits.size(); i += MAX_HITS_PER_TASK) {
-            final int minHitIndex = i;
-            final int maxHitIndex = Math.min(minHitIndex + MAX_HITS_PER_TASK, cachedPotentialHits.size() - 1);
-            final WaterForcesTask waterForcesTask = new WaterForcesTask(parent, centerPotentialHit, cachedPotentialHits, minHitIndex, maxHitIndex);
-            waterForcesTasks.add(waterForcesTask);
+        int fluidTypeStart = 0;
+        while (fluidTypeStart < cachedPotentialHits.size()) {
+            final int fluidType = cachedPotentialHitFluidTypes.get(fluidTypeStart);
+            // Exclusive, the hits of a fluid type are next to each other.
+            int fluidTypeEnd = fluidTypeStart;
+            while (fluidTypeEnd < cachedPotentialHits.size()
+                && cachedPotentialHitFluidTypes.get(fluidTypeEnd) == fluidType) {
+                fluidTypeEnd++;
+            }
+            final FluidProperties fluid = FluidPropertiesRegistry.getFluidProperties(fluidType);
+            for (int i = fluidTypeStart; i < fluidTypeEnd; i += MAX_HITS_PER_TASK) {
+                final int minHitIndex = i;
+                // Inclusive, the tasks must not share a hit because they write to the same position arrays.
+                final int maxHitIndex = Math.min(minHitIndex + MAX_HITS_PER_TASK, fluidTypeEnd) - 1;
+                final WaterForcesTask waterForcesTask = new WaterForcesTask(parent, centerPotentialHit,
+                    cachedPotentialHits, minHitIndex, maxHitIndex, potentialHitXs, potentialHitYs, potentialHitZs,
+                    waterHitFinder.getDeepBlocks(), fluid, fluid.hasCurrents() ? potentialHitCurrentXs : null,
+                    fluid.hasCurrents() ? potentialHitCurrentYs : null,
+                    fluid.hasCurrents() ? potentialHitCurrentZs : null);
+                waterForcesTasks.add(waterForcesTask);
+            }
+            fluidTypeStart = fluidTypeEnd;
+        }
+        for (int fluidType = 0; fluidType < waterHitFinder.getFluidTypeCount(); fluidType++) {
+            final int deepBlockCount = waterHitFinder.getDeepBlockCount(fluidType);
+            if (deepBlockCount > 0) {
+                waterForcesTasks.add(new DeepBlocksBuoyancyTask(parent, deepBlockCount,
+                    waterHitFinder.getDeepBlockCenter(fluidType, new Vector3d()),
+                    FluidPropertiesRegistry.getFluidProperties(fluidType)));
+            }
         }
 
         return waterForcesTasks;
     }
 
+    private List<IWaterForcesTask> generateSectionBuoyancyTasks() {
+        final List<IWaterForcesTask> waterForcesTasks = new ArrayList<>();
+        final ChunkCache cache = parent.getCachedSurroundingChunks();
+        if (cache == null || !isNearLiquid) {
+            return waterForcesTasks;
+        }
+        final CollisionCandidateCache.SectionSource world = getWorld(cache);
+        for (int i = 0; i < shipSections.size(); i += MAX_SECTIONS_PER_TASK) {
+            final int taskIndex = i / MAX_SECTIONS_PER_TASK;
+            if (taskIndex == sectionBuoyancies.size()) {
+                sectionBuoyancies.add(new SectionBuoyancy());
+            }
+            waterForcesTasks.add(new SectionBuoyancyTask(parent, shipSections, i,
+                Math.min(i + MAX_SECTIONS_PER_TASK, shipSections.size()), sectionBuoyancies.get(taskIndex), world,
+                cache));
+        }
+        return waterForcesTasks;
+    }
+
+    /**
+     * Finds the sections of the ship's chunks with solid blocks. Sections that were found before keep their cached
+     * mass properties.
+     */
+    private void updateShipSections() {
+        final TLongObjectHashMap<SectionBuoyancy.ShipSection> nextShipSectionsByKey = new TLongObjectHashMap<>();
+        shipSections.clear();
+        for (ChunkPos chunkPos : parent.getChunkClaim()) {
+            final Chunk chunk = parent.getChunkAt(chunkPos.x, chunkPos.z);
+            if (chunk == null) {
+                continue;
+            }
+            for (int sectionY = 0; sectionY < 16; sectionY++) {
+                final ExtendedBlockStorage storage = chunk.storageArrays[sectionY];
+                if (storage == null) {
+                    continue;
+                }
+                final ITerrainOctreeProvider provider = (ITerrainOctreeProvider) storage.getData();
+                if (provider.getSolidOctree().getSetBitCount() == 0) {
+                    continue;
+                }
+                final long key = CollisionCandidateCache.getSectionKey(chunkPos.x, sectionY, chunkPos.z);
+                SectionBuoyancy.ShipSection section = shipSectionsByKey.get(key);
+                if (section == null || section.getProvider() != provider) {
+                    section = new SectionBuoyancy.ShipSection(chunkPos.x, sectionY, chunkPos.z, provider);
+                }
+                nextShipSectionsByKey.put(key, section);
+                shipSections.add(section);
+            }
+        }
+        shipSectionsByKey = nextShipSectionsByKey;
+    }
+
+    /**
+     * Finds the water blocks that overlap the blocks of the ship, see {@link WaterHitFinder}.
+     */
     private void updatePotentialCollisionCache() {
         secondsSinceCollisionCacheUpdate = 0;
         // This is being used to occasionally offset the collision cache update, in the hopes this will prevent multiple
@@ -86,33 +206,26 @@ public class WorldWaterCollider {
         }
 
         cachedPotentialHits.clear();
+        cachedPotentialHitFluidTypes.clear();
+        waterHitFinder.clear();
 
-        AxisAlignedBB shipBBOriginal = parent.getPhysicsTransformAABB();
+        final AxisAlignedBB shipBBOriginal = parent.getPhysicsTransformAABB();
 
         if (shipBBOriginal == null) {
             return;
         }
 
-        // We are using grow(3) because its good.
-        final AxisAlignedBB shipBB = shipBBOriginal.grow(3);
-
-        final AxisAlignedBB collisionBB = shipBB
-            .grow(AABB_EXPANSION).grow(2 * Math.ceil(RANGE_CHECK));
+        // The water blocks that overlap the ship are at most 1 block outside of its bounding box.
+        final AxisAlignedBB collisionBB = shipBBOriginal.grow(1);
 
         // Ship is outside of world blockSpace, just skip this
         if (collisionBB.maxY < 0 || collisionBB.minY > 255) {
             return;
         }
 
-        // Has a -1 on the minY value, I hope this helps with preventing things from
-        // falling through the floor
-        final BlockPos min = new BlockPos(collisionBB.minX, Math.max(collisionBB.minY - 1, 0),
-            collisionBB.minZ);
-        final BlockPos max = new BlockPos(collisionBB.maxX, Math.min(collisionBB.maxY, 255),
-            collisionBB.maxZ);
-        centerPotentialHit = new BlockPos((min.getX() + max.getX()) / 2.0,
-            (min.getY() + max.getY()) / 2.0,
-            (min.getZ() + max.getZ()) / 2.0);
+        centerPotentialHit = new BlockPos((collisionBB.minX + collisionBB.maxX) / 2.0,
+            (collisionBB.minY + collisionBB.maxY) / 2.0,
+            (collisionBB.minZ + collisionBB.maxZ) / 2.0);
 
         final ChunkCache cache = parent.getCachedSurroundingChunks();
 
@@ -122,183 +235,71 @@ public class WorldWaterCollider {
             return;
         }
 
-        final int chunkMinX = min.getX() >> 4;
-        final int chunkMaxX = (max.getX() >> 4) + 1;
-        final int chunkMinZ = min.getZ() >> 4;
-        final int chunkMaxZ = (max.getZ() >> 4) + 1;
-
-        final int minX = min.getX();
-        final int minY = min.getY();
-        final int minZ = min.getZ();
-        final int maxX = max.getX();
-        final int maxY = max.getY();
-        final int maxZ = max.getZ();
-
-        // More multithreading!
-        if (VSConfig.MULTITHREADING_SETTINGS.multithreadCollisionCacheUpdate &&
-            parent.getBlockPositions().size() > 100) {
-
-            final List<Triple<Integer, Integer, TIntList>> tasks = new ArrayList<>();
-
-            for (int chunkX = chunkMinX; chunkX < chunkMaxX; chunkX++) {
-                for (int chunkZ = chunkMinZ; chunkZ < chunkMaxZ; chunkZ++) {
-                    tasks.add(new ImmutableTriple<>(chunkX, chunkZ, new TIntArrayList()));
-                }
-            }
-
-            Consumer<Triple<Integer, Integer, TIntList>> consumer = i -> updateCollisionCacheSequential(cache, i.getLeft(), i.getMiddle(), minX, minY, minZ,
-                maxX, maxY, maxZ,
-                shipBB, i.getRight());
-            ValkyrienSkiesMod.getPhysicsThreadPool().submit(
-                () -> tasks.parallelStream().forEach(consumer))
-            .join();
+        isNearLiquid = isNearLiquid(shipBBOriginal, cache);
+        if (!isNearLiquid) {
+            // Don't bother with the blocks of a ship that's above the water.
+            return;
+        }
 
-            tasks.forEach(task -> cachedPotentialHits.addAll(task.getRight()));
-        } else {
-            // Cast to double to avoid overflow errors
-            final double size = ((double) (chunkMaxX - chunkMinX)) * ((double) (chunkMaxZ - chunkMinZ));
-            if (size > 300000) {
-                // Sanity check; don't execute the rest of the code because we'll just freeze the physics thread.
-                return;
+        for (ChunkPos chunkPos : parent.getChunkClaim()) {
+            final Chunk chunk = parent.getChunkAt(chunkPos.x, chunkPos.z);
+            if (chunk == null) {
+                continue;
             }
-            for (int chunkX = chunkMinX; chunkX < chunkMaxX; chunkX++) {
-                for (int chunkZ = chunkMinZ; chunkZ < chunkMaxZ; chunkZ++) {
-                    updateCollisionCacheSequential(cache, chunkX, chunkZ, minX, minY, minZ, maxX,
-                        maxY, maxZ, shipBB, cachedPotentialHits);
+            for (int sectionY = 0; sectionY < 16; sectionY++) {
+                final ExtendedBlockStorage storage = chunk.storageArrays[sectionY];
+                if (storage == null) {
+                    continue;
                 }
+                final int minX = chunkPos.x << 4, minY = sectionY << 4, minZ = chunkPos.z << 4;
+                ((ITerrainOctreeProvider) storage.getData()).getSolidOctree().forEachSetBitInRange(0, 0, 0, 15, 15,
+                    15, (x, y, z) -> waterHitFinder.addShipBlock(minX | x, minY | y, minZ | z));
             }
         }
+        waterHitFinder.find(parent.getShipTransformationManager().getCurrentPhysicsTransform(), getWorld(cache),
+            centerPotentialHit, cachedPotentialHits, cachedPotentialHitFluidTypes);
+        updateCurrents(cache);
     }
 
-    private void updateCollisionCacheSequential(ChunkCache cache, int chunkX, int chunkZ, int minX,
-        int minY, int minZ,
-        int maxX, int maxY, int maxZ, AxisAlignedBB shipBB, TIntList output) {
-        int arrayChunkX = chunkX - cache.chunkX;
-        int arrayChunkZ = chunkZ - cache.chunkZ;
-
-        if (!(arrayChunkX < 0 || arrayChunkZ < 0 || arrayChunkX > cache.chunkArray.length - 1
-            || arrayChunkZ > cache.chunkArray[0].length - 1)
-            && cache.chunkArray[arrayChunkX][arrayChunkZ] != null) {
-
-            final Vector3d temp1 = new Vector3d();
-            final Vector3d temp2 = new Vector3d();
-
-            Chunk chunk = cache.chunkArray[arrayChunkX][arrayChunkZ];
-            for (int storageY = minY >> 4; storageY <= maxY >> 4; storageY++) {
-                ExtendedBlockStorage extendedblockstorage = chunk.storageArrays[storageY];
-                if (extendedblockstorage != null) {
-                    int minStorageX = chunkX << 4;
-                    int minStorageY = storageY << 4;
-                    int minStorageZ = chunkZ << 4;
-
-                    int maxStorageX = minStorageX + 15;
-                    int maxStorageY = Math.min(maxY, minStorageY + 15);
-                    int maxStorageZ = minStorageZ + 15;
+    /**
+     * @return False if the bottom of the ship's bounding box is above the highest liquid block under it. The world
+     * blocks a ship block overlaps are in the columns under the bounding box.
+     */
+    private static boolean isNearLiquid(AxisAlignedBB shipBB, ChunkCache cache) {
+        final int surfaceY = WaterSurface.getHighestSurfaceY(getWorld(cache), (int) Math.floor(shipBB.minX),
+            (int) Math.floor(shipBB.minZ), (int) Math.floor(shipBB.maxX), (int) Math.floor(shipBB.maxZ));
+        return surfaceY != -1 && shipBB.minY < surfaceY + 1;
+    }
 
-                    ITerrainOctreeProvider provider = (ITerrainOctreeProvider) extendedblockstorage.data;
-                    IBitOctree octree = provider.getLiquidOctree();
-                    for (int x = minStorageX; x <= maxStorageX; x++) {
-                        for (int y = minStorageY; y <= maxStorageY; y++) {
-                            for (int z = minStorageZ; z <= maxStorageZ; z++) {
-                                checkIfCollidesWithinRangeCheckRadius(x, y, z, octree, temp1, temp2, shipBB, output);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    private static CollisionCandidateCache.SectionSource getWorld(ChunkCache cache) {
+        return (sectionX, sectionY, sectionZ) -> WorldPhysicsCollider.getTerrainSection(cache, sectionX, sectionY,
+            sectionZ);
     }
 
     /**
-     * If there is a block within a radius of {@link #RANGE_CHECK}
+     * Samples the current at every cached potential hit whose fluid type has currents.
      */
-    private void checkIfCollidesWithinRangeCheckRadius(final int x, final int y, final int z,
-                                                       final IBitOctree octree, final Vector3d inLocal, final Vector3d inBody,
-                                                       final AxisAlignedBB shipBB, final TIntList output) {
-        if (octree.get(x & 15, y & 15, z & 15)) {
-            inLocal.x = x + .5;
-            inLocal.y = y + .5;
-            inLocal.z = z + .5;
-
-            if (inLocal.x > shipBB.minX && inLocal.x < shipBB.maxX && inLocal.y > shipBB.minY
-                && inLocal.y < shipBB.maxY
-                && inLocal.z > shipBB.minZ && inLocal.z < shipBB.maxZ) {
-                parent.getShipTransformationManager().getCurrentPhysicsTransform()
-                    .transformPosition(inLocal, TransformType.GLOBAL_TO_SUBSPACE);
-
-                inLocal.sub(parent.getCenterCoord(), inBody);
-
-                int minX, minY, minZ, maxX, maxY, maxZ;
-
-                minX = MathHelper.floor(inLocal.x - RANGE_CHECK);
-                maxX = MathHelper.floor(inLocal.x + RANGE_CHECK);
-
-                minY = MathHelper.floor(inLocal.y - RANGE_CHECK);
-                maxY = MathHelper.floor(inLocal.y + RANGE_CHECK);
-
-                minZ = MathHelper.floor(inLocal.z - RANGE_CHECK);
-                maxZ = MathHelper.floor(inLocal.z + RANGE_CHECK);
-
-
-                minY = Math.min(255, Math.max(minY, 0));
-                maxY = Math.min(255, Math.max(maxY, 0));
-
-                // TODO: This loop is crap. Come up with a better way. Please :(
-                final Chunk chunkIn00 = parent.getChunkClaim().containsChunk(minX >> 4, minZ >> 4) ? parent.getChunkAt(minX >> 4, minZ >> 4) : null;
-                final Chunk chunkIn01 = parent.getChunkClaim().containsChunk(minX >> 4, maxZ >> 4) ? parent.getChunkAt(minX >> 4, maxZ >> 4) : null;
-                final Chunk chunkIn10 = parent.getChunkClaim().containsChunk(maxX >> 4, minZ >> 4) ? parent.getChunkAt(maxX >> 4, minZ >> 4) : null;
-                final Chunk chunkIn11 = parent.getChunkClaim().containsChunk(maxX >> 4, maxZ >> 4) ? parent.getChunkAt(maxX >> 4, maxZ >> 4) : null;
-
-                breakThisLoop:
-                for (int localX = minX; localX < maxX; localX++) {
-                    for (int localZ = minZ; localZ < maxZ; localZ++) {
-                        Chunk theChunk;
-                        if (localX >> 4 == minX >> 4) {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn00;
-                            } else {
-                                theChunk = chunkIn01;
-                            }
-                        } else {
-                            if (localZ >> 4 == minZ >> 4) {
-                                theChunk = chunkIn10;
-                            } else {
-                                theChunk = chunkIn11;
-                            }
-                        }
-                        if (theChunk == null) {
-                            // No collision here
-                            continue;
-                        }
-                        for (int localY = minY; localY < maxY; localY++) {
-                            boolean result = checkForCollisionFast(theChunk, localX, localY,
-                                localZ, x, y, z, output);
-                            if (result) {
-                                break breakThisLoop;
-                            }
-                        }
-                    }
-                }
-            }
+    private void updateCurrents(ChunkCache cache) {
+        if (potentialHitCurrentXs.length < cachedPotentialHits.size()) {
+            potentialHitCurrentXs = new double[cachedPotentialHits.size()];
+            potentialHitCurrentYs = new double[cachedPotentialHits.size()];
+            potentialHitCurrentZs = new double[cachedPotentialHits.size()];
         }
-    }
-
-    private boolean checkForCollisionFast(final Chunk chunk, final int localX, final int localY,
-        final int localZ,
-        final int x, final int y, final int z, final TIntList output) {
-        if (chunk.storageArrays[localY >> 4] != null) {
-            ITerrainOctreeProvider provider = (ITerrainOctreeProvider) chunk.storageArrays[localY >> 4]
-                .getData();
-            IBitOctree octreeInLocal = provider.getSolidOctree();
-            if (octreeInLocal.get(localX & 15, localY & 15, localZ & 15)) {
-                int hash = SpatialDetector.getHashWithRespectTo(x, y, z, centerPotentialHit);
-                // Sometimes we end up adding to the hits array in multiple threads at once,
-                // crashing the physics.
-                output.add(hash);
-                return true;
+        final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+        final Vector3d current = new Vector3d();
+        for (int i = 0; i < cachedPotentialHits.size(); i++) {
+            final FluidProperties fluid = FluidPropertiesRegistry.getFluidProperties(
+                cachedPotentialHitFluidTypes.get(i));
+            if (fluid.hasCurrents()) {
+                SpatialDetector.setPosWithRespectTo(cachedPotentialHits.get(i), centerPotentialHit, pos);
+                FluidPropertiesRegistry.getCurrentVelocity(cache, pos, cache.getBlockState(pos), fluid, current);
+            } else {
+                current.zero();
             }
+            potentialHitCurrentXs[i] = current.x;
+            potentialHitCurrentYs[i] = current.y;
+            potentialHitCurrentZs[i] = current.z;
         }
-        return false;
     }
 
 }
@@ -9,7 +9,6 @@ import net.minecraft.world.World;
 import org.valkyrienskies.mod.common.command.MainCommand.*;
 import org.valkyrienskies.mod.common.command.autocompleters.ShipNameAutocompleter;
 import org.valkyrienskies.mod.common.command.autocompleters.WorldAutocompleter;
-import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
 import org.valkyrienskies.mod.common.ships.ShipData;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
@@ -161,8 +160,16 @@ public class MainCommand implements Runnable {
                 long averagePhysTickTimeNano = worldPhysicsThread.getAveragePhysicsTickTimeNano();
                 double ticksPerSecond = 1000000000D / ((double) averagePhysTickTimeNano);
                 double ticksPerSecondTwoDecimals = Math.floor(ticksPerSecond * 100) / 100;
+                double jitterMillis = worldPhysicsThread.getPhysicsTickJitterNano() / 1000000D;
+                double jitterMillisTwoDecimals = Math.floor(jitterMillis * 100) / 100;
                 sender.sendMessage(new TextComponentString(
-                    "Player world: " + ticksPerSecondTwoDecimals + " physics ticks per second"));
+                    "Player world: " + ticksPerSecondTwoDecimals + " physics ticks per second, "
+                        + jitterMillisTwoDecimals + " ms average tick jitter"));
+                double tasksPerTick = Math.floor(worldPhysicsThread.getAverageCollisionTasksPerTick() * 100) / 100;
+                double stealsPerTick = Math.floor(worldPhysicsThread.getAverageStealsPerTick() * 100) / 100;
+                sender.sendMessage(new TextComponentString(
+                    "Collision tasks: " + tasksPerTick + " per physics tick, " + stealsPerTick
+                        + " physics thread steals per physics tick"));
             }
         }
     }
@@ -309,10 +316,8 @@ public class MainCommand implements Runnable {
             final ShipTransform newTransform = new ShipTransform(JOML.convert(position), shipTransform.getCenterCoord());
 
             if (shipObject != null) {
-                // The ship already exists in the world, so we need to update the physics transform as well
-                final PhysicsCalculations physicsCalculations = shipObject.getPhysicsCalculations();
-                physicsCalculations.setForceToUseGameTransform(true);
-                // Also update the transform in the ShipTransformationManager
+                // The ship already exists in the world, so we need to update the physics transform as well. This
+                // also gets sent to the physics thread in the next game tick snapshot.
                 shipObject.setForceToUseShipDataTransform(true);
                 shipObject.setTicksSinceShipTeleport(0);
             }
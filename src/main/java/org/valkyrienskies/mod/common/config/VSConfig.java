@@ -51,6 +51,14 @@ public class VSConfig extends VSConfigTemplate {
     })
     public static double targetTps = 60;
 
+    @Name("Max Physics Substeps Per Wakeup")
+    @Comment({
+        "If the physics thread falls behind (for example because of a garbage collection pause), it will run up to",
+        "this many physics ticks back-to-back to catch up. Any further missed ticks are dropped."
+    })
+    @RangeInt(min = 1)
+    public static int maxPhysicsSubstepsPerWakeup = 4;
+
     // @Name("Use dynamic steps")
     // @Comment("Step physics by time since last tick instead of a fixed number")
     // public static boolean useDynamicSteps = false;
@@ -69,6 +77,23 @@ public class VSConfig extends VSConfigTemplate {
     @RangeInt(min = 2)
     public static int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors() - 2);
 
+    @Name("Number of Physics Scheduler Threads")
+    @Comment({
+        "The number of threads that run the physics ticks of all the worlds. Worlds without ships don't use a thread.",
+        "Cannot be set at runtime."
+    })
+    @RequiresMcRestart
+    @RangeInt(min = 1)
+    public static int physicsSchedulerThreadCount = 2;
+
+    @Name("Physics Tick Budget Per World")
+    @Comment({
+        "The maximum number of milliseconds a single world may spend catching up on physics ticks before the other",
+        "worlds get a turn. Ticks that don't fit in this budget are dropped."
+    })
+    @RangeDouble(min = 1)
+    public static double physicsTickBudgetPerWorld = 25;
+
     @Name("Max Detected Ship Size")
     @Comment({
             "The largest size ship a physics infuser will attempt to make.",
@@ -164,7 +189,223 @@ public class VSConfig extends VSConfigTemplate {
 
     public static class MultithreadingSettings {
 
-        public boolean multithreadCollisionCacheUpdate = true;
+        @Name("Parallel Ship Islands")
+        @Comment({
+            "If true, the physics tick of every ship runs in parallel on the physics threads.",
+            "If false, ships are ticked one after the other and only their collision checks run in parallel."
+        })
+        public boolean parallelShipIslands = true;
+
+        @Name("Target Collision Task Microseconds")
+        @Comment({
+            "The collision checks of a ship are split into tasks that each take about this long, based on how long",
+            "previous checks took. Lower values spread the work better between threads, but add more overhead."
+        })
+        @RangeDouble(min = 1)
+        public double targetCollisionTaskMicros = 50;
+
+        @Name("Physics Task Queue Capacity")
+        @Comment({
+            "The maximum number of tasks that can wait for the physics thread of a world.",
+            "Tasks beyond this are refused. Cannot be set at runtime."
+        })
+        @RequiresMcRestart
+        @RangeInt(min = 1)
+        public int physicsTaskQueueCapacity = 1024;
+
+        @Name("Physics Task Budget Microseconds")
+        @Comment({
+            "The time a physics tick may spend running queued tasks. Tasks that don't fit wait for the next tick,",
+            "but at least one task runs every tick. Recurring tasks always run, and don't count towards this."
+        })
+        @RangeDouble(min = 1)
+        public double physicsTaskBudgetMicros = 2000;
+
+    }
+
+    @Name("Physics Level Of Detail Settings")
+    @ShortName("physicsLodSettings")
+    @Comment({
+        "Ships far away from players, or ships that have been resting for a while, run their physics less often",
+        "with larger timesteps. They go back to the full rate on a new contact, pilot input or block change."
+    })
+    public static final PhysicsLodSettings PHYSICS_LOD_SETTINGS = new PhysicsLodSettings();
+
+    public static class PhysicsLodSettings {
+
+        @Name("Enabled")
+        @Comment("If false, every ship runs its physics at the full rate.")
+        public boolean enabled = true;
+
+        @Name("Full Rate Distance")
+        @Comment("Ships with a player within this XZ distance are never slowed down for being far away.")
+        public double fullRateDistance = 96;
+
+        @Name("Distant Tick Rate Divisor")
+        @Comment("Ships without a player nearby run their physics once every this many physics ticks.")
+        @RangeInt(min = 1)
+        public int distantTickRateDivisor = 2;
+
+        @Name("Resting Tick Rate Divisor")
+        @Comment({
+            "Resting ships run their physics once every this many physics ticks.",
+            "This is multiplied with the distant divisor for resting ships without a player nearby."
+        })
+        @RangeInt(min = 1)
+        public int restingTickRateDivisor = 4;
+
+        @Name("Resting Linear Speed")
+        @Comment("Ships moving slower than this many blocks per second may be resting.")
+        @RangeDouble(min = 0)
+        public double restingLinearSpeed = .05;
+
+        @Name("Resting Angular Speed")
+        @Comment("Ships rotating slower than this many radians per second may be resting.")
+        @RangeDouble(min = 0)
+        public double restingAngularSpeed = .01;
+
+        @Name("Resting Dwell Ticks")
+        @Comment("A ship must stay below the resting speeds for this many physics ticks before it is resting.")
+        @RangeInt(min = 1)
+        public int restingDwellTicks = 60;
+
+        @Name("Max Ticks Per Substep")
+        @Comment({
+            "When a slowed down ship runs, the time it skipped is simulated in substeps that cover at most this many",
+            "physics ticks each. Lower values are more stable, higher values save more time."
+        })
+        @RangeInt(min = 1)
+        public int maxTicksPerSubstep = 4;
+
+    }
+
+    @Name("Substep Settings")
+    @ShortName("substepSettings")
+    @Comment({
+        "Fast ships split their physics ticks into smaller substeps so they don't tunnel through thin walls, while",
+        "the expensive collision cache rebuild runs at its own, lower rate."
+    })
+    public static final SubstepSettings SUBSTEP_SETTINGS = new SubstepSettings();
+
+    public static class SubstepSettings {
+
+        @Name("Max Displacement Per Substep")
+        @Comment({
+            "A physics tick is split into substeps so that no point of a ship moves more than this many blocks in one",
+            "substep. Lower values prevent tunnelling better, but cost more time for fast ships."
+        })
+        @RangeDouble(min = .01)
+        public double maxDisplacementPerSubstep = .4;
+
+        @Name("Max Adaptive Substeps")
+        @Comment("The maximum number of substeps a single physics tick of a ship is split into.")
+        @RangeInt(min = 1)
+        public int maxAdaptiveSubsteps = 8;
+
+        @Name("Collision Cache Update Period")
+        @Comment({
+            "Seconds between rebuilds of the blocks and the water a ship might collide with. Fast ships rebuild the",
+            "blocks sooner when they could have moved out of the area the cache covers."
+        })
+        @RangeDouble(min = 0)
+        public double collisionCacheUpdatePeriod = .05;
+
+        @Name("Continuous Collision")
+        @Comment({
+            "If true, ships faster than the continuous collision speed sweep their blocks through the world along",
+            "every move, and stop where they would first hit a block. They then only need substeps for their rotation,",
+            "instead of for their speed too."
+        })
+        public boolean continuousCollision = true;
+
+        @Name("Continuous Collision Speed")
+        @Comment({
+            "Ships moving faster than this many blocks per second use continuous collision. Slower ships rely on",
+            "substeps alone, which are cheaper as long as they don't have to split the physics tick."
+        })
+        @RangeDouble(min = 0)
+        public double continuousCollisionSpeed = 20;
+
+    }
+
+    @Name("Ship Sleep Settings")
+    @ShortName("shipSleepSettings")
+    @Comment({
+        "Ships that stay almost still for a while fall asleep, and skip their physics entirely until something wakes",
+        "them up: a block change in the ship or in the world around it, pilot input, an explosion or a teleport."
+    })
+    public static final ShipSleepSettings SHIP_SLEEP_SETTINGS = new ShipSleepSettings();
+
+    public static class ShipSleepSettings {
+
+        @Name("Enabled")
+        @Comment("If false, ships never fall asleep.")
+        public boolean enabled = true;
+
+        @Name("Sleep Linear Speed")
+        @Comment("Ships moving slower than this many blocks per second may fall asleep.")
+        @RangeDouble(min = 0)
+        public double sleepLinearSpeed = .1;
+
+        @Name("Sleep Angular Speed")
+        @Comment("Ships rotating slower than this many radians per second may fall asleep.")
+        @RangeDouble(min = 0)
+        public double sleepAngularSpeed = .05;
+
+        @Name("Sleep Dwell Seconds")
+        @Comment("A ship must stay below the sleep speeds for this many seconds of physics time to fall asleep.")
+        @RangeDouble(min = 0)
+        public double sleepDwellSeconds = 1;
+
+    }
+
+    @Name("Contact Solver Settings")
+    @ShortName("contactSolverSettings")
+    @Comment({
+        "The contacts between a ship and the world, or between two ships, are resolved in parallel, all against the",
+        "same velocity, and the results are averaged. This is repeated a few times per physics tick, and the result",
+        "doesn't depend on the number of threads."
+    })
+    public static final ContactSolverSettings CONTACT_SOLVER_SETTINGS = new ContactSolverSettings();
+
+    public static class ContactSolverSettings {
+
+        @Name("Iterations")
+        @Comment({
+            "How many times per physics tick the contacts of a ship are resolved. More iterations make ships settle",
+            "into the ground more firmly, but every iteration costs as much as resolving every contact once."
+        })
+        @RangeInt(min = 1)
+        public int iterations = 4;
+
+        @Name("Ship Collisions")
+        @Comment("If false, ships pass through each other.")
+        public boolean shipCollisions = true;
+
+    }
+
+    @Name("Water Settings")
+    @ShortName("waterSettings")
+    @Comment("How ships float in water.")
+    public static final WaterSettings WATER_SETTINGS = new WaterSettings();
+
+    public static class WaterSettings {
+
+        @Name("Section Buoyancy")
+        @Comment({
+            "If true, the buoyancy and water drag of a ship are computed once per 16x16x16 section of the ship.",
+            "Sections fully under water or fully out of it cost almost nothing, only sections on the waterline look",
+            "at their blocks. If false, every water block near the ship is checked against the blocks of the ship."
+        })
+        public boolean sectionBuoyancy = true;
+
+        @Name("Fluid Properties")
+        @Comment({
+            "Override the properties of the fluids ships float in, as block=density,drag,current speed.",
+            "Density is in kg/m^3, drag is a drag coefficient (water is 0.3), and the current speed is the speed in",
+            "m/s that the fluid pushes ships at where it flows at full strength, 0 ignores its currents."
+        })
+        public String[] fluidProperties = {"minecraft:lava=3100,1.5,0.25", "minecraft:flowing_lava=3100,1.5,0.25"};
 
     }
 
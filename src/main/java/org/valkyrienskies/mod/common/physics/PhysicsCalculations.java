@@ -1,7 +1,6 @@
 package org.valkyrienskies.mod.common.physics;
 
 import lombok.Getter;
-import lombok.Setter;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.BlockPos;
@@ -19,10 +18,14 @@ import org.valkyrienskies.mod.common.collision.WorldPhysicsCollider;
 import org.valkyrienskies.mod.common.collision.WorldWaterCollider;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.ships.ship_world.GameTickSnapshot;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsTickResults;
 import org.valkyrienskies.mod.common.ships.ship_world.ShipPilot;
+import org.valkyrienskies.mod.common.util.multithreaded.PhysicsLevelOfDetail;
 import valkyrienwarfare.api.TransformType;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
@@ -59,9 +62,27 @@ public class PhysicsCalculations {
     @Getter
     private final Vector3d angularVelocity;
 
-    // If (forceToUseGameTransform == true) then reset the physics transform to the ShipData transform.
-    @Setter
-    private boolean forceToUseGameTransform;
+    // The game thread state of the ship for the current physics tick.
+    @Getter
+    private GameTickSnapshot.ShipInput tickInput;
+    // The block edits from tickInput that weren't in the input of any previous physics tick.
+    @Getter
+    private List<GameTickSnapshot.BlockEdit> newBlockEdits;
+    private int appliedForcedTransformCount;
+    private long nextUnseenBlockEdit;
+    // True if tickInput teleported the ship.
+    private boolean teleportedThisTick;
+    @Getter
+    private final PhysicsLevelOfDetail levelOfDetail;
+    // A sleeping ship skips its physics ticks entirely, until something wakes it up.
+    @Getter
+    private boolean sleeping;
+    // The seconds of physics time this ship has been below the sleep speeds.
+    private double timeBelowSleepSpeed;
+    private int appliedWakeUpCount;
+    // True if the bounding box of this ship touches the bounding box of another ship this physics tick, and one of them
+    // is moving.
+    private boolean touchingShip;
 
     public PhysicsCalculations(PhysicsObject parent) {
         this.parent = parent;
@@ -77,14 +98,26 @@ public class PhysicsCalculations {
         this.physCenterOfMass = new Vector3d();
         this.torque = new Vector3d();
         this.force = new Vector3d();
-        this.forceToUseGameTransform = false;
+        this.tickInput = null;
+        this.newBlockEdits = Collections.emptyList();
+        this.appliedForcedTransformCount = 0;
+        this.nextUnseenBlockEdit = 0;
+        this.teleportedThisTick = false;
+        this.levelOfDetail = new PhysicsLevelOfDetail(parent.getUuid().hashCode());
+        this.sleeping = false;
+        this.timeBelowSleepSpeed = 0;
+        this.appliedWakeUpCount = 0;
+        this.touchingShip = false;
 
         generatePhysicsTransform();
     }
 
     public void generatePhysicsTransform() {
+        generatePhysicsTransform(getParent().getShipData().getShipTransform());
+    }
+
+    private void generatePhysicsTransform(ShipTransform parentTransform) {
         // Create a new physics transform.
-        ShipTransform parentTransform = getParent().getShipData().getShipTransform();
         physRotation = parentTransform.getSubspaceToGlobal().getNormalizedRotation(new Quaterniond());
         physX = parentTransform.getPosX();
         physY = parentTransform.getPosY();
@@ -98,6 +131,145 @@ public class PhysicsCalculations {
                 .updatePreviousPhysicsTransform();
     }
 
+    /**
+     * Called by the physics thread at the start of every physics tick, with the latest state of this ship from the
+     * game thread.
+     */
+    public void readTickInput(GameTickSnapshot.ShipInput input) {
+        this.tickInput = input;
+        this.teleportedThisTick = false;
+
+        if (input.getForcedTransform() != null && input.getForcedTransformCount() != appliedForcedTransformCount) {
+            // The ship got teleported, reset the physics transform and velocities.
+            appliedForcedTransformCount = input.getForcedTransformCount();
+            generatePhysicsTransform(input.getForcedTransform());
+            angularVelocity.zero();
+            linearVelocity.zero();
+            teleportedThisTick = true;
+        }
+
+        final List<GameTickSnapshot.BlockEdit> blockEdits = input.getBlockEdits();
+        int firstNewEdit = 0;
+        while (firstNewEdit < blockEdits.size() && blockEdits.get(firstNewEdit).getEditIndex() < nextUnseenBlockEdit) {
+            firstNewEdit++;
+        }
+        newBlockEdits = blockEdits.subList(firstNewEdit, blockEdits.size());
+        // The game thread throws edits away while the ship is inactive, so edit indices can skip ahead.
+        final boolean editsMissed = !newBlockEdits.isEmpty() && newBlockEdits.get(0).getEditIndex() > nextUnseenBlockEdit;
+        worldCollision.applyBlockEdits(newBlockEdits, editsMissed);
+        if (!blockEdits.isEmpty()) {
+            nextUnseenBlockEdit = blockEdits.get(blockEdits.size() - 1).getEditIndex() + 1;
+        }
+
+        if (input.getWakeUpCount() != appliedWakeUpCount || input.getPilotInput() != null || !newBlockEdits.isEmpty()
+            || teleportedThisTick) {
+            appliedWakeUpCount = input.getWakeUpCount();
+            wakeUp();
+        }
+    }
+
+    /**
+     * Wakes this ship up if it is sleeping. Only call this from the physics thread, the game thread should use
+     * {@link PhysicsObject#wakeUp()} instead.
+     */
+    public void wakeUp() {
+        sleeping = false;
+        timeBelowSleepSpeed = 0;
+    }
+
+    /**
+     * Puts this ship to sleep once it has been below the sleep speeds for long enough. Ships with force blocks or
+     * physics controllers never sleep, because their forces can change without a block change.
+     */
+    private void updateSleeping() {
+        final VSConfig.ShipSleepSettings settings = VSConfig.SHIP_SLEEP_SETTINGS;
+        if (!settings.enabled || !tickInput.getForcePositions().isEmpty()
+            || !parent.getPhysicsControllersInShip().isEmpty()) {
+            timeBelowSleepSpeed = 0;
+            return;
+        }
+        if (linearVelocity.lengthSquared() < settings.sleepLinearSpeed * settings.sleepLinearSpeed
+            && angularVelocity.lengthSquared() < settings.sleepAngularSpeed * settings.sleepAngularSpeed) {
+            timeBelowSleepSpeed += physTickTimeDelta;
+            if (timeBelowSleepSpeed >= settings.sleepDwellSeconds) {
+                sleeping = true;
+                linearVelocity.zero();
+                angularVelocity.zero();
+            }
+        } else {
+            timeBelowSleepSpeed = 0;
+        }
+    }
+
+    /**
+     * @return True if something happened to this ship that has to be simulated at the full tick rate: a new contact
+     * with the world, another ship nearby, pilot input, a block change or a teleport. Called after
+     * {@link #readTickInput}.
+     */
+    public boolean needsFullTickRate() {
+        return tickInput.getPilotInput() != null || !newBlockEdits.isEmpty() || teleportedThisTick
+            || worldCollision.hasNewContact() || touchingShip;
+    }
+
+    /**
+     * Set by the physics loop every physics tick, before {@link #needsFullTickRate()}. Ships that might collide with
+     * each other are simulated together, so they have to run at the same rate. Not set for ships that are both resting,
+     * those only collide on the ticks they both run.
+     */
+    public void setTouchingShip(boolean touchingShip) {
+        this.touchingShip = touchingShip;
+    }
+
+    /**
+     * @return An upper bound of the speed of any point of this ship, in blocks per second.
+     */
+    public double getMaxPointSpeed() {
+        return linearVelocity.length() + angularVelocity.length() * worldCollision.getShipRadius();
+    }
+
+    /**
+     * @return The number of substeps a physics tick of timeStep seconds must be split into, so that no point of this
+     * ship moves more than {@link VSConfig.SubstepSettings#maxDisplacementPerSubstep} blocks per substep. Only the
+     * rotation counts for ships that use continuous collision, unless they're near another ship.
+     */
+    public int getAdaptiveSubsteps(double timeStep) {
+        // Continuous collision keeps fast ships from tunnelling into the world, but not into other ships.
+        final double pointSpeed = usesContinuousCollision() && !touchingShip
+            ? angularVelocity.length() * worldCollision.getShipRadius() : getMaxPointSpeed();
+        final double displacement = pointSpeed * timeStep;
+        final int substeps = (int) Math.ceil(displacement / VSConfig.SUBSTEP_SETTINGS.maxDisplacementPerSubstep);
+        return Math.max(1, Math.min(substeps, VSConfig.SUBSTEP_SETTINGS.maxAdaptiveSubsteps));
+    }
+
+    /**
+     * @return True if this ship is fast enough to sweep its moves through the world, see
+     * {@link VSConfig.SubstepSettings#continuousCollision}.
+     */
+    public boolean usesContinuousCollision() {
+        final VSConfig.SubstepSettings settings = VSConfig.SUBSTEP_SETTINGS;
+        return settings.continuousCollision
+            && linearVelocity.lengthSquared() > settings.continuousCollisionSpeed * settings.continuousCollisionSpeed;
+    }
+
+    /**
+     * @return True if this ship is moving slower than the resting speeds of the physics level of detail settings.
+     */
+    public boolean isBelowRestingSpeed() {
+        final double restingLinearSpeed = VSConfig.PHYSICS_LOD_SETTINGS.restingLinearSpeed;
+        final double restingAngularSpeed = VSConfig.PHYSICS_LOD_SETTINGS.restingAngularSpeed;
+        return linearVelocity.lengthSquared() < restingLinearSpeed * restingLinearSpeed
+            && angularVelocity.lengthSquared() < restingAngularSpeed * restingAngularSpeed;
+    }
+
+    /**
+     * @return The results of this physics tick for the game thread. Called after {@link #rawPhysTickPostCol()}.
+     */
+    public PhysicsTickResults.ShipResult createTickResult() {
+        return new PhysicsTickResults.ShipResult(getParent().getShipTransformationManager().getCurrentPhysicsTransform(),
+            new Vector3d(linearVelocity), new Vector3d(angularVelocity), appliedForcedTransformCount,
+            nextUnseenBlockEdit);
+    }
+
     public void rawPhysTickPreCol(double physTickTimeDelta) {
         updatePhysSpeedAndIters(physTickTimeDelta);
         updatePhysCenterOfMass();
@@ -134,26 +306,12 @@ public class PhysicsCalculations {
             getAngularVelocity().zero();
         }
 
-        // Keep track of the forced transform, if there is one
-        final boolean forceToUseGameTransformLocalCopy = this.forceToUseGameTransform;
-        // Reset the forced transform
-        this.forceToUseGameTransform = false;
-
-        if (forceToUseGameTransformLocalCopy) {
-            // Reset the physics transform to be the game tick transform
-            generatePhysicsTransform();
-            // Reset angular and linear velocities
-            angularVelocity.zero();
-            linearVelocity.zero();
-        }
-
         ShipTransform finalPhysTransform = new ShipTransform(physX, physY, physZ, physRotation, physCenterOfMass);
 
         getParent().getShipTransformationManager().updatePreviousPhysicsTransform();
         getParent().getShipTransformationManager().setCurrentPhysicsTransform(finalPhysTransform);
-        // Save a copy of linear and angular velocity in parent's ShipData
-        getParent().getShipData().getPhysicsData().setAngularVelocity(new Vector3d(angularVelocity));
-        getParent().getShipData().getPhysicsData().setLinearVelocity(new Vector3d(linearVelocity));
+
+        updateSleeping();
     }
 
     // If the ship is moving at these speeds, its likely something in the physics
@@ -238,10 +396,10 @@ public class PhysicsCalculations {
             SortedMap<IBlockTorqueProvider, List<BlockPos>> torqueProviders = new TreeMap<>();
 
             BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
-            // Note that iterating over "activeForcePositions" is not thread safe, so this could lead to problems.
-            // However we're going to completely replace this code soon anyways, so its not a big deal.
-            parent.getShipData().activeForcePositions.forEachUnsafe((x, y, z) -> {
-                mutablePos.setPos(x, y, z);
+            // Use the force positions from the game tick snapshot, iterating over "activeForcePositions" here isn't
+            // thread safe.
+            for (final BlockPos forcePos : tickInput.getForcePositions()) {
+                mutablePos.setPos(forcePos);
                 IBlockState state = getParent().getChunkAt(mutablePos.getX() >> 4, mutablePos.getZ() >> 4).getBlockState(mutablePos);
                 Block blockAt = state.getBlock();
 
@@ -280,9 +438,9 @@ public class PhysicsCalculations {
                     if (!torqueProviders.containsKey(torqueProviderBlock)) {
                         torqueProviders.put(torqueProviderBlock, new LinkedList<>());
                     }
-                    torqueProviders.get(torqueProviderBlock).add(new BlockPos(x, y, z));
+                    torqueProviders.get(torqueProviderBlock).add(forcePos);
                 }
-            });
+            }
 
             // Now add the torque from the torque providers, in a sorted order!
             for (IBlockTorqueProvider torqueProviderBlock : torqueProviders.keySet()) {
@@ -299,10 +457,10 @@ public class PhysicsCalculations {
         }
 
         // Add pilot input
-        final ShipPilot parentPilot = parent.getShipPilot();
-        if (parentPilot != null) {
-            final Vector3dc pilotForce = parentPilot.getBlockForceInShipSpace(parent, physTickTimeDelta);
-            final Vector3dc pilotTorque = parentPilot.getTorqueInGlobal(this);
+        final ShipPilot.PilotInput pilotInput = tickInput.getPilotInput();
+        if (pilotInput != null) {
+            final Vector3dc pilotForce = pilotInput.getBlockForceInShipSpace(parent, physTickTimeDelta);
+            final Vector3dc pilotTorque = pilotInput.getTorqueInGlobal(this);
 
             this.linearVelocity.fma(getInvMass(), pilotForce);
             this.torque.add(pilotTorque);
@@ -446,9 +604,20 @@ public class PhysicsCalculations {
             linearVelocity.normalize().mul(VSConfig.shipMaxSpeed);
         }
 
-        physX += getLinearVelocity().x() * getPhysicsTimeDeltaPerPhysTick();
-        physY += getLinearVelocity().y() * getPhysicsTimeDeltaPerPhysTick();
-        physZ += getLinearVelocity().z() * getPhysicsTimeDeltaPerPhysTick();
+        double moveX = getLinearVelocity().x() * getPhysicsTimeDeltaPerPhysTick();
+        double moveY = getLinearVelocity().y() * getPhysicsTimeDeltaPerPhysTick();
+        double moveZ = getLinearVelocity().z() * getPhysicsTimeDeltaPerPhysTick();
+        if (usesContinuousCollision()) {
+            // Rewind the move to just before the ship would hit the world. The velocity stays, so the collision
+            // solver deals with the hit in the next substep.
+            final double moveFraction = worldCollision.getSweptMoveFraction(moveX, moveY, moveZ);
+            moveX *= moveFraction;
+            moveY *= moveFraction;
+            moveZ *= moveFraction;
+        }
+        physX += moveX;
+        physY += moveY;
+        physZ += moveZ;
         physY = Math.min(Math.max(physY, VSConfig.shipLowerLimit), VSConfig.shipUpperLimit);
     }
 
@@ -43,9 +43,13 @@ public class MoveBlocks {
         // Only want to send the update to clients and nothing else, so we use flag 2.
         world.notifyBlockUpdate(newPos, oldState, newState, 2);
 
-        // If this block is force block, then add it to the activeForcePositions list of the ship.
-        if (physicsObject != null && BlockPhysicsDetails.isBlockProvidingForce(newState)) {
-            physicsObject.getShipData().activeForcePositions.add(newPos);
+        if (physicsObject != null) {
+            // If this block is force block, then add it to the activeForcePositions list of the ship.
+            if (BlockPhysicsDetails.isBlockProvidingForce(newState)) {
+                physicsObject.getShipData().activeForcePositions.add(newPos);
+            }
+            // We skipped Chunk.setBlockState(), so tell the ship about this change ourselves.
+            physicsObject.onSetBlockState(newPos, oldState, newState);
         }
 
         // Now that we've copied the block to the position, copy the tile entity
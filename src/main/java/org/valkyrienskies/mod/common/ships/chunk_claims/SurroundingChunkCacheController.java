@@ -12,10 +12,27 @@ public class SurroundingChunkCacheController {
     @Getter
     private ChunkCache cachedChunks;
     private PhysicsObject physicsObject;
+    // The corners of the area cachedChunks was made for.
+    private BlockPos cachedMin, cachedMax;
 
     public SurroundingChunkCacheController(PhysicsObject physicsObject) {
         this.physicsObject = physicsObject;
         this.cachedChunks = null;
+        this.cachedMin = null;
+        this.cachedMax = null;
+    }
+
+    /**
+     * @return True if pos is in the area of the world around the ship that the cached chunks were made for, or right
+     * next to it.
+     */
+    public boolean containsBlock(BlockPos pos) {
+        if (cachedChunks == null) {
+            return false;
+        }
+        return pos.getX() >= cachedMin.getX() - 1 && pos.getX() <= cachedMax.getX() + 1
+            && pos.getY() >= cachedMin.getY() - 1 && pos.getY() <= cachedMax.getY() + 1
+            && pos.getZ() >= cachedMin.getZ() - 1 && pos.getZ() <= cachedMax.getZ() + 1;
     }
 
     public void updateChunkCache() {
@@ -48,9 +65,13 @@ public class SurroundingChunkCacheController {
 
             if (areSurroundingChunksLoaded) {
                 cachedChunks = new ChunkCache(physicsObject.getWorld(), min, max, 0);
+                cachedMin = min;
+                cachedMax = max;
             }
         } else {
             cachedChunks = new ChunkCache(physicsObject.getWorld(), min, max, 0);
+            cachedMin = min;
+            cachedMax = max;
         }
     }
 }
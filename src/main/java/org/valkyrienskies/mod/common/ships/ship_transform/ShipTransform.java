@@ -102,6 +102,26 @@ public class ShipTransform {
         return getTransformMatrix(transformType).transformDirection(direction);
     }
 
+    /**
+     * Transforms the positions (xs[i], ys[i], zs[i]) for every i from fromIndex (inclusive) to toIndex (exclusive) in
+     * place. Gives exactly the same results as {@link #transformPositionNew(Vector3d, TransformType)}, but the matrix
+     * is only read once and the loop only touches arrays, so the JIT can unroll and vectorize it.
+     */
+    public void transformPositions(double[] xs, double[] ys, double[] zs, int fromIndex, int toIndex,
+                                   TransformType transformType) {
+        final Matrix4dc matrix = getTransformMatrix(transformType);
+        final double m00 = matrix.m00(), m01 = matrix.m01(), m02 = matrix.m02();
+        final double m10 = matrix.m10(), m11 = matrix.m11(), m12 = matrix.m12();
+        final double m20 = matrix.m20(), m21 = matrix.m21(), m22 = matrix.m22();
+        final double m30 = matrix.m30(), m31 = matrix.m31(), m32 = matrix.m32();
+        for (int i = fromIndex; i < toIndex; i++) {
+            final double x = xs[i], y = ys[i], z = zs[i];
+            xs[i] = m00 * x + m10 * y + m20 * z + m30;
+            ys[i] = m01 * x + m11 * y + m21 * z + m31;
+            zs[i] = m02 * x + m12 * y + m22 * z + m32;
+        }
+    }
+
     public void transformPosition(Vector3d position, TransformType transformType) {
         getTransformMatrix(transformType).transformPosition(position);
     }
@@ -0,0 +1,70 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import lombok.Value;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+/**
+ * Everything the physics thread needs to know from the game thread, as of the end of one game tick.
+ * <p>
+ * Snapshots are immutable, so the game thread publishes a new one by swapping a single volatile reference and the
+ * physics thread can read it without locks. Nothing is copied just because a tick passed: the ship list is only
+ * rebuilt when ships are loaded or unloaded, and a {@link ShipInput} is only rebuilt when something about its ship
+ * changed. If nothing changed at all then the previous snapshot is published again.
+ */
+@Value
+public class GameTickSnapshot {
+
+    public static final GameTickSnapshot EMPTY = new GameTickSnapshot(ImmutableList.of(), ImmutableMap.of());
+
+    ImmutableList<PhysicsObject> loadedShips;
+    ImmutableMap<UUID, ShipInput> shipInputs;
+
+    @Nullable
+    public ShipInput getShipInput(PhysicsObject ship) {
+        return shipInputs.get(ship.getUuid());
+    }
+
+    /**
+     * The game thread state of a single ship.
+     */
+    @Value
+    public static class ShipInput {
+        // True if the physics thread should simulate this ship.
+        boolean physicsActive;
+        // True if a player is close enough that this ship should always run its physics at the full rate.
+        boolean nearPlayer;
+        // The positions of the blocks that provide force. Only copied when a force block is added or removed.
+        ImmutableList<BlockPos> forcePositions;
+        // Null if nobody is piloting this ship.
+        @Nullable
+        ShipPilot.PilotInput pilotInput;
+        // The transform this ship got teleported to, or null if it never was.
+        @Nullable
+        ShipTransform forcedTransform;
+        // Increases by one every teleport, so the physics thread knows when forcedTransform is new.
+        int forcedTransformCount;
+        // Increases by one every time something on the game thread wants to wake this ship up.
+        int wakeUpCount;
+        // The block changes in this ship that the physics thread hasn't told us it has seen yet, oldest first.
+        ImmutableList<BlockEdit> blockEdits;
+    }
+
+    /**
+     * A single block change in a ship.
+     */
+    @Value
+    public static class BlockEdit {
+        // Counts the block edits of a ship, starting at 0.
+        long editIndex;
+        BlockPos pos;
+        IBlockState oldState;
+        IBlockState newState;
+    }
+}
@@ -11,6 +11,11 @@ public interface IHasShipManager {
 
     IPhysObjectWorld getManager();
 
+    /**
+     * @return False until WorldEvent.load() gave this world its manager, {@link #getManager()} throws until then.
+     */
+    boolean hasManager();
+
     void setManager(Function<World, IPhysObjectWorld> managerSupplier);
 
 }
@@ -1,9 +1,12 @@
 package org.valkyrienskies.mod.common.ships.ship_world;
 
+import com.google.common.collect.ImmutableList;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Delegate;
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.client.multiplayer.ChunkProviderClient;
+import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.play.server.SPacketUnloadChunk;
 import net.minecraft.tileentity.TileEntity;
@@ -23,6 +26,8 @@ import org.joml.Vector3d;
 import org.joml.Vector3dc;
 import org.valkyrienskies.mod.client.render.PhysObjectRenderManager;
 import org.valkyrienskies.mod.common.collision.Polygon;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
 import org.valkyrienskies.mod.common.physics.IPhysicsBlockController;
 import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
 import org.valkyrienskies.mod.common.ships.ShipData;
@@ -129,6 +134,18 @@ public class PhysicsObject implements IPhysicsEntity {
     @Setter @Getter
     private ShipPilot shipPilot;
 
+    // The state used to build this ship's GameTickSnapshot.ShipInput, only used by the game thread.
+    // Block edits the physics thread hasn't seen yet, oldest first.
+    private final List<GameTickSnapshot.BlockEdit> unseenBlockEdits;
+    private long blockEditCount;
+    private boolean blockEditsChanged;
+    private ImmutableList<BlockPos> forcePositions;
+    private boolean forcePositionsChanged;
+    private ShipTransform forcedTransform;
+    private int forcedTransformCount;
+    private GameTickSnapshot.ShipInput shipInput;
+    private int wakeUpCount;
+
     // endregion
 
     // region Methods
@@ -158,6 +175,15 @@ public class PhysicsObject implements IPhysicsEntity {
         this.ticksSinceShipTeleport = TICKS_SINCE_TELEPORT_TO_START_DRAGGING + 1; // Anything larger than TICKS_SINCE_TELEPORT_TO_START_DRAGGING works
         this.ticksExisted = 0;
         this.shipPilot = null;
+        this.unseenBlockEdits = new ArrayList<>();
+        this.blockEditCount = 0;
+        this.blockEditsChanged = false;
+        this.forcePositions = ImmutableList.of();
+        this.forcePositionsChanged = true;
+        this.forcedTransform = null;
+        this.forcedTransformCount = 0;
+        this.wakeUpCount = 0;
+        this.shipInput = null;
         // Note how this is last.
         if (world.isRemote) {
             this.shipRenderer = new PhysObjectRenderManager(this, referenceBlockPos);
@@ -170,27 +196,50 @@ public class PhysicsObject implements IPhysicsEntity {
         }
     }
 
-    void onTick() {
+    /**
+     * @param physicsResult The latest physics result for this ship, or null if there is none. Always null on the
+     *                      client.
+     */
+    void onTick(@Nullable PhysicsTickResults.ShipResult physicsResult) {
         if (!world.isRemote) {
             cachedSurroundingChunks.updateChunkCache();
 
             final boolean forceToUseShipDataTransformLocalCopy = forceToUseShipDataTransform;
             forceToUseShipDataTransform = false;
+            final ShipTransform newTransform;
             if (forceToUseShipDataTransformLocalCopy) {
-                final ShipTransform forcedTransform = shipData.getShipTransform();
-
-                // This is BAD! Race condition! But I don't think this will cause any problems (I hope).
-                getShipTransformationManager().setPrevPhysicsTransform(forcedTransform);
-                getShipTransformationManager().setCurrentPhysicsTransform(forcedTransform);
+                // The physics thread picks this up from the next game tick snapshot.
+                forcedTransform = shipData.getShipTransform();
+                forcedTransformCount++;
                 getShipTransformationManager().setPrevTickTransform(forcedTransform);
                 getShipTransformationManager().setCurrentTickTransform(forcedTransform);
+                newTransform = forcedTransform;
+            } else if (physicsResult != null && physicsResult.getForcedTransformCount() == forcedTransformCount) {
+                newTransform = physicsResult.getTransform();
+                // Save a copy of linear and angular velocity in ShipData
+                getShipData().getPhysicsData().setLinearVelocity(new Vector3d(physicsResult.getLinearVelocity()));
+                getShipData().getPhysicsData().setAngularVelocity(new Vector3d(physicsResult.getAngularVelocity()));
+            } else {
+                // Either physics hasn't run yet, or it hasn't seen the latest teleport yet. Either way stay put.
+                newTransform = getShipTransformationManager().getCurrentTickTransform();
+            }
+
+            if (physicsResult != null) {
+                // Forget the block edits the physics thread has seen, all at once rather than shifting the list per edit.
+                int seenEdits = 0;
+                while (seenEdits < unseenBlockEdits.size()
+                    && unseenBlockEdits.get(seenEdits).getEditIndex() < physicsResult.getNextUnseenBlockEdit()) {
+                    seenEdits++;
+                }
+                if (seenEdits > 0) {
+                    unseenBlockEdits.subList(0, seenEdits).clear();
+                    blockEditsChanged = true;
+                }
             }
 
             ticksSinceShipTeleport++;
 
-            ShipTransform physicsTransform = getShipTransformationManager()
-                .getCurrentPhysicsTransform();
-            getShipTransformationManager().updateAllTransforms(physicsTransform, false, true);
+            getShipTransformationManager().updateAllTransforms(newTransform, false, true);
             // Copy the current and prev transforms into ShipData
             getShipData().setShipTransform(getShipTransformationManager().getCurrentTickTransform());
             getShipData().setPrevTickShipTransform(getShipTransformationManager().getPrevTickTransform());
@@ -441,6 +490,91 @@ public class PhysicsObject implements IPhysicsEntity {
         return ticksExisted >= DISABLE_PHYSICS_FOR_X_INITIAL_TICKS;
     }
 
+    /**
+     * @return True if the physics thread should simulate this ship right now.
+     */
+    public boolean isPhysicsActive() {
+        return isPhysicsReady() && isPhysicsEnabled() && getCachedSurroundingChunks() != null;
+    }
+
+    /**
+     * Wakes this ship up if its physics is sleeping, for example because the terrain under it changed or because of a
+     * nearby explosion. The physics thread picks this up from the next game tick snapshot.
+     */
+    public void wakeUp() {
+        wakeUpCount++;
+    }
+
+    /**
+     * Wakes this ship up if pos is in the area of the world around it.
+     */
+    void onTerrainBlockChanged(BlockPos pos) {
+        if (cachedSurroundingChunks.containsBlock(pos)) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * @return True if any player is within {@link VSConfig.PhysicsLodSettings#fullRateDistance} of this ship, on the
+     * XZ plane.
+     */
+    private boolean isNearPlayer() {
+        final double fullRateDistance = VSConfig.PHYSICS_LOD_SETTINGS.fullRateDistance;
+        final ShipTransform transform = getShipTransform();
+        for (EntityPlayer player : world.playerEntities) {
+            final double dx = player.posX - transform.getPosX();
+            final double dz = player.posZ - transform.getPosZ();
+            if (dx * dx + dz * dz < fullRateDistance * fullRateDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers a block change in this ship, so it can be sent to the physics thread in the next game tick snapshot.
+     */
+    public void onSetBlockState(BlockPos pos, IBlockState oldState, IBlockState newState) {
+        unseenBlockEdits.add(new GameTickSnapshot.BlockEdit(blockEditCount++, pos.toImmutable(), oldState, newState));
+        blockEditsChanged = true;
+        if (BlockPhysicsDetails.isBlockProvidingForce(oldState) || BlockPhysicsDetails.isBlockProvidingForce(newState)) {
+            forcePositionsChanged = true;
+        }
+    }
+
+    /**
+     * @return The state of this ship the physics thread needs for the next game tick snapshot. If nothing changed
+     * since the last call, then the same instance is returned again.
+     */
+    GameTickSnapshot.ShipInput createShipInput() {
+        final boolean physicsActive = isPhysicsActive();
+        final boolean nearPlayer = isNearPlayer();
+        if (!physicsActive && !unseenBlockEdits.isEmpty()) {
+            // Physics won't run for this ship until it's active again, so don't pile up edits for it.
+            unseenBlockEdits.clear();
+            blockEditsChanged = true;
+        }
+        if (forcePositionsChanged) {
+            final ImmutableList.Builder<BlockPos> forcePositionsBuilder = ImmutableList.builder();
+            getShipData().activeForcePositions.forEach(pos -> forcePositionsBuilder.add(pos.toImmutable()));
+            forcePositions = forcePositionsBuilder.build();
+        }
+        final ShipPilot.PilotInput pilotInput = shipPilot != null ? shipPilot.getPilotInput() : null;
+
+        if (shipInput == null || blockEditsChanged || forcePositionsChanged
+            || shipInput.isPhysicsActive() != physicsActive
+            || shipInput.isNearPlayer() != nearPlayer
+            || shipInput.getWakeUpCount() != wakeUpCount
+            || shipInput.getPilotInput() != pilotInput
+            || shipInput.getForcedTransformCount() != forcedTransformCount) {
+            shipInput = new GameTickSnapshot.ShipInput(physicsActive, nearPlayer, forcePositions, pilotInput,
+                forcedTransform, forcedTransformCount, wakeUpCount, ImmutableList.copyOf(unseenBlockEdits));
+            blockEditsChanged = false;
+            forcePositionsChanged = false;
+        }
+        return shipInput;
+    }
+
     /**
      * A thread safe way of accessing tile entities within a ship. Not guaranteed to provide the most up to do tile.
      */
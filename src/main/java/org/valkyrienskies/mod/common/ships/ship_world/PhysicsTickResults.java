@@ -0,0 +1,38 @@
+package org.valkyrienskies.mod.common.ships.ship_world;
+
+import com.google.common.collect.ImmutableMap;
+import lombok.Value;
+import org.joml.Vector3dc;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+import javax.annotation.Nullable;
+import java.util.UUID;
+
+/**
+ * The results of one physics tick, published by the physics thread for the game thread. Like {@link GameTickSnapshot}
+ * this is immutable and exchanged through a single volatile reference.
+ */
+@Value
+public class PhysicsTickResults {
+
+    public static final PhysicsTickResults EMPTY = new PhysicsTickResults(ImmutableMap.of());
+
+    // Only has the ships that were simulated in this physics tick.
+    ImmutableMap<UUID, ShipResult> shipResults;
+
+    @Nullable
+    public ShipResult getShipResult(PhysicsObject ship) {
+        return shipResults.get(ship.getUuid());
+    }
+
+    @Value
+    public static class ShipResult {
+        ShipTransform transform;
+        Vector3dc linearVelocity;
+        Vector3dc angularVelocity;
+        // The GameTickSnapshot.ShipInput#getForcedTransformCount() this result is based on.
+        int forcedTransformCount;
+        // The index of the first block edit the physics thread hasn't seen yet.
+        long nextUnseenBlockEdit;
+    }
+}
@@ -1,6 +1,7 @@
 package org.valkyrienskies.mod.common.ships.ship_world;
 
 import lombok.Getter;
+import lombok.Value;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import org.joml.Vector3d;
@@ -25,14 +26,14 @@ public class ShipPilot {
     @Getter
     private final UUID pilot;
     private final float initialYaw;
-    private Vector3d targetLinearVelocity;
-    private Vector3d targetAngularVelocity;
+    // Replaced (never modified) by every control message, so it can be handed to the physics thread as is.
+    @Getter
+    private PilotInput pilotInput;
 
     public ShipPilot(final EntityPlayer pilot) {
         this.pilot = pilot.entityUniqueID;
         this.initialYaw = pilot.rotationYaw;
-        this.targetLinearVelocity = new Vector3d();
-        this.targetAngularVelocity = new Vector3d();
+        this.pilotInput = new PilotInput(new Vector3d(), new Vector3d());
     }
 
     public void processControlMessage(PilotControlsMessage message, EntityPlayerMP sender) {
@@ -61,63 +62,72 @@ public class ShipPilot {
         }
 
         // Update the target velocities
-        targetLinearVelocity = newTargetLinearVelocity;
-        targetAngularVelocity = newTargetAngularVelocity;
+        pilotInput = new PilotInput(newTargetLinearVelocity, newTargetAngularVelocity);
 
         // Check if we need to stop piloting
 
     }
 
-    public Vector3dc getBlockForceInShipSpace(PhysicsObject physicsObject, double secondsToApply) {
-        final ShipTransform shipTransform = physicsObject.getShipTransformationManager().getCurrentPhysicsTransform();
+    /**
+     * The velocities the pilot wants the ship to move at. Immutable, the physics thread reads this from the
+     * {@link GameTickSnapshot}.
+     */
+    @Value
+    public static class PilotInput {
+        Vector3dc targetLinearVelocity;
+        Vector3dc targetAngularVelocity;
 
-        final Vector3dc idealLinearVelocity = shipTransform.transformDirectionNew(new Vector3d(targetLinearVelocity), TransformType.SUBSPACE_TO_GLOBAL);
-        final Vector3dc currentLinearVelocity = physicsObject.getPhysicsCalculations().getLinearVelocity();
-        final Vector3dc velocityDifference = idealLinearVelocity.sub(currentLinearVelocity, new Vector3d());
+        public Vector3dc getBlockForceInShipSpace(PhysicsObject physicsObject, double secondsToApply) {
+            final ShipTransform shipTransform = physicsObject.getShipTransformationManager().getCurrentPhysicsTransform();
 
-        final Vector3d resultingBlockForce = new Vector3d(velocityDifference);
-        resultingBlockForce.mul(physicsObject.getInertiaData().getGameTickMass());
-        resultingBlockForce.mul(secondsToApply);
+            final Vector3dc idealLinearVelocity = shipTransform.transformDirectionNew(new Vector3d(targetLinearVelocity), TransformType.SUBSPACE_TO_GLOBAL);
+            final Vector3dc currentLinearVelocity = physicsObject.getPhysicsCalculations().getLinearVelocity();
+            final Vector3dc velocityDifference = idealLinearVelocity.sub(currentLinearVelocity, new Vector3d());
 
-        resultingBlockForce.mul(LINEAR_EMA_FILTER_CONSTANT);
+            final Vector3d resultingBlockForce = new Vector3d(velocityDifference);
+            resultingBlockForce.mul(physicsObject.getInertiaData().getGameTickMass());
+            resultingBlockForce.mul(secondsToApply);
 
-        // Do not affect y axis
-        resultingBlockForce.y = 0;
+            resultingBlockForce.mul(LINEAR_EMA_FILTER_CONSTANT);
 
-        return resultingBlockForce;
-    }
+            // Do not affect y axis
+            resultingBlockForce.y = 0;
+
+            return resultingBlockForce;
+        }
 
-    public Vector3dc getTorqueInGlobal(PhysicsCalculations physicsCalculations) {
-        final PhysicsObject physicsObject = physicsCalculations.getParent();
-        final ShipTransform shipTransform = physicsObject.getShipTransformationManager().getCurrentPhysicsTransform();
+        public Vector3dc getTorqueInGlobal(PhysicsCalculations physicsCalculations) {
+            final PhysicsObject physicsObject = physicsCalculations.getParent();
+            final ShipTransform shipTransform = physicsObject.getShipTransformationManager().getCurrentPhysicsTransform();
 
-        final Vector3dc idealAngularVelocity = shipTransform.transformDirectionNew(new Vector3d(targetAngularVelocity), TransformType.SUBSPACE_TO_GLOBAL);
-        final Vector3dc currentAngularVelocity = physicsCalculations.getAngularVelocity();
-        final Vector3dc velocityDifference = idealAngularVelocity.sub(currentAngularVelocity, new Vector3d());
+            final Vector3dc idealAngularVelocity = shipTransform.transformDirectionNew(new Vector3d(targetAngularVelocity), TransformType.SUBSPACE_TO_GLOBAL);
+            final Vector3dc currentAngularVelocity = physicsCalculations.getAngularVelocity();
+            final Vector3dc velocityDifference = idealAngularVelocity.sub(currentAngularVelocity, new Vector3d());
 
-        final Vector3d resultingTorque = physicsCalculations.getPhysMOITensor().transform(velocityDifference, new Vector3d());
-        resultingTorque.mul(physicsCalculations.getPhysicsTimeDeltaPerPhysTick());
+            final Vector3d resultingTorque = physicsCalculations.getPhysMOITensor().transform(velocityDifference, new Vector3d());
+            resultingTorque.mul(physicsCalculations.getPhysicsTimeDeltaPerPhysTick());
 
-        resultingTorque.mul(ANGULAR_EMA_FILTER_CONSTANT);
+            resultingTorque.mul(ANGULAR_EMA_FILTER_CONSTANT);
 
-        // Only effect y axis
-        resultingTorque.x = 0;
-        resultingTorque.z = 0;
+            // Only effect y axis
+            resultingTorque.x = 0;
+            resultingTorque.z = 0;
 
-        // Add a stabilization torque
-        final Vector3dc shipUp = shipTransform.transformDirectionNew(new Vector3d(0, 1, 0), TransformType.SUBSPACE_TO_GLOBAL);
-        final Vector3dc idealUp = new Vector3d(0, 1, 0);
-        final double angleBetween = shipUp.angle(idealUp);
-        if (angleBetween > .01) {
-            final Vector3dc stabilizationRotationAxisNormalized = shipUp.cross(idealUp, new Vector3d()).normalize();
+            // Add a stabilization torque
+            final Vector3dc shipUp = shipTransform.transformDirectionNew(new Vector3d(0, 1, 0), TransformType.SUBSPACE_TO_GLOBAL);
+            final Vector3dc idealUp = new Vector3d(0, 1, 0);
+            final double angleBetween = shipUp.angle(idealUp);
+            if (angleBetween > .01) {
+                final Vector3dc stabilizationRotationAxisNormalized = shipUp.cross(idealUp, new Vector3d()).normalize();
 
-            final Vector3d stabilizationTorque = physicsCalculations.getPhysMOITensor().transform(stabilizationRotationAxisNormalized.mul(angleBetween, new Vector3d()));
-            stabilizationTorque.mul(physicsCalculations.getPhysicsTimeDeltaPerPhysTick());
-            stabilizationTorque.mul(STABILIZATION_TORQUE_CONSTANT);
+                final Vector3d stabilizationTorque = physicsCalculations.getPhysMOITensor().transform(stabilizationRotationAxisNormalized.mul(angleBetween, new Vector3d()));
+                stabilizationTorque.mul(physicsCalculations.getPhysicsTimeDeltaPerPhysTick());
+                stabilizationTorque.mul(STABILIZATION_TORQUE_CONSTANT);
 
-            resultingTorque.add(stabilizationTorque);
-        }
+                resultingTorque.add(stabilizationTorque);
+            }
 
-        return resultingTorque;
+            return resultingTorque;
+        }
     }
 }
@@ -45,7 +45,7 @@ public class WorldClientShipManager implements IPhysObjectWorld {
         loadAndUnloadShips();
 
         for (PhysicsObject physicsObject : getAllLoadedPhysObj()) {
-            physicsObject.onTick();
+            physicsObject.onTick(null);
         }
 
         // Update the thread safe ship list.
@@ -1,6 +1,7 @@
 package org.valkyrienskies.mod.common.ships.ship_world;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import gnu.trove.iterator.TIntIterator;
 import lombok.Getter;
 import net.minecraft.block.state.IBlockState;
@@ -19,6 +20,7 @@ import net.minecraft.world.gen.ChunkProviderServer;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.physics.BlockPhysicsDetails;
 import org.valkyrienskies.mod.common.ships.QueryableShipData;
@@ -40,19 +42,21 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     private final WorldServer world;
     @Getter
     private final VSWorldPhysicsLoop physicsLoop;
-    private final Thread physicsThread;
     private final WorldShipLoadingController loadingController;
     private final Map<UUID, PhysicsObject> loadedShips;
     // Use LinkedHashSet as a queue because it preserves order and doesn't allow duplicates
     private final LinkedHashSet<ImmutableTriple<BlockPos, ShipData, BlockFinder.BlockFinderType>> spawnQueue;
     private final LinkedHashSet<UUID> loadQueue, unloadQueue, backgroundLoadQueue;
     private final Set<UUID> loadingInBackground;
-    private ImmutableList<PhysicsObject> threadSafeLoadedShips;
+    // The latest game tick snapshot for the physics thread, replaced (never modified) at the end of every tick.
+    private volatile GameTickSnapshot gameTickSnapshot;
+    // True if loadedShips changed since the last snapshot.
+    private boolean loadedShipsChanged;
     private static final Logger logger = LogManager.getLogger();
 
     public WorldServerShipManager(World world) {
         this.world = (WorldServer) world;
-        this.physicsLoop = new VSWorldPhysicsLoop(world);
+        this.physicsLoop = new VSWorldPhysicsLoop(world, ValkyrienSkiesMod.getPhysicsScheduler());
         this.loadingController = new WorldShipLoadingController(this);
         this.loadedShips = new HashMap<>();
         this.spawnQueue = new LinkedHashSet<>();
@@ -60,10 +64,8 @@ public class WorldServerShipManager implements IPhysObjectWorld {
         this.unloadQueue = new LinkedHashSet<>();
         this.backgroundLoadQueue = new LinkedHashSet<>();
         this.loadingInBackground = new HashSet<>();
-        this.threadSafeLoadedShips = ImmutableList.of();
-
-        this.physicsThread = new Thread(physicsLoop);
-        this.physicsThread.start();
+        this.gameTickSnapshot = GameTickSnapshot.EMPTY;
+        this.loadedShipsChanged = false;
     }
 
     private void enforceGameThread() {
@@ -97,6 +99,24 @@ public class WorldServerShipManager implements IPhysObjectWorld {
         return nearby;
     }
 
+    /**
+     * Wakes up the ships around a block change in the world (not in a ship), in case they were resting on it.
+     *
+     * Changes made off the game thread (world generation, some mods) are ignored rather than reading loadedShips from
+     * the wrong thread.
+     */
+    public void onTerrainBlockChanged(BlockPos pos) {
+        if (loadedShips.isEmpty() || !world.isCallingFromMinecraftThread()) {
+            return;
+        }
+        // A sleeping ship doesn't move, so its cached chunk area was made from its current bounding box. The area
+        // also counts the blocks right next to it, hence the margin.
+        final AxisAlignedBB changedBB = new AxisAlignedBB(pos).grow(2);
+        for (PhysicsObject ship : getPhysObjectsInAABB(changedBB)) {
+            ship.onTerrainBlockChanged(pos);
+        }
+    }
+
     public void tick() {
         // First destroy any ships that want to be destroyed (copy blocks from ship to world, and then unload)
         Iterator<Map.Entry<UUID, PhysicsObject>> iterator = loadedShips.entrySet().iterator();
@@ -108,6 +128,7 @@ public class WorldServerShipManager implements IPhysObjectWorld {
                 // Then remove the ship from the world, and the ship map.
                 QueryableShipData.get(world).removeShip(physicsObject.getShipData());
                 iterator.remove();
+                loadedShipsChanged = true;
             }
         }
 
@@ -120,16 +141,61 @@ public class WorldServerShipManager implements IPhysObjectWorld {
         // Then execute queued ship load and unload operations
         loadAndUnloadShips();
 
-        // Then tick all the loaded ships
+        // Then tick all the loaded ships, using the latest results from the physics thread
+        final PhysicsTickResults physicsTickResults = physicsLoop.getPhysicsTickResults();
         for (PhysicsObject ship : getAllLoadedPhysObj()) {
-            ship.onTick();
+            ship.onTick(physicsTickResults.getShipResult(ship));
         }
 
         // Finally, send the players updates about the ships.
         loadingController.sendUpdatesToPlayers();
 
-        // And then update the thread safe ship list.
-        this.threadSafeLoadedShips = ImmutableList.copyOf(loadedShips.values());
+        // And then give the physics thread the new state of the ships.
+        final GameTickSnapshot snapshot = publishGameTickSnapshot();
+
+        // The physics loop goes idle when no ship needs physics, so wake it up when one does. The game thread
+        // doesn't tick while the game is paused, so this also resumes the physics after an unpause.
+        for (GameTickSnapshot.ShipInput shipInput : snapshot.getShipInputs().values()) {
+            if (shipInput.isPhysicsActive()) {
+                physicsLoop.wakeUp();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Publishes the state of the loaded ships for the physics thread. Only rebuilds the parts that changed, and if
+     * nothing changed then the previous snapshot stays.
+     */
+    private GameTickSnapshot publishGameTickSnapshot() {
+        final GameTickSnapshot previous = gameTickSnapshot;
+        final ImmutableList<PhysicsObject> ships = loadedShipsChanged
+            ? ImmutableList.copyOf(loadedShips.values()) : previous.getLoadedShips();
+        loadedShipsChanged = false;
+
+        boolean shipInputsChanged = ships != previous.getLoadedShips();
+        for (PhysicsObject ship : ships) {
+            if (ship.createShipInput() != previous.getShipInputs().get(ship.getUuid())) {
+                shipInputsChanged = true;
+            }
+        }
+
+        if (shipInputsChanged) {
+            final ImmutableMap.Builder<UUID, GameTickSnapshot.ShipInput> shipInputs = ImmutableMap.builder();
+            for (PhysicsObject ship : ships) {
+                // Returns the same instance as above, since nothing changed in between.
+                shipInputs.put(ship.getUuid(), ship.createShipInput());
+            }
+            gameTickSnapshot = new GameTickSnapshot(ships, shipInputs.build());
+        }
+        return gameTickSnapshot;
+    }
+
+    /**
+     * @return The state of the loaded ships as of the end of the last game tick. Safe to call from any thread.
+     */
+    public GameTickSnapshot getGameTickSnapshot() {
+        return gameTickSnapshot;
     }
 
     private void spawnNewShips() {
@@ -347,6 +413,7 @@ public class WorldServerShipManager implements IPhysObjectWorld {
             // Finally, instantiate the PhysicsObject representation of this ShipData
             PhysicsObject physicsObject = new PhysicsObject(world, toSpawn);
             loadedShips.put(toSpawn.getUuid(), physicsObject);
+            loadedShipsChanged = true;
         }
         spawnQueue.clear();
     }
@@ -383,6 +450,8 @@ public class WorldServerShipManager implements IPhysObjectWorld {
             if (old != null) {
                 throw new IllegalStateException("How did we already have a ship loaded for " + toLoad);
             }
+            loadedShipsChanged = true;
+            physicsLoop.wakeUp();
         }
         loadQueue.clear();
 
@@ -438,6 +507,7 @@ public class WorldServerShipManager implements IPhysObjectWorld {
             }
             physicsObject.unload();
             boolean success = loadedShips.remove(toUnloadID, physicsObject);
+            loadedShipsChanged = true;
 
             if (!success) {
                 throw new IllegalStateException("How did we fail to unload " + physicsObject.getShipData());
@@ -456,7 +526,7 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     @Nonnull
     @Override
     public ImmutableList<PhysicsObject> getAllLoadedThreadSafe() {
-        return threadSafeLoadedShips;
+        return gameTickSnapshot.getLoadedShips();
     }
 
     /**
@@ -465,6 +535,7 @@ public class WorldServerShipManager implements IPhysObjectWorld {
     public void queueShipSpawn(@Nonnull ShipData data, @Nonnull BlockPos spawnPos, @Nonnull BlockFinder.BlockFinderType blockFinderType) {
         enforceGameThread();
         this.spawnQueue.add(ImmutableTriple.of(spawnPos, data, blockFinderType));
+        physicsLoop.wakeUp();
     }
 
     @Override
@@ -176,6 +176,16 @@ public class ValkyrienUtils {
         return (WorldServerShipManager) ((IHasShipManager) world).getManager();
     }
 
+    /**
+     * Wakes up the ships that could be resting on a block that changed in the world (not in a ship). Blocks set before
+     * the world has a ship manager, like the bonus chest of a new world, can't wake anything so they're ignored.
+     */
+    public void onTerrainBlockChanged(World world, BlockPos pos) {
+        if (((IHasShipManager) world).hasManager()) {
+            getServerShipManager(world).onTerrainBlockChanged(pos);
+        }
+    }
+
     /**
      * Creates a new ShipIndexedData based on the inputs provided by the physics infuser block.
      */
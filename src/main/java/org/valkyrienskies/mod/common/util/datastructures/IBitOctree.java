@@ -1,5 +1,7 @@
 package org.valkyrienskies.mod.common.util.datastructures;
 
+import org.valkyrienskies.mod.common.util.VSIterationUtils.IntTernaryConsumer;
+
 public interface IBitOctree {
 
     int BLOCKS_TOTAL = 4096;
@@ -14,6 +16,11 @@ public interface IBitOctree {
 
     boolean getAtIndex(int index);
 
+    /**
+     * @return The number of blocks set to true, from 0 to {@link #BLOCKS_TOTAL}.
+     */
+    int getSetBitCount();
+
     int getOctreeLevelOneIndex(int levelTwoIndex, int offset);
 
     int getOctreeLevelTwoIndex(int levelThreeIndex, int offset);
@@ -37,4 +44,61 @@ public interface IBitOctree {
         }
         return count;
     }
+
+    /**
+     * Calls the consumer with the position of every set bit from min to max (all inclusive, from 0 to 15).
+     *
+     * Goes down the octree instead of checking every position, so empty 8x8x8, 4x4x4 and 2x2x2 cells (and cells
+     * outside the range) get skipped without looking at their blocks. Mostly empty sections cost almost nothing.
+     */
+    default void forEachSetBitInRange(int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                                      IntTernaryConsumer consumer) {
+        for (int levelThreeOffset = 0; levelThreeOffset < 8; levelThreeOffset++) {
+            final int levelThreeX = (levelThreeOffset & 1) << 3;
+            final int levelThreeY = (levelThreeOffset & 2) << 2;
+            final int levelThreeZ = (levelThreeOffset & 4) << 1;
+            final int levelThreeIndex = getOctreeLevelThreeIndex(levelThreeOffset);
+            if (!isCellInRange(levelThreeX, levelThreeY, levelThreeZ, 8, minX, minY, minZ, maxX, maxY, maxZ)
+                || !getAtIndex(levelThreeIndex)) {
+                continue;
+            }
+            for (int levelTwoOffset = 0; levelTwoOffset < 8; levelTwoOffset++) {
+                final int levelTwoX = levelThreeX | ((levelTwoOffset & 1) << 2);
+                final int levelTwoY = levelThreeY | ((levelTwoOffset & 2) << 1);
+                final int levelTwoZ = levelThreeZ | (levelTwoOffset & 4);
+                final int levelTwoIndex = getOctreeLevelTwoIndex(levelThreeIndex, levelTwoOffset);
+                if (!isCellInRange(levelTwoX, levelTwoY, levelTwoZ, 4, minX, minY, minZ, maxX, maxY, maxZ)
+                    || !getAtIndex(levelTwoIndex)) {
+                    continue;
+                }
+                for (int levelOneOffset = 0; levelOneOffset < 8; levelOneOffset++) {
+                    final int levelOneX = levelTwoX | ((levelOneOffset & 1) << 1);
+                    final int levelOneY = levelTwoY | (levelOneOffset & 2);
+                    final int levelOneZ = levelTwoZ | ((levelOneOffset & 4) >> 1);
+                    if (!isCellInRange(levelOneX, levelOneY, levelOneZ, 2, minX, minY, minZ, maxX, maxY, maxZ)
+                        || !getAtIndex(getOctreeLevelOneIndex(levelTwoIndex, levelOneOffset))) {
+                        continue;
+                    }
+                    for (int blockOffset = 0; blockOffset < 8; blockOffset++) {
+                        final int x = levelOneX | (blockOffset & 1);
+                        final int y = levelOneY | ((blockOffset & 2) >> 1);
+                        final int z = levelOneZ | ((blockOffset & 4) >> 2);
+                        if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ
+                            && get(x, y, z)) {
+                            consumer.accept(x, y, z);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the cube of the given size starting at cellX, cellY, cellZ overlaps the range.
+     */
+    static boolean isCellInRange(int cellX, int cellY, int cellZ, int cellSize, int minX, int minY, int minZ,
+                                 int maxX, int maxY, int maxZ) {
+        return cellX <= maxX && cellX + cellSize > minX && cellY <= maxY && cellY + cellSize > minY
+            && cellZ <= maxZ && cellZ + cellSize > minZ;
+    }
 }
\ No newline at end of file
@@ -5,4 +5,30 @@ public interface ITerrainOctreeProvider {
     IBitOctree getSolidOctree();
 
     IBitOctree getLiquidOctree();
+
+    /**
+     * @return A number that changes every time a block in this section becomes solid or stops being solid. Lets
+     * caches of the solid blocks tell when they're out of date.
+     */
+    int getSolidModificationCount();
+
+    /**
+     * @return The {@link org.valkyrienskies.mod.common.collision.FluidPropertiesRegistry} fluid type of the block at
+     * the given position in this section. Only meaningful where the liquid octree is set.
+     */
+    int getFluidType(int x, int y, int z);
+
+    /**
+     * @return The y, from 0 to 15, of the highest liquid block in the column at x, z of this section. -1 if the column
+     * has no liquid in this section.
+     */
+    default int getLiquidTop(int x, int z) {
+        final IBitOctree liquidOctree = getLiquidOctree();
+        for (int y = 15; y >= 0; y--) {
+            if (liquidOctree.get(x, y, z)) {
+                return y;
+            }
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,216 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+/**
+ * The solid and liquid octrees of a terrain section, packed into a single long[]. Each octree has the same layout as a
+ * {@link SimpleBitOctree}, the solid octree takes the first {@link IBitOctree#BITS_TOTAL} bits and the liquid octree
+ * the ones after it.
+ * <p>
+ * Sections that are all air, or all solid with no liquid, share an array that is never written to, and only get an
+ * array of their own once a block changes that. The {@link IBitOctree} views of the two octrees are only made the first
+ * time they're asked for, most terrain sections are never looked at by a ship.
+ */
+public class PackedTerrainOctrees {
+
+    private static final int SOLID_OFFSET = 0;
+    private static final int LIQUID_OFFSET = IBitOctree.BITS_TOTAL;
+    private static final int WORDS_TOTAL = (IBitOctree.BITS_TOTAL * 2 + 63) >> 6;
+    // Shared by every section with no solid or liquid blocks.
+    private static final long[] ALL_AIR = new long[WORDS_TOTAL];
+    // Shared by every section with only solid blocks. Every cell of the solid octree has a solid block, so every bit of
+    // the solid octree is set.
+    private static final long[] ALL_SOLID = new long[WORDS_TOTAL];
+
+    static {
+        for (int index = SOLID_OFFSET; index < SOLID_OFFSET + IBitOctree.BITS_TOTAL; index++) {
+            ALL_SOLID[index >> 6] |= 1L << index;
+        }
+    }
+
+    private long[] data;
+    private int solidCount, liquidCount;
+    private IBitOctree solidOctree, liquidOctree;
+
+    public PackedTerrainOctrees() {
+        this.data = ALL_AIR;
+        this.solidCount = 0;
+        this.liquidCount = 0;
+    }
+
+    /**
+     * Sets whether the block at x, y, z is solid, and whether it's liquid.
+     *
+     * @return True if whether the block is solid changed.
+     */
+    public boolean set(int x, int y, int z, boolean isSolid, boolean isLiquid) {
+        final boolean solidChanged = setInOctree(SOLID_OFFSET, x, y, z, isSolid);
+        final boolean liquidChanged = setInOctree(LIQUID_OFFSET, x, y, z, isLiquid);
+        if (solidChanged || liquidChanged) {
+            shareDataIfPossible();
+        }
+        return solidChanged;
+    }
+
+    public IBitOctree getSolidOctree() {
+        if (solidOctree == null) {
+            solidOctree = new Octree(SOLID_OFFSET);
+        }
+        return solidOctree;
+    }
+
+    public IBitOctree getLiquidOctree() {
+        if (liquidOctree == null) {
+            liquidOctree = new Octree(LIQUID_OFFSET);
+        }
+        return liquidOctree;
+    }
+
+    /**
+     * @return True if the block at x, y, z is liquid. Reads the bit directly, without making the liquid octree view.
+     */
+    public boolean isLiquid(int x, int y, int z) {
+        return getBit(LIQUID_OFFSET + (x | (y << 4) | (z << 8)));
+    }
+
+    /**
+     * @return True if this section uses one of the arrays shared by every all air or all solid section.
+     */
+    boolean isShared() {
+        return data == ALL_AIR || data == ALL_SOLID;
+    }
+
+    // Returns true if the bit changed
+    private boolean setInOctree(int offset, int x, int y, int z, boolean bit) {
+        final int index = offset + (x | (y << 4) | (z << 8));
+        if (getBit(index) == bit) {
+            return false;
+        }
+        if (isShared()) {
+            data = data.clone();
+        }
+        setBit(index, bit);
+        if (offset == SOLID_OFFSET) {
+            solidCount += bit ? 1 : -1;
+        } else {
+            liquidCount += bit ? 1 : -1;
+        }
+        updateOctrees(offset, x, y, z, bit);
+        return true;
+    }
+
+    private void shareDataIfPossible() {
+        if (liquidCount == 0) {
+            if (solidCount == 0) {
+                data = ALL_AIR;
+            } else if (solidCount == IBitOctree.BLOCKS_TOTAL) {
+                data = ALL_SOLID;
+            }
+        }
+    }
+
+    private void updateOctrees(int offset, int x, int y, int z, boolean bit) {
+        final int levelThreeIndex = offset + IBitOctree.BLOCKS_TOTAL
+            + 73 * (((x & 0x08) >> 3) | ((y & 0x08) >> 2) | ((z & 0x08) >> 1));
+        final int levelTwoIndex = levelThreeIndex + 1
+            + 9 * (((x & 0x04) >> 2) | ((y & 0x04) >> 1) | (z & 0x04));
+        final int levelOneIndex = levelTwoIndex + 1 + (((x & 0x02) >> 1) | (y & 0x02) | ((z & 0x02) << 1));
+        if (getBit(levelOneIndex) == bit) {
+            // Setting a block of a cell that already has one, or clearing a block of a cell that still has one
+            return;
+        }
+
+        // Only keep the last 4 bits; 0x0E = 1110, also removes the last bit
+        final int cellIndex = offset + ((x & 0x0E) | ((y & 0x0E) << 4) | ((z & 0x0E) << 8));
+        boolean isSet = false;
+        for (int blockOffset = 0; blockOffset < 8 && !isSet; blockOffset++) {
+            isSet = getBit(cellIndex + ((blockOffset & 1) | ((blockOffset & 2) << 3) | ((blockOffset & 4) << 6)));
+        }
+        if (!setBitIfChanged(levelOneIndex, isSet)) {
+            return;
+        }
+        isSet = false;
+        for (int levelOneOffset = 0; levelOneOffset < 8 && !isSet; levelOneOffset++) {
+            isSet = getBit(levelTwoIndex + 1 + levelOneOffset);
+        }
+        if (!setBitIfChanged(levelTwoIndex, isSet)) {
+            return;
+        }
+        isSet = false;
+        for (int levelTwoOffset = 0; levelTwoOffset < 8 && !isSet; levelTwoOffset++) {
+            isSet = getBit(levelThreeIndex + 1 + 9 * levelTwoOffset);
+        }
+        setBitIfChanged(levelThreeIndex, isSet);
+    }
+
+    // Returns true if the bit changed
+    private boolean setBitIfChanged(int index, boolean bit) {
+        if (getBit(index) == bit) {
+            return false;
+        }
+        setBit(index, bit);
+        return true;
+    }
+
+    private boolean getBit(int index) {
+        return (data[index >> 6] & (1L << index)) != 0;
+    }
+
+    private void setBit(int index, boolean bit) {
+        if (bit) {
+            data[index >> 6] |= 1L << index;
+        } else {
+            data[index >> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * One of the octrees, backed by the packed array.
+     */
+    private class Octree implements IBitOctree {
+
+        private final int offset;
+
+        Octree(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void set(int x, int y, int z, boolean bit) {
+            if (setInOctree(offset, x, y, z, bit)) {
+                shareDataIfPossible();
+            }
+        }
+
+        @Override
+        public boolean get(int x, int y, int z) {
+            return getBit(offset + (x | (y << 4) | (z << 8)));
+        }
+
+        @Override
+        public boolean getAtIndex(int index) {
+            if (index >= BITS_TOTAL) {
+                throw new IllegalArgumentException("Tried accessing an element out of bounds!");
+            }
+            return getBit(offset + index);
+        }
+
+        @Override
+        public int getSetBitCount() {
+            return offset == SOLID_OFFSET ? solidCount : liquidCount;
+        }
+
+        @Override
+        public int getOctreeLevelOneIndex(int levelTwoIndex, int offset) {
+            return levelTwoIndex + offset + 1;
+        }
+
+        @Override
+        public int getOctreeLevelTwoIndex(int levelThreeIndex, int offset) {
+            return levelThreeIndex + (9 * offset) + 1;
+        }
+
+        @Override
+        public int getOctreeLevelThreeIndex(int offset) {
+            return BLOCKS_TOTAL + (73 * offset);
+        }
+    }
+}
@@ -3,9 +3,12 @@ package org.valkyrienskies.mod.common.util.datastructures;
 public class SimpleBitOctree implements IBitOctree {
 
     private final IBitSet bitbuffer;
+    // The number of blocks set to true.
+    private int setBitCount;
 
     public SimpleBitOctree() {
         bitbuffer = new SmallBitSet(BITS_TOTAL);
+        setBitCount = 0;
     }
 
     @Override
@@ -14,6 +17,7 @@ public class SimpleBitOctree implements IBitOctree {
         ensureCapacity(index);
         if (bitbuffer.get(index) != bit) {
             bitbuffer.set(index, bit);
+            setBitCount += bit ? 1 : -1;
             updateOctrees(x, y, z, bit);
         }
     }
@@ -29,6 +33,11 @@ public class SimpleBitOctree implements IBitOctree {
         return bitbuffer.get(index);
     }
 
+    @Override
+    public int getSetBitCount() {
+        return setBitCount;
+    }
+
     @Override
     public int getOctreeLevelOneIndex(int levelTwoIndex, int offset) {
         return levelTwoIndex + offset + 1;
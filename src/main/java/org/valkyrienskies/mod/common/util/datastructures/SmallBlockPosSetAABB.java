@@ -130,6 +130,11 @@ public class SmallBlockPosSetAABB implements IBlockPosSetAABB {
         blockPosSet.forEach(action);
     }
 
+    @Override
+    public void forEachUnsafe(@Nonnull VSIterationUtils.IntTernaryConsumer action) {
+        blockPosSet.forEachUnsafe(action);
+    }
+
     public static class WrapperSmallBlockPosSetAABBSerializer extends StdSerializer<SmallBlockPosSetAABB> {
 
         public WrapperSmallBlockPosSetAABBSerializer() {
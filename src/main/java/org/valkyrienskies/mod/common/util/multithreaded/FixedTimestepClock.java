@@ -0,0 +1,88 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import lombok.Getter;
+
+/**
+ * Keeps track of the deadlines of a fixed timestep simulation. Instead of sleeping for "ideal tick time minus the time
+ * the last tick took", every tick has an absolute deadline. This way rounding errors never accumulate, and if the
+ * simulation falls behind (for example because of a garbage collection pause) then it knows exactly how many ticks it
+ * has to run to catch up.
+ * <p>
+ * Not thread safe, a clock should only be used by the thread running the simulation.
+ */
+public class FixedTimestepClock {
+
+    // Weight of the newest sample in the jitter moving average.
+    private static final double JITTER_SMOOTHING = .05;
+
+    // The deadline of the next tick, in System.nanoTime() units.
+    private long nextTickDeadline;
+    // Exponential moving average of how late every wakeup was relative to its deadline.
+    private double averageJitterNano;
+    @Getter
+    private long droppedTicks;
+
+    public FixedTimestepClock(long startTime) {
+        reset(startTime);
+    }
+
+    /**
+     * Forgets about all the missed deadlines, the next tick will be due at startTime.
+     */
+    public void reset(long startTime) {
+        this.nextTickDeadline = startTime;
+    }
+
+    /**
+     * Determines how many ticks should be run right now, and advances the deadline by that many ticks.
+     *
+     * @param currentTime  The current System.nanoTime()
+     * @param tickPeriod   The number of nanoseconds a tick lasts
+     * @param maxTicksToRun The maximum number of ticks to run at once. If more than this many ticks are due then the
+     *                      extra ticks are dropped, otherwise a slow server would never catch up.
+     * @return The number of ticks to run, between 0 and maxTicksToRun.
+     */
+    public int pollTicksDue(long currentTime, long tickPeriod, int maxTicksToRun) {
+        if (currentTime - nextTickDeadline < 0) {
+            return 0;
+        }
+        final long lateness = currentTime - nextTickDeadline;
+        final long ticksDue = lateness / tickPeriod + 1;
+        final int ticksToRun = (int) Math.min(ticksDue, maxTicksToRun);
+
+        // Lateness larger than a whole tick is a stall, not jitter, so clamp it.
+        averageJitterNano += (Math.min(lateness, tickPeriod) - averageJitterNano) * JITTER_SMOOTHING;
+
+        if (ticksDue > ticksToRun) {
+            droppedTicks += ticksDue - ticksToRun;
+        }
+        // Always advance by every tick that was due, even the dropped ones, so the next deadline is in the future.
+        nextTickDeadline += ticksDue * tickPeriod;
+        return ticksToRun;
+    }
+
+    /**
+     * Used when some of the ticks returned by {@link #pollTicksDue(long, long, int)} couldn't be run after all.
+     */
+    public void recordDroppedTicks(long ticks) {
+        droppedTicks += ticks;
+    }
+
+    /**
+     * @return The number of nanoseconds from currentTime until the next tick is due, or 0 if it is already due.
+     */
+    public long getNanosUntilNextTick(long currentTime) {
+        return Math.max(0, nextTickDeadline - currentTime);
+    }
+
+    public long getNextTickDeadline() {
+        return nextTickDeadline;
+    }
+
+    /**
+     * @return The average number of nanoseconds that recent wakeups happened after their deadline.
+     */
+    public long getAverageJitterNano() {
+        return (long) averageJitterNano;
+    }
+}
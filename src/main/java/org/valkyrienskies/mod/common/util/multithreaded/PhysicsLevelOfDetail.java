@@ -0,0 +1,69 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import lombok.Getter;
+import org.valkyrienskies.mod.common.config.VSConfig;
+
+/**
+ * Decides how often the physics of a single ship runs. Ships that are far away from every player, or that have been
+ * resting for a while, only run every few physics ticks of their world. When they do run they simulate all the time
+ * they skipped, so they don't fall behind the rest of the world.
+ * <p>
+ * Ships with the same rate don't all run in the same physics tick, every ship gets a phase so that the work is spread
+ * out evenly between the ticks.
+ * <p>
+ * Not thread safe, only used by the physics thread.
+ */
+public class PhysicsLevelOfDetail {
+
+    private final int phase;
+    // This ship runs once every rateDivisor physics ticks of its world.
+    @Getter
+    private int rateDivisor;
+    // The world physics ticks since this ship last ran.
+    private int pendingTicks;
+    // The result of the last update().
+    @Getter
+    private int ticksToSimulate;
+    // The number of consecutive world physics ticks this ship has been below the resting speeds.
+    private int slowTicks;
+
+    public PhysicsLevelOfDetail(int phase) {
+        this.phase = phase;
+        this.rateDivisor = 1;
+        this.pendingTicks = 0;
+        this.slowTicks = 0;
+        this.ticksToSimulate = 0;
+    }
+
+    /**
+     * Called every physics tick of the world.
+     *
+     * @param worldTick The number of physics ticks the world has run so far
+     * @param promote   True if something happened that must be simulated at full rate, such as a new contact, pilot
+     *                  input or a block change
+     * @param distant   True if no player is near the ship
+     * @param slow      True if the ship is moving slower than the resting speeds
+     * @return The number of world physics ticks the ship has to simulate right now, or 0 if it skips this tick.
+     */
+    public int update(long worldTick, boolean promote, boolean distant, boolean slow,
+                      VSConfig.PhysicsLodSettings settings) {
+        slowTicks = slow && !promote ? slowTicks + 1 : 0;
+        if (promote || !settings.enabled) {
+            rateDivisor = 1;
+        } else {
+            final boolean resting = slowTicks >= settings.restingDwellTicks;
+            rateDivisor = (distant ? settings.distantTickRateDivisor : 1)
+                * (resting ? settings.restingTickRateDivisor : 1);
+        }
+
+        pendingTicks++;
+        // The second check catches ships that just got demoted, and already waited longer than their phase says.
+        if (Math.floorMod(worldTick + phase, rateDivisor) == 0 || pendingTicks >= rateDivisor) {
+            ticksToSimulate = pendingTicks;
+            pendingTicks = 0;
+        } else {
+            ticksToSimulate = 0;
+        }
+        return ticksToSimulate;
+    }
+}
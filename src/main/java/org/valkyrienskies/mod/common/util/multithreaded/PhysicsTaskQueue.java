@@ -0,0 +1,93 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The tasks waiting to run on the physics thread of a world. Any thread can add tasks, but only the physics thread
+ * runs them.
+ * <p>
+ * The queue has a fixed capacity. Once it is full new tasks are refused instead of piling up, so the caller finds out
+ * that the physics thread can't keep up.
+ * <p>
+ * Tasks run in batches: a batch only has the tasks that were queued when it started, so tasks added while a batch is
+ * running wait for the next physics tick. Together with the deadline this keeps the time spent on tasks in one tick
+ * bounded.
+ */
+@Log4j2
+public class PhysicsTaskQueue {
+
+    private final int capacity;
+    private final Queue<Runnable> queue;
+    // The number of tasks in the queue. ConcurrentLinkedQueue.size() isn't constant time, so we count ourselves.
+    private final AtomicInteger queueSize;
+
+    public PhysicsTaskQueue(int capacity) {
+        this.capacity = capacity;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queueSize = new AtomicInteger();
+    }
+
+    /**
+     * Adds a task to the queue. Safe to call from any thread.
+     *
+     * @return False if the queue is full, in which case the task was not added.
+     */
+    public boolean offer(Runnable task) {
+        // Reserve a spot first, so that concurrent offers can never go over the capacity.
+        if (queueSize.incrementAndGet() > capacity) {
+            queueSize.decrementAndGet();
+            return false;
+        }
+        queue.add(task);
+        return true;
+    }
+
+    /**
+     * Runs the tasks that are queued right now, oldest first. Only the physics thread may call this.
+     *
+     * @param deadlineNano Once System.nanoTime() passes this no more tasks are started, the rest stay queued for the
+     *                     next call. At least one task always runs, so the queue always makes progress.
+     * @return The number of tasks that ran.
+     */
+    public int runBatch(long deadlineNano) {
+        // Tasks queued after this point belong to the next batch.
+        final int batchSize = queueSize.get();
+        int tasksRun = 0;
+        while (tasksRun < batchSize) {
+            if (tasksRun > 0 && System.nanoTime() - deadlineNano > 0) {
+                break;
+            }
+            final Runnable task = queue.poll();
+            if (task == null) {
+                // The producer reserved its spot but hasn't added the task yet.
+                break;
+            }
+            queueSize.decrementAndGet();
+            tasksRun++;
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Error in a physics task", e);
+            }
+        }
+        return tasksRun;
+    }
+
+    /**
+     * @return True if no tasks are waiting to run.
+     */
+    public boolean isEmpty() {
+        return queueSize.get() == 0;
+    }
+
+    /**
+     * @return The number of tasks waiting to run.
+     */
+    public int size() {
+        return queueSize.get();
+    }
+}
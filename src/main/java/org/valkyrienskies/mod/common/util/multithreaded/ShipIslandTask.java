@@ -0,0 +1,159 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import lombok.extern.log4j.Log4j2;
+import org.valkyrienskies.mod.common.collision.IWaterForcesTask;
+import org.valkyrienskies.mod.common.collision.ShipCollisionTask;
+import org.valkyrienskies.mod.common.collision.ShipPairCollisionTask;
+import org.valkyrienskies.mod.common.collision.WorldPhysicsCollider;
+import org.valkyrienskies.mod.common.config.VSConfig;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the whole physics tick (pre collision, collision and water forces, contact resolution, post collision) for a
+ * group of ships that can only affect each other. Because islands never touch each other's ships, every island can
+ * run on its own thread of the physics thread pool.
+ * <p>
+ * Within an island everything happens in a fixed order: ships in the order they were given, and collision/water
+ * results in the order their tasks were created. So the result of a tick doesn't depend on which thread finished
+ * first.
+ */
+@Log4j2
+class ShipIslandTask extends RecursiveAction {
+
+    private final List<PhysicsObject> ships;
+    private final List<ShipPairCollisionTask> shipPairTasks;
+    private final double timeStep;
+    private final int substeps;
+    private final LongAdder collisionTaskCounter;
+
+    /**
+     * @param shipPairTasks The collisions between the ships of this island.
+     * @param substeps      The number of times to tick the ships, every time by timeStep seconds. This is more than 1
+     *                      for ships that skipped physics ticks because of their {@link PhysicsLevelOfDetail}.
+     */
+    ShipIslandTask(List<PhysicsObject> ships, List<ShipPairCollisionTask> shipPairTasks, double timeStep, int substeps,
+                   LongAdder collisionTaskCounter) {
+        this.ships = ships;
+        this.shipPairTasks = shipPairTasks;
+        this.timeStep = timeStep;
+        this.substeps = substeps;
+        this.collisionTaskCounter = collisionTaskCounter;
+    }
+
+    @Override
+    protected void compute() {
+        for (int i = 0; i < substeps; i++) {
+            // Fast ships split the step further, so they don't tunnel through thin walls.
+            int adaptiveSubsteps = 1;
+            for (PhysicsObject ship : ships) {
+                final int shipSubsteps = ship.getPhysicsCalculations().getAdaptiveSubsteps(timeStep);
+                adaptiveSubsteps = Math.max(adaptiveSubsteps, shipSubsteps);
+            }
+            for (int j = 0; j < adaptiveSubsteps; j++) {
+                tickShips(timeStep / adaptiveSubsteps);
+            }
+        }
+    }
+
+    private void tickShips(double substepTime) {
+        final List<ShipCollisionTask> collisionTasks = new ArrayList<>(ships.size());
+        final List<IWaterForcesTask> waterForcesTasks = new ArrayList<>();
+        for (PhysicsObject ship : ships) {
+            // Update the physics simulation
+            try {
+                ship.getPhysicsCalculations().rawPhysTickPreCol(substepTime);
+                // Do water collision and buoyancy
+                ship.getPhysicsCalculations().getWorldWaterCollider().tickUpdatingTheCollisionCache();
+                // Add water forces tasks to be processed in parallel
+                waterForcesTasks.addAll(ship.getPhysicsCalculations().getWorldWaterCollider().generateWaterForceTasks());
+                // Update the collision task if necessary
+                final WorldPhysicsCollider worldCollision = ship.getPhysicsCalculations().getWorldCollision();
+                worldCollision.tickUpdatingTheCollisionCache();
+                // Take the big collision and split into tasks sized by their measured cost
+                final ShipCollisionTask collisionTask = worldCollision.prepareCollisionTask();
+                if (collisionTask != null) {
+                    collisionTasks.add(collisionTask);
+                    collisionTaskCounter.add(worldCollision.getCollisionTaskCount());
+                }
+            } catch (Exception e) {
+                log.error("Error in the pre collision tick of ship " + ship.getUuid(), e);
+            }
+        }
+
+        final List<ForkJoinTask<?>> allTasks = new ArrayList<>(collisionTasks.size() + waterForcesTasks.size());
+        allTasks.addAll(collisionTasks);
+        waterForcesTasks.forEach(task -> allTasks.add(ForkJoinTask.adapt(task)));
+
+        try {
+            // Run all the block collision and water physics tasks
+            ForkJoinTask.invokeAll(allTasks);
+        } catch (Exception e) {
+            log.error("Error in a collision task", e);
+        }
+
+        // Handle the results of water force tasks
+        for (final IWaterForcesTask waterForcesTask : waterForcesTasks) {
+            waterForcesTask.addForcesToShip();
+        }
+
+        final List<ShipCollisionTask> touchingTasks = new ArrayList<>(collisionTasks.size());
+        for (ShipCollisionTask task : collisionTasks) {
+            task.getToTask().processCollisionTask(task);
+            if (task.getToTask().getContactCount() > 0) {
+                touchingTasks.add(task);
+            }
+        }
+
+        // Resolve the contacts in parallel, every iteration against the velocities left by the previous one. Only
+        // summing up the velocity changes happens in this thread, in a fixed order.
+        for (int i = 0; i < VSConfig.CONTACT_SOLVER_SETTINGS.iterations && !touchingTasks.isEmpty(); i++) {
+            for (ShipCollisionTask task : touchingTasks) {
+                task.prepareContactResolution();
+            }
+            try {
+                ForkJoinTask.invokeAll(touchingTasks);
+            } catch (Exception e) {
+                log.error("Error in a contact resolution task", e);
+                break;
+            }
+            for (ShipCollisionTask task : touchingTasks) {
+                task.getToTask().applyContactVelocityChanges(task);
+            }
+        }
+
+        // Then the collisions between the ships, the same way. Every pair finds its contacts in the first iteration.
+        for (ShipPairCollisionTask task : shipPairTasks) {
+            task.prepare();
+        }
+        for (int i = 0; i < VSConfig.CONTACT_SOLVER_SETTINGS.iterations && !shipPairTasks.isEmpty(); i++) {
+            if (i > 0) {
+                for (ShipPairCollisionTask task : shipPairTasks) {
+                    task.prepareIteration();
+                }
+            }
+            try {
+                ForkJoinTask.invokeAll(shipPairTasks);
+            } catch (Exception e) {
+                log.error("Error in a ship collision task", e);
+                break;
+            }
+            for (ShipPairCollisionTask task : shipPairTasks) {
+                task.applyVelocityChanges();
+            }
+        }
+
+        for (PhysicsObject ship : ships) {
+            try {
+                ship.getPhysicsCalculations().rawPhysTickPostCol();
+            } catch (Exception e) {
+                log.error("Error in the post collision tick of ship " + ship.getUuid(), e);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.valkyrienskies.mod.common.util.multithreaded;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import net.minecraft.world.WorldServer;
 import net.minecraftforge.fml.client.FMLClientHandler;
 import net.minecraftforge.fml.server.FMLServerHandler;
@@ -14,11 +15,18 @@ public class VSExecutors {
     public static final Executor CLIENT = FMLClientHandler.instance().getClient()::addScheduledTask;
 
     /**
-     * Returns an executor to execute tasks on the physics thread of the selected world
+     * Returns an executor to execute tasks on the physics thread of the selected world. If the physics thread has too
+     * many tasks queued already, the executor throws a {@link RejectedExecutionException}.
      */
     public static Executor physics(WorldServer world) {
-        return ((WorldServerShipManager) ((IHasShipManager) world).getManager())
-            .getPhysicsLoop()::addScheduledTask;
+        final VSWorldPhysicsLoop physicsLoop =
+            ((WorldServerShipManager) ((IHasShipManager) world).getManager()).getPhysicsLoop();
+        return runnable -> {
+            if (!physicsLoop.addScheduledTask(runnable)) {
+                throw new RejectedExecutionException("The physics task queue of " + physicsLoop.getName()
+                    + " is full");
+            }
+        };
     }
 
     /**
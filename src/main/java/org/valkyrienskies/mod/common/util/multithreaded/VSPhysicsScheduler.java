@@ -0,0 +1,63 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import lombok.extern.log4j.Log4j2;
+import org.valkyrienskies.mod.common.config.VSConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+
+/**
+ * Runs the {@link VSWorldPhysicsLoop} of every world on a fixed number of worker threads, instead of giving every
+ * world its own thread. Loops are kept in a {@link DelayQueue} ordered by the deadline of their next tick, so the
+ * workers always run whichever world is due first. Worlds without ships aren't in the queue at all.
+ */
+@Log4j2
+public class VSPhysicsScheduler {
+
+    private final DelayQueue<VSWorldPhysicsLoop> dueLoops;
+    private final List<Thread> workers;
+    private volatile boolean running;
+
+    public VSPhysicsScheduler(int workerCount) {
+        this.dueLoops = new DelayQueue<>();
+        this.workers = new ArrayList<>(workerCount);
+        this.running = true;
+        for (int i = 0; i < workerCount; i++) {
+            final Thread worker = new Thread(this::runWorker, "VS Physics Scheduler " + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    void schedule(VSWorldPhysicsLoop loop) {
+        dueLoops.add(loop);
+    }
+
+    void unschedule(VSWorldPhysicsLoop loop) {
+        dueLoops.remove(loop);
+    }
+
+    private void runWorker() {
+        while (running) {
+            final VSWorldPhysicsLoop loop;
+            try {
+                loop = dueLoops.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            final long tickBudgetNano = (long) (VSConfig.physicsTickBudgetPerWorld * 1_000_000L);
+            loop.runScheduledTicks(tickBudgetNano);
+        }
+        log.trace(Thread.currentThread().getName() + " stopped");
+    }
+
+    /**
+     * Stops all the worker threads. Loops that are still scheduled will never run again.
+     */
+    public void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+}
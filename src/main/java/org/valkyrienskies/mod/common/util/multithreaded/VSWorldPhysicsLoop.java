@@ -1,6 +1,7 @@
 package org.valkyrienskies.mod.common.util.multithreaded;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.minecraft.client.Minecraft;
@@ -10,51 +11,118 @@ import net.minecraft.world.World;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 import org.valkyrienskies.mod.common.ValkyrienSkiesMod;
-import org.valkyrienskies.mod.common.collision.ShipCollisionTask;
-import org.valkyrienskies.mod.common.collision.WaterForcesTask;
+import org.valkyrienskies.mod.common.collision.ShipPairCollisionTask;
+import org.valkyrienskies.mod.common.collision.ShipSweepAndPrune;
+import org.valkyrienskies.mod.common.collision.TerrainCollisionIndex;
 import org.valkyrienskies.mod.common.config.VSConfig;
 import org.valkyrienskies.mod.common.network.ShipTransformUpdateMessage;
+import org.valkyrienskies.mod.common.physics.PhysicsCalculations;
 import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import org.valkyrienskies.mod.common.ships.ship_world.GameTickSnapshot;
 import org.valkyrienskies.mod.common.ships.ship_world.IHasShipManager;
 import org.valkyrienskies.mod.common.ships.ship_world.PhysicsObject;
+import org.valkyrienskies.mod.common.ships.ship_world.PhysicsTickResults;
+import org.valkyrienskies.mod.common.ships.ship_world.WorldServerShipManager;
 
+import javax.annotation.Nonnull;
 import java.util.*;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Handles the physics for a given world. This is run on a separate thread, not on the game tick.
+ * Handles the physics for a given world. This isn't run on the game tick, instead the {@link VSPhysicsScheduler} runs
+ * the physics ticks of every world on its own worker threads.
  */
 @Log4j2
-public class VSWorldPhysicsLoop implements Runnable {
+public class VSWorldPhysicsLoop implements Delayed {
 
     // The number of physics ticks to be considered in the average tick time.
     private final static long TICK_TIME_QUEUE = 100;
+    // Weight of the newest sample in the task statistics moving averages.
+    private final static double TASK_STATS_SMOOTHING = .05;
+    // Ships closer than this many blocks (plus the distance they can move in a tick) are checked for collisions.
+    private final static double SHIP_BROADPHASE_MARGIN = 1;
     // Used to give each VS thread a unique name
     private static int worldPhysicsLoopId = 0;
     private final World hostWorld;
+    private final VSPhysicsScheduler scheduler;
     private final Queue<Long> latestPhysicsTickTimes;
+
+    private final PhysicsTaskQueue taskQueue;
     // The ships we will be ticking physics for every tick, and sending those
     // updates to players.
-    // Used by the game thread to mark this thread for death.
-    private volatile boolean threadRunning;
-
-    private final Queue<Runnable> taskQueue;
     private ImmutableList<PhysicsObject> immutableShipsList;
+    // The ships from immutableShipsList that need physics, and the ones of those that run their physics this tick.
+    // Both are reused between ticks.
+    private final List<PhysicsObject> physicsActiveShips;
+    private final List<PhysicsObject> physicsSteppingShips;
+    // Finds the ships whose bounding boxes touch, reused between ticks. broadphaseShips are the ships added to it, in
+    // order, and touchingShipPairs holds the ships that touch two by two.
+    private final ShipSweepAndPrune shipBroadphase;
+    private final List<PhysicsObject> broadphaseShips;
+    private final List<PhysicsObject> touchingShipPairs;
+    // The collision tasks of the ship pairs that touched last tick by their first ship, reused while the pair keeps
+    // touching. Only used by the physics thread.
+    private final Map<PhysicsCalculations, List<ShipPairCollisionTask>> cachedShipPairTasks;
+    private final Set<ShipPairCollisionTask> usedShipPairTasks;
+    // The solid blocks of the world sections near ships, shared by the collision caches of all the ships.
+    @Getter
+    private final TerrainCollisionIndex terrainCollisionIndex;
+    // The number of physics ticks this loop has run, used to spread out the ships with a reduced tick rate.
+    private long physicsTickCount;
     private final ConcurrentLinkedQueue<IPhysTimeTask> recurringTasks;
+    // The results of the latest physics tick, replaced (never modified) after every physics tick.
+    private volatile PhysicsTickResults physicsTickResults;
+    // Average number of nanoseconds the physics ticks start after their deadline.
+    private volatile long tickJitterNano;
+    // Counts the leaf collision tasks of the current physics tick.
+    private final LongAdder collisionTaskCounter;
+    // The steal count of the physics thread pool at the end of the previous physics tick.
+    private long lastPoolStealCount;
+    // Moving averages of the number of leaf collision tasks, and of physics thread pool steals, per physics tick.
+    private volatile double averageCollisionTasksPerTick;
+    private volatile double averageStealsPerTick;
+
+    // Only used by the scheduler worker running this loop, or by wakeUp() while the loop is IDLE.
+    private final FixedTimestepClock clock;
+    private long lastTickStartTime;
+    // Guarded by this.
+    private LoopState state;
+    // Set if wakeUp() is called while this loop is running, guarded by this.
+    private boolean wakeUpRequested;
 
     @Getter
     private final String name;
 
-    public VSWorldPhysicsLoop(World host) {
+    public VSWorldPhysicsLoop(World host, VSPhysicsScheduler scheduler) {
         name = "VS World Physics Task " + worldPhysicsLoopId;
         worldPhysicsLoopId++;
         this.hostWorld = host;
-        this.threadRunning = true;
+        this.scheduler = scheduler;
         this.latestPhysicsTickTimes = new ConcurrentLinkedQueue<>();
-        this.taskQueue = new ConcurrentLinkedQueue<>();
+        this.taskQueue = new PhysicsTaskQueue(VSConfig.MULTITHREADING_SETTINGS.physicsTaskQueueCapacity);
         this.immutableShipsList = ImmutableList.of();
+        this.physicsActiveShips = new ArrayList<>();
+        this.physicsSteppingShips = new ArrayList<>();
+        this.shipBroadphase = new ShipSweepAndPrune();
+        this.broadphaseShips = new ArrayList<>();
+        this.touchingShipPairs = new ArrayList<>();
+        this.cachedShipPairTasks = new IdentityHashMap<>();
+        this.usedShipPairTasks = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.terrainCollisionIndex = new TerrainCollisionIndex();
+        this.physicsTickCount = 0;
         this.recurringTasks = new ConcurrentLinkedQueue<>();
+        this.physicsTickResults = PhysicsTickResults.EMPTY;
+        this.collisionTaskCounter = new LongAdder();
+        this.lastPoolStealCount = 0;
+        this.clock = new FixedTimestepClock(System.nanoTime());
+        this.lastTickStartTime = System.nanoTime();
+        this.state = LoopState.IDLE;
+        this.wakeUpRequested = false;
         log.trace(name + " created.");
     }
 
@@ -63,96 +131,233 @@ public class VSWorldPhysicsLoop implements Runnable {
         return Minecraft.getMinecraft().isGamePaused();
     }
 
-    public void addScheduledTask(Runnable r) {
-        taskQueue.add(r);
+    /**
+     * Queues a task to run once at the start of the next physics tick, after the recurring tasks. Safe to call from
+     * any thread.
+     *
+     * @return False if the physics thread has too many tasks queued already, in which case the task won't run.
+     */
+    public boolean addScheduledTask(Runnable r) {
+        if (!taskQueue.offer(r)) {
+            return false;
+        }
+        // Make sure the task runs even if this loop is idle.
+        wakeUp();
+        return true;
     }
 
     private static long getNsPerTick() {
         return (long) (1_000_000_000 / VSConfig.targetTps);
     }
 
+    /**
+     * Adds a task that runs at the start of every physics tick, before the queued tasks. Recurring tasks don't count
+     * towards the time budget of the queued tasks.
+     */
     public void addRecurringTask(IPhysTimeTask physTask) {
         recurringTasks.add(physTask);
     }
-    /*
-     * (non-Javadoc)
+
+    /**
+     * Lets the scheduler know this world has ships that need physics. Idle loops don't use any CPU until this is
+     * called. Cheap to call when the loop is already awake, so the game thread just calls this every tick.
+     */
+    public synchronized void wakeUp() {
+        switch (state) {
+            case IDLE:
+                // Don't try to catch up on the time we spent idle.
+                final long currentTime = System.nanoTime();
+                clock.reset(currentTime);
+                lastTickStartTime = currentTime;
+                state = LoopState.QUEUED;
+                scheduler.schedule(this);
+                break;
+            case RUNNING:
+                wakeUpRequested = true;
+                break;
+            default:
+                // Already queued, or dead.
+                break;
+        }
+    }
+
+    /**
+     * Called by a {@link VSPhysicsScheduler} worker once the next tick of this loop is due. Runs every tick that is
+     * due, then either puts this loop back into the scheduler or lets it go idle.
      *
-     * @see java.lang.Thread#run()
+     * @param tickBudgetNano After this many nanoseconds, the remaining due ticks are dropped so that one busy world
+     *                       doesn't starve the others.
      */
-    @Override
-    public void run() {
-        while (threadRunning) {
-            final MinecraftServer mcServer = hostWorld.getMinecraftServer();
-            assert mcServer != null;
-            // If server then always tick physics, if single-player then only tick when not paused.
-            final boolean tickPhysics = mcServer.isServerRunning() && (mcServer.isDedicatedServer() || !isSinglePlayerPaused());
-
-            if (tickPhysics) {
-                // The number of seconds the physics engine will move forward
-                final double timeToSimulate = VSConfig.getTimeSimulatedPerTick();
-                // The number of nanoseconds we want our physics engine tick to take
-                final long idealTickTime = (long) (1E9 / VSConfig.targetTps);
-
-                final long physTickStartTime = System.nanoTime();
-                // Run the physics engine tick
-                physicsTick(timeToSimulate);
-                final long physTickEndTime = System.nanoTime();
-                final long physTickDuration = physTickEndTime - physTickStartTime;
-
-                // If the physics tick ran faster than the ideal tick time, then pretend it took the ideal tick time by
-                // waiting.
-                if (physTickDuration < idealTickTime) {
-                    final long sleepMillis = (idealTickTime - physTickDuration) / 1_000_000L;
-                    try {
-                        Thread.sleep(sleepMillis);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
+    void runScheduledTicks(long tickBudgetNano) {
+        synchronized (this) {
+            if (state != LoopState.QUEUED) {
+                return;
+            }
+            state = LoopState.RUNNING;
+        }
 
-                // Keep track of the time it took to run the physics tick, including the time we spent sleeping.
-                final long physTickDurationIncludingSleep = System.nanoTime() - physTickStartTime;
-                latestPhysicsTickTimes.add(physTickDurationIncludingSleep);
-                // Ensure that latestPhysicsTickTimes only has TICK_TIME_QUEUE # of elements
-                if (latestPhysicsTickTimes.size() > TICK_TIME_QUEUE) {
-                    latestPhysicsTickTimes.remove();
-                }
+        boolean reschedule;
+        try {
+            reschedule = runDueTicks(tickBudgetNano);
+        } catch (Exception e) {
+            log.error("Error in " + name, e);
+            reschedule = true;
+        }
+
+        synchronized (this) {
+            if (state != LoopState.RUNNING) {
+                // We got killed while running.
+                return;
+            }
+            if (reschedule || wakeUpRequested) {
+                state = LoopState.QUEUED;
+                scheduler.schedule(this);
             } else {
-                // If physics are disabled then sleep for 100 ms.
-                // If we don't sleep then we waste a ton of CPU just being in this while(true) loop.
-                try {
-                    Thread.sleep(100L);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+                state = LoopState.IDLE;
             }
+            wakeUpRequested = false;
         }
-        // If we get to this point of run(), then we are about to return and this thread
-        // will terminate soon.
-        log.trace(name + " killed");
     }
 
-    private long lastPacketSendTime = 0;
+    /**
+     * @return False if there's nothing for this loop to do, and it should go idle until {@link #wakeUp()}.
+     */
+    private boolean runDueTicks(long tickBudgetNano) {
+        final MinecraftServer mcServer = hostWorld.getMinecraftServer();
+        assert mcServer != null;
+        // If server then always tick physics, if single-player then only tick when not paused.
+        final boolean tickPhysics = mcServer.isServerRunning() && (mcServer.isDedicatedServer() || !isSinglePlayerPaused());
+
+        if (!tickPhysics) {
+            // Go idle, the game thread wakes us up again once it's unpaused.
+            return false;
+        }
 
-    private void physicsTick(double delta) {
-        // Update the immutable ship list.
-        immutableShipsList = ((IHasShipManager) hostWorld).getManager().getAllLoadedThreadSafe();
+        // The number of seconds the physics engine will move forward
+        final double timeToSimulate = VSConfig.getTimeSimulatedPerTick();
+        // The number of nanoseconds we want our physics engine tick to take
+        final long idealTickTime = getNsPerTick();
+
+        // Run every tick that is due, up to maxPhysicsSubstepsPerWakeup of them if we fell behind.
+        final long wakeupTime = System.nanoTime();
+        final int ticksDue = clock.pollTicksDue(wakeupTime, idealTickTime, VSConfig.maxPhysicsSubstepsPerWakeup);
+        for (int i = 0; i < ticksDue; i++) {
+            final long physTickStartTime = System.nanoTime();
+            if (i > 0 && physTickStartTime - wakeupTime > tickBudgetNano) {
+                // Out of time, give the other worlds a turn.
+                clock.recordDroppedTicks(ticksDue - i);
+                break;
+            }
+            // Run the physics engine tick
+            if (!physicsTick(timeToSimulate)) {
+                // None of the ships need physics, so go idle until one does. Unless there are tasks left over that
+                // didn't fit in the task budget of this tick.
+                tickJitterNano = clock.getAverageJitterNano();
+                return !taskQueue.isEmpty();
+            }
+
+            // Keep track of the time between the starts of consecutive physics ticks. The average of these is
+            // the real tick rate, including time spent parked and any jitter in waking up.
+            latestPhysicsTickTimes.add(physTickStartTime - lastTickStartTime);
+            lastTickStartTime = physTickStartTime;
+            // Ensure that latestPhysicsTickTimes only has TICK_TIME_QUEUE # of elements
+            if (latestPhysicsTickTimes.size() > TICK_TIME_QUEUE) {
+                latestPhysicsTickTimes.remove();
+            }
+        }
+        tickJitterNano = clock.getAverageJitterNano();
+        return true;
+    }
+
+    @Override
+    public long getDelay(@Nonnull TimeUnit unit) {
+        return unit.convert(clock.getNextTickDeadline() - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
 
-        // Run tasks queued to run on physics thread
-        recurringTasks.forEach(t -> t.runTask(delta));
-        taskQueue.forEach(Runnable::run);
-        taskQueue.clear();
+    @Override
+    public int compareTo(@Nonnull Delayed other) {
+        if (other instanceof VSWorldPhysicsLoop) {
+            return Long.compare(clock.getNextTickDeadline(), ((VSWorldPhysicsLoop) other).clock.getNextTickDeadline());
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    private long lastPacketSendTime = 0;
 
-        // Make a sublist of physics objects to process physics on.
-        List<PhysicsObject> physicsEntitiesToDoPhysics = new ArrayList<>();
+    /**
+     * @return False if none of the ships needed physics, in which case nothing was simulated or sent.
+     */
+    private boolean physicsTick(double delta) {
+        // Get the latest state of the ships from the game thread.
+        final GameTickSnapshot gameTickSnapshot =
+            ((WorldServerShipManager) ((IHasShipManager) hostWorld).getManager()).getGameTickSnapshot();
+        final ImmutableList<PhysicsObject> previousShipsList = immutableShipsList;
+        immutableShipsList = gameTickSnapshot.getLoadedShips();
+        if (previousShipsList != immutableShipsList) {
+            releaseUnloadedShips(previousShipsList);
+        }
+
+        // Recurring tasks expect to run every tick, so they ignore the budget.
+        for (IPhysTimeTask recurringTask : recurringTasks) {
+            try {
+                recurringTask.runTask(delta);
+            } catch (Exception e) {
+                log.error("Error in a recurring physics task", e);
+            }
+        }
+        // Then the tasks queued to run on physics thread. Whatever doesn't fit in the budget waits for the next tick.
+        taskQueue.runBatch(System.nanoTime()
+            + (long) (VSConfig.MULTITHREADING_SETTINGS.physicsTaskBudgetMicros * 1000));
+
+        // Make a sublist of physics objects to process physics on. Sleeping ships don't run at all, and distant and
+        // resting ships don't run every tick.
+        physicsActiveShips.clear();
+        final List<PhysicsObject> physicsEntitiesToDoPhysics = physicsSteppingShips;
+        physicsEntitiesToDoPhysics.clear();
         for (PhysicsObject physicsObject : immutableShipsList) {
-            if (physicsObject.isPhysicsReady() && physicsObject.isPhysicsEnabled() && physicsObject.getCachedSurroundingChunks() != null) {
+            final GameTickSnapshot.ShipInput shipInput = gameTickSnapshot.getShipInput(physicsObject);
+            if (shipInput != null && shipInput.isPhysicsActive() && physicsObject.getCachedSurroundingChunks() != null) {
+                physicsActiveShips.add(physicsObject);
+                physicsObject.getPhysicsCalculations().readTickInput(shipInput);
+            } else if (shipInput != null && !shipInput.isPhysicsActive()) {
+                physicsObject.getPhysicsCalculations().getWorldCollision().invalidateShipBlockIndex();
+                physicsObject.getPhysicsCalculations().getWorldCollision().releaseCollisionCache();
+            }
+        }
+        // This can wake ships up, so it has to run before we decide which ships run this tick.
+        findTouchingShips(delta);
+        for (PhysicsObject physicsObject : physicsActiveShips) {
+            final PhysicsCalculations physicsCalculations = physicsObject.getPhysicsCalculations();
+            if (physicsCalculations.isSleeping()) {
+                continue;
+            }
+            final GameTickSnapshot.ShipInput shipInput = gameTickSnapshot.getShipInput(physicsObject);
+            final int ticksToSimulate = physicsCalculations.getLevelOfDetail().update(physicsTickCount,
+                physicsCalculations.needsFullTickRate(), !shipInput.isNearPlayer(),
+                physicsCalculations.isBelowRestingSpeed(), VSConfig.PHYSICS_LOD_SETTINGS);
+            if (ticksToSimulate > 0) {
                 physicsEntitiesToDoPhysics.add(physicsObject);
             }
         }
+        physicsTickCount++;
+
+        if (physicsActiveShips.isEmpty()) {
+            // Nothing moved, so there's nothing to send either.
+            return false;
+        }
 
         // Finally, actually process the physics tick
-        tickThePhysicsAndCollision(physicsEntitiesToDoPhysics, delta);
+        if (!physicsEntitiesToDoPhysics.isEmpty()) {
+            tickThePhysicsAndCollision(physicsEntitiesToDoPhysics, delta);
+        }
+
+        // And give the results to the game thread. This includes the ships that skipped this tick, otherwise the game
+        // thread could miss their last step.
+        final ImmutableMap.Builder<UUID, PhysicsTickResults.ShipResult> shipResults = ImmutableMap.builder();
+        for (PhysicsObject physicsObject : physicsActiveShips) {
+            shipResults.put(physicsObject.getUuid(), physicsObject.getPhysicsCalculations().createTickResult());
+        }
+        physicsTickResults = new PhysicsTickResults(shipResults.build());
 
         // Send ship position update packets around 20 times a second
         final long currentTimeMillis = System.currentTimeMillis();
@@ -181,76 +386,226 @@ public class VSWorldPhysicsLoop implements Runnable {
                 e.printStackTrace();
             }
         }
+        return true;
     }
 
     /**
-     * Ticks physics and collision for the List of PhysicsWrapperEntity passed in.
+     * Lets go of the world sections held by the collision caches of the ships that were loaded last tick, but aren't
+     * anymore, so the terrain collision index doesn't keep them forever.
+     */
+    private void releaseUnloadedShips(List<PhysicsObject> previousShipsList) {
+        if (previousShipsList.isEmpty()) {
+            return;
+        }
+        final Set<PhysicsObject> loadedShips = new HashSet<>(immutableShipsList);
+        for (PhysicsObject physicsObject : previousShipsList) {
+            if (!loadedShips.contains(physicsObject)) {
+                physicsObject.getPhysicsCalculations().getWorldCollision().releaseCollisionCache();
+            }
+        }
+    }
+
+    /**
+     * Finds the pairs of physics active ships whose bounding boxes touch, with a sweep and prune over their physics
+     * bounding boxes. A moving ship wakes up the sleeping ships it comes near, but ships resting next to each other
+     * stay asleep.
+     */
+    private void findTouchingShips(double timeStep) {
+        shipBroadphase.clear();
+        broadphaseShips.clear();
+        touchingShipPairs.clear();
+        for (PhysicsObject ship : physicsActiveShips) {
+            final PhysicsCalculations physicsCalculations = ship.getPhysicsCalculations();
+            physicsCalculations.setTouchingShip(false);
+            if (!VSConfig.CONTACT_SOLVER_SETTINGS.shipCollisions) {
+                continue;
+            }
+            final AxisAlignedBB shipBB = ship.getPhysicsTransformAABB();
+            if (shipBB == null) {
+                continue;
+            }
+            final double margin = SHIP_BROADPHASE_MARGIN + physicsCalculations.getMaxPointSpeed() * timeStep;
+            shipBroadphase.add(shipBB.minX - margin, shipBB.minY - margin, shipBB.minZ - margin,
+                shipBB.maxX + margin, shipBB.maxY + margin, shipBB.maxZ + margin);
+            broadphaseShips.add(ship);
+        }
+        shipBroadphase.forEachOverlappingPair(this::addTouchingShips);
+    }
+
+    private void addTouchingShips(int firstIndex, int secondIndex) {
+        final PhysicsObject first = broadphaseShips.get(firstIndex);
+        final PhysicsObject second = broadphaseShips.get(secondIndex);
+        final PhysicsCalculations firstCalculations = first.getPhysicsCalculations();
+        final PhysicsCalculations secondCalculations = second.getPhysicsCalculations();
+        if (firstCalculations.isSleeping() || secondCalculations.isSleeping()) {
+            final PhysicsCalculations awake = firstCalculations.isSleeping() ? secondCalculations : firstCalculations;
+            if (awake.isSleeping() || awake.isBelowRestingSpeed()) {
+                return;
+            }
+            firstCalculations.wakeUp();
+            secondCalculations.wakeUp();
+        }
+        // Ships resting against each other still collide, but don't have to run at the full tick rate. That would
+        // keep stacked or docked ships from ever dropping their level of detail.
+        if (!firstCalculations.isBelowRestingSpeed() || !secondCalculations.isBelowRestingSpeed()) {
+            firstCalculations.setTouchingShip(true);
+            secondCalculations.setTouchingShip(true);
+        }
+        touchingShipPairs.add(first);
+        touchingShipPairs.add(second);
+    }
+
+    /**
+     * Ticks physics and collision for the List of PhysicsWrapperEntity passed in. Every ship simulates the number of
+     * ticks its {@link PhysicsLevelOfDetail} asked for.
      */
     private void tickThePhysicsAndCollision(List<PhysicsObject> shipsWithPhysics, double timeStep) {
-        final List<ShipCollisionTask> collisionTasks = new ArrayList<>(
-            shipsWithPhysics.size() * 2);
-        final List<WaterForcesTask> waterForcesTasks = new ArrayList<>();
-        for (PhysicsObject wrapper : shipsWithPhysics) {
-            // Update the physics simulation
-            try {
-                wrapper.getPhysicsCalculations().rawPhysTickPreCol(timeStep);
-                // Do water collision and buoyancy
-                wrapper.getPhysicsCalculations().getWorldWaterCollider().tickUpdatingTheCollisionCache();
-                // Add water forces tasks to be processed in parallel
-                waterForcesTasks.addAll(wrapper.getPhysicsCalculations().getWorldWaterCollider().generateWaterForceTasks());
-                // Update the collision task if necessary
-                wrapper.getPhysicsCalculations().getWorldCollision()
-                        .tickUpdatingTheCollisionCache();
-                // Take the big collision and split into tiny ones
-                wrapper.getPhysicsCalculations().getWorldCollision()
-                        .splitIntoCollisionTasks(collisionTasks);
-            } catch (Exception e) {
-                e.printStackTrace();
+        final Map<PhysicsObject, Integer> shipIndices = new IdentityHashMap<>(shipsWithPhysics.size());
+        final int[] islandParents = new int[shipsWithPhysics.size()];
+        for (int i = 0; i < shipsWithPhysics.size(); i++) {
+            shipIndices.put(shipsWithPhysics.get(i), i);
+            islandParents[i] = i;
+        }
+        // Ships that might touch each other have to be ticked together, so they share an island. Touching ships run
+        // at the full tick rate, so they only simulate a different number of ticks on the tick one of them got
+        // promoted. They skip colliding with each other for that one tick.
+        final List<ShipPairCollisionTask> shipPairTasks = new ArrayList<>();
+        final List<Integer> shipPairIslandShips = new ArrayList<>();
+        usedShipPairTasks.clear();
+        for (int i = 0; i < touchingShipPairs.size(); i += 2) {
+            final Integer first = shipIndices.get(touchingShipPairs.get(i));
+            final Integer second = shipIndices.get(touchingShipPairs.get(i + 1));
+            if (first == null || second == null
+                || getTicksToSimulate(shipsWithPhysics.get(first)) != getTicksToSimulate(shipsWithPhysics.get(second))) {
+                continue;
+            }
+            final ShipPairCollisionTask shipPairTask =
+                getShipPairTask(shipsWithPhysics.get(first), shipsWithPhysics.get(second));
+            shipPairTasks.add(shipPairTask);
+            usedShipPairTasks.add(shipPairTask);
+            shipPairIslandShips.add(first);
+            islandParents[findIsland(islandParents, first)] = findIsland(islandParents, second);
+        }
+        // Forget the pairs that stopped touching.
+        for (Iterator<List<ShipPairCollisionTask>> iterator = cachedShipPairTasks.values().iterator();
+             iterator.hasNext(); ) {
+            final List<ShipPairCollisionTask> cachedTasks = iterator.next();
+            cachedTasks.removeIf(task -> !usedShipPairTasks.contains(task));
+            if (cachedTasks.isEmpty()) {
+                iterator.remove();
             }
         }
 
-        final List<Callable<Void>> allTasks = new ArrayList<>();
-        allTasks.addAll(collisionTasks);
-        allTasks.addAll(waterForcesTasks);
+        final boolean parallelShipIslands = VSConfig.MULTITHREADING_SETTINGS.parallelShipIslands;
+        // In parallel every group of ships that might touch each other is an island. Otherwise every ship is ticked
+        // one after the other, only the collision and water tasks run in parallel, and ships that simulate the same
+        // number of ticks share an island.
+        final SortedMap<Integer, List<PhysicsObject>> islandShips = new TreeMap<>();
+        final Map<Integer, List<ShipPairCollisionTask>> islandShipPairTasks = new HashMap<>();
+        for (int i = 0; i < shipsWithPhysics.size(); i++) {
+            final PhysicsObject ship = shipsWithPhysics.get(i);
+            final int island = parallelShipIslands ? findIsland(islandParents, i) : getTicksToSimulate(ship);
+            islandShips.computeIfAbsent(island, k -> new ArrayList<>()).add(ship);
+        }
+        for (int i = 0; i < shipPairTasks.size(); i++) {
+            final int ship = shipPairIslandShips.get(i);
+            final int island = parallelShipIslands ? findIsland(islandParents, ship)
+                : getTicksToSimulate(shipsWithPhysics.get(ship));
+            islandShipPairTasks.computeIfAbsent(island, k -> new ArrayList<>()).add(shipPairTasks.get(i));
+        }
+        final List<ShipIslandTask> islands = new ArrayList<>(islandShips.size());
+        islandShips.forEach((island, ships) -> islands.add(createIsland(ships,
+            islandShipPairTasks.getOrDefault(island, Collections.emptyList()),
+            getTicksToSimulate(ships.get(0)), timeStep)));
 
+        final ForkJoinPool physicsThreadPool = ValkyrienSkiesMod.getPhysicsThreadPool();
         try {
-            // Run all the block collision and water physics tasks
-            ValkyrienSkiesMod.getPhysicsThreadPool().invokeAll(allTasks);
+            physicsThreadPool.invoke(ForkJoinTask.adapt(() -> {
+                if (parallelShipIslands) {
+                    ForkJoinTask.invokeAll(islands);
+                } else {
+                    islands.forEach(ForkJoinTask::invoke);
+                }
+            }));
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Error while ticking the ship islands of " + name, e);
         }
 
-        // Handle the results of water force tasks
-        for (final WaterForcesTask waterForcesTask : waterForcesTasks) {
-            waterForcesTask.addForcesToShip();
-        }
+        // The pool is shared by every world, so steals caused by other worlds get counted here as well.
+        final long poolStealCount = physicsThreadPool.getStealCount();
+        final long stealsThisTick = poolStealCount - lastPoolStealCount;
+        lastPoolStealCount = poolStealCount;
+        averageCollisionTasksPerTick +=
+            (collisionTaskCounter.sumThenReset() - averageCollisionTasksPerTick) * TASK_STATS_SMOOTHING;
+        averageStealsPerTick += (stealsThisTick - averageStealsPerTick) * TASK_STATS_SMOOTHING;
+    }
 
-        // Then those collision points have to be processed sequentially afterwards, all in
-        // this thread. Thankfully this step is not cpu intensive.
-        for (ShipCollisionTask task : collisionTasks) {
-            task.getToTask().processCollisionTask(task);
+    private static int getTicksToSimulate(PhysicsObject ship) {
+        return ship.getPhysicsCalculations().getLevelOfDetail().getTicksToSimulate();
+    }
+
+    /**
+     * @return The ship at the root of the island tree of the given ship.
+     */
+    private static int findIsland(int[] islandParents, int ship) {
+        while (islandParents[ship] != ship) {
+            // Path halving, keeps the trees flat.
+            islandParents[ship] = islandParents[islandParents[ship]];
+            ship = islandParents[ship];
         }
+        return ship;
+    }
 
-        for (PhysicsObject wrapper : shipsWithPhysics) {
-            try {
-                wrapper.getPhysicsCalculations().rawPhysTickPostCol();
-            } catch (Exception e) {
-                e.printStackTrace();
+    /**
+     * @return The collision task of the given ships, the one from last tick if they touched then as well. The ship
+     * with fewer blocks goes first, because the blocks of the first ship are the ones looked up in the other.
+     */
+    private ShipPairCollisionTask getShipPairTask(PhysicsObject shipA, PhysicsObject shipB) {
+        final boolean aFirst = shipA.getBlockPositions().size() <= shipB.getBlockPositions().size();
+        final PhysicsCalculations first = (aFirst ? shipA : shipB).getPhysicsCalculations();
+        final PhysicsCalculations second = (aFirst ? shipB : shipA).getPhysicsCalculations();
+        final List<ShipPairCollisionTask> cachedTasks =
+            cachedShipPairTasks.computeIfAbsent(first, k -> new ArrayList<>(1));
+        // A ship touches only a few others, so a linear search is fine.
+        for (ShipPairCollisionTask task : cachedTasks) {
+            if (task.getSecond() == second) {
+                return task;
             }
         }
+        final ShipPairCollisionTask task = new ShipPairCollisionTask(first, second);
+        cachedTasks.add(task);
+        return task;
+    }
+
+    /**
+     * Creates an island that simulates the given number of ticks, in substeps of at most
+     * {@link VSConfig.PhysicsLodSettings#maxTicksPerSubstep} ticks.
+     *
+     * @param shipPairTasks The collisions between the ships of the island.
+     */
+    private ShipIslandTask createIsland(List<PhysicsObject> ships, List<ShipPairCollisionTask> shipPairTasks,
+                                        int ticksToSimulate, double timeStep) {
+        final int maxTicksPerSubstep = VSConfig.PHYSICS_LOD_SETTINGS.maxTicksPerSubstep;
+        final int substeps = (ticksToSimulate + maxTicksPerSubstep - 1) / maxTicksPerSubstep;
+        return new ShipIslandTask(ships, shipPairTasks, timeStep * ticksToSimulate / substeps, substeps,
+            collisionTaskCounter);
     }
 
     /**
-     * Marks this physics thread for death. Doesn't immediately end the thread, but instead ensures
-     * the thread will die after the current running physics tick is finished.
+     * Removes this loop from the scheduler. If a physics tick is currently running it will finish, but no more ticks
+     * will run after it.
      */
-    public void kill() {
+    public synchronized void kill() {
         log.trace(name + " marked for death.");
-        threadRunning = false;
+        if (state == LoopState.QUEUED) {
+            scheduler.unschedule(this);
+        }
+        state = LoopState.DEAD;
     }
 
     /**
-     * @return The average runtime of the last 100 physics ticks in nanoseconds.
+     * @return The average time between the starts of the last 100 physics ticks in nanoseconds. This is the measured
+     * tick period, so any jitter or lag shows up here.
      */
     public long getAveragePhysicsTickTimeNano() {
         if (latestPhysicsTickTimes.size() >= TICK_TIME_QUEUE) {
@@ -264,4 +619,43 @@ public class VSWorldPhysicsLoop implements Runnable {
         // tick time.
         return getNsPerTick();
     }
+
+    /**
+     * @return The average number of nanoseconds the physics ticks started after their scheduled deadline.
+     */
+    public long getPhysicsTickJitterNano() {
+        return tickJitterNano;
+    }
+
+    /**
+     * @return The results of the latest physics tick. Safe to call from any thread.
+     */
+    public PhysicsTickResults getPhysicsTickResults() {
+        return physicsTickResults;
+    }
+
+    /**
+     * @return The average number of leaf collision tasks per physics tick.
+     */
+    public double getAverageCollisionTasksPerTick() {
+        return averageCollisionTasksPerTick;
+    }
+
+    /**
+     * @return The average number of tasks stolen between physics threads per physics tick.
+     */
+    public double getAverageStealsPerTick() {
+        return averageStealsPerTick;
+    }
+
+    private enum LoopState {
+        // Waiting for wakeUp(), not in the scheduler.
+        IDLE,
+        // In the scheduler, waiting for its next tick to be due.
+        QUEUED,
+        // A scheduler worker is running the physics ticks of this loop.
+        RUNNING,
+        // Killed, will never run again.
+        DEAD
+    }
 }
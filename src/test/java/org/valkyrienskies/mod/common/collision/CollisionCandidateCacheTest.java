@@ -0,0 +1,180 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntByteHashMap;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class CollisionCandidateCacheTest {
+
+    @Test
+    public void testMovingBoxMatchesFullScan() {
+        Random random = new Random(42);
+        TestWorld world = new TestWorld();
+        for (int i = 0; i < 20000; i++) {
+            world.setSolid(random.nextInt(96) - 48, random.nextInt(48), random.nextInt(96) - 48, true);
+        }
+
+        CollisionCandidateCache cache = new CollisionCandidateCache();
+        int x = -20, y = 10, z = -20;
+        for (int step = 0; step < 200; step++) {
+            x += random.nextInt(5) - 2;
+            y += random.nextInt(3) - 1;
+            z += random.nextInt(5) - 2;
+            // Change some blocks, some of them in the box
+            for (int i = 0; i < 5; i++) {
+                world.setSolid(x + random.nextInt(20) - 5, y + random.nextInt(12) - 3, z + random.nextInt(20) - 5,
+                    random.nextBoolean());
+            }
+            cache.update(world, x, y, z, x + 9, y + 5, z + 9);
+            assertThat(getCandidates(cache), equalTo(getExposedBlocks(world, cache, x, y, z, x + 9, y + 5, z + 9)));
+        }
+    }
+
+    @Test
+    public void testCachesSharingAnIndexMatchFullScans() {
+        Random random = new Random(7);
+        TestWorld world = new TestWorld();
+        for (int i = 0; i < 20000; i++) {
+            world.setSolid(random.nextInt(96) - 48, random.nextInt(48), random.nextInt(96) - 48, true);
+        }
+
+        TerrainCollisionIndex index = new TerrainCollisionIndex();
+        CollisionCandidateCache first = new CollisionCandidateCache(index);
+        CollisionCandidateCache second = new CollisionCandidateCache(index);
+        int x = -20, y = 10, z = -20;
+        for (int step = 0; step < 100; step++) {
+            x += random.nextInt(5) - 2;
+            y += random.nextInt(3) - 1;
+            z += random.nextInt(5) - 2;
+            for (int i = 0; i < 5; i++) {
+                world.setSolid(x + random.nextInt(20) - 5, y + random.nextInt(12) - 3, z + random.nextInt(20) - 5,
+                    random.nextBoolean());
+            }
+            // The second box overlaps the first one, on the sections the first cache scanned already
+            first.update(world, x, y, z, x + 9, y + 5, z + 9);
+            second.update(world, x + 7, y, z + 3, x + 16, y + 5, z + 12);
+            assertThat(getCandidates(first), equalTo(getExposedBlocks(world, first, x, y, z, x + 9, y + 5, z + 9)));
+            assertThat(getCandidates(second),
+                equalTo(getExposedBlocks(world, second, x + 7, y, z + 3, x + 16, y + 5, z + 12)));
+        }
+
+        first.clear();
+        assertThat(index.size(), greaterThan(0));
+        second.clear();
+        assertThat(index.size(), equalTo(0));
+    }
+
+    @Test
+    public void testSmallMoveOnlyScansTheNewSlab() {
+        TestWorld world = new TestWorld();
+        // Make sure all the sections exist, the cache doesn't scan empty ones
+        for (int x = 0; x < 48; x += 16) {
+            for (int y = 0; y < 32; y += 16) {
+                for (int z = 0; z < 32; z += 16) {
+                    world.setSolid(x, y, z, true);
+                    world.setSolid(x, y, z, false);
+                }
+            }
+        }
+        world.setSolid(3, 3, 3, true);
+        CollisionCandidateCache cache = new CollisionCandidateCache();
+        cache.update(world, 0, 0, 0, 31, 31, 31);
+        assertThat(cache.getBlocksScanned(), equalTo(32 * 32 * 32));
+
+        cache.update(world, 1, 0, 0, 32, 31, 31);
+        assertThat(cache.getBlocksScanned(), equalTo(32 * 32));
+
+        // Nothing moved and nothing changed
+        cache.update(world, 1, 0, 0, 32, 31, 31);
+        assertThat(cache.getBlocksScanned(), equalTo(0));
+
+        // Only the changed section, and the blocks right next to it, get scanned again
+        world.setSolid(4, 4, 4, true);
+        cache.update(world, 1, 0, 0, 32, 31, 31);
+        assertThat(cache.getBlocksScanned(), lessThan(18 * 18 * 18 + 1));
+        assertThat(cache.size(), equalTo(2));
+    }
+
+    @Test
+    public void testFarMoveRecenters() {
+        TestWorld world = new TestWorld();
+        world.setSolid(1000, 5, 1000, true);
+        CollisionCandidateCache cache = new CollisionCandidateCache();
+        cache.update(world, 0, 0, 0, 10, 10, 10);
+        assertThat(cache.size(), equalTo(0));
+        for (int x = 0; x <= 995; x++) {
+            cache.update(world, x, 0, x, x + 10, 10, x + 10);
+        }
+        assertThat(getCandidates(cache), equalTo(getExposedBlocks(world, cache, 995, 0, 995, 1005, 10, 1005)));
+        assertThat(cache.size(), equalTo(1));
+    }
+
+    @Test
+    public void testInteriorBlocksAreNotCandidates() {
+        TestWorld world = new TestWorld();
+        // A 3x3x3 cube that crosses a section border, the middle block is completely covered.
+        for (int x = 14; x <= 16; x++) {
+            for (int y = 14; y <= 16; y++) {
+                for (int z = 14; z <= 16; z++) {
+                    world.setSolid(x, y, z, true);
+                }
+            }
+        }
+        CollisionCandidateCache cache = new CollisionCandidateCache();
+        cache.update(world, 10, 10, 10, 20, 20, 20);
+        assertThat(cache.size(), equalTo(26));
+
+        // Uncovering the middle block from the next section over makes it a candidate.
+        world.setSolid(16, 15, 15, false);
+        cache.update(world, 10, 10, 10, 20, 20, 20);
+        assertThat(getCandidates(cache), equalTo(getExposedBlocks(world, cache, 10, 10, 10, 20, 20, 20)));
+        TIntByteHashMap candidates = getCandidates(cache);
+        assertThat((int) candidates.get(SpatialDetector.getHashWithRespectTo(15, 15, 15, cache.getCenter())),
+            equalTo(CollisionCandidateCache.EXPOSED_X_UP));
+    }
+
+    private static TIntByteHashMap getCandidates(CollisionCandidateCache cache) {
+        TIntArrayList hashes = new TIntArrayList();
+        TByteArrayList exposedFaces = new TByteArrayList();
+        cache.copyCandidatesTo(hashes, exposedFaces);
+        TIntByteHashMap candidates = new TIntByteHashMap();
+        for (int i = 0; i < hashes.size(); i++) {
+            candidates.put(hashes.get(i), exposedFaces.get(i));
+        }
+        return candidates;
+    }
+
+    private static TIntByteHashMap getExposedBlocks(TestWorld world, CollisionCandidateCache cache, int minX, int minY,
+                                                    int minZ, int maxX, int maxY, int maxZ) {
+        TIntByteHashMap exposedBlocks = new TIntByteHashMap();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = Math.max(minY, 0); y <= Math.min(maxY, 255); y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    if (!world.isSolid(x, y, z)) {
+                        continue;
+                    }
+                    int exposedFaces = (world.isSolid(x + 1, y, z) ? 0 : CollisionCandidateCache.EXPOSED_X_UP)
+                        | (world.isSolid(x - 1, y, z) ? 0 : CollisionCandidateCache.EXPOSED_X_DOWN)
+                        | (world.isSolid(x, y + 1, z) ? 0 : CollisionCandidateCache.EXPOSED_Y_UP)
+                        | (world.isSolid(x, y - 1, z) ? 0 : CollisionCandidateCache.EXPOSED_Y_DOWN)
+                        | (world.isSolid(x, y, z + 1) ? 0 : CollisionCandidateCache.EXPOSED_Z_UP)
+                        | (world.isSolid(x, y, z - 1) ? 0 : CollisionCandidateCache.EXPOSED_Z_DOWN);
+                    if (exposedFaces != 0) {
+                        exposedBlocks.put(SpatialDetector.getHashWithRespectTo(x, y, z, cache.getCenter()),
+                            (byte) exposedFaces);
+                    }
+                }
+            }
+        }
+        return exposedBlocks;
+    }
+}
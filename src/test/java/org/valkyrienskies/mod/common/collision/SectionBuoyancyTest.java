@@ -0,0 +1,146 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SectionBuoyancyTest {
+
+    // The ship section is at blocks 1600 to 1615, 64 to 79 and 1600 to 1615 of ship space
+    private static final Vector3d SHIP_CENTER = new Vector3d(1608, 72, 1608);
+
+    @Test
+    public void testWetSectionDisplacesAllOfItsBlocks() {
+        TestWorld world = new TestWorld();
+        world.fillLiquid(-32, 0, -32, 31, 63, 31);
+        SectionBuoyancy.ShipSection section = createShipSection();
+
+        SectionBuoyancy buoyancy = new SectionBuoyancy();
+        ShipTransform transform = new ShipTransform(0, 30, 0, new Quaterniond().rotateY(.3), SHIP_CENTER);
+        buoyancy.compute(section, transform, world);
+
+        assertThat(buoyancy.getSubmergedVolume(), closeTo(64, 1e-9));
+        assertThat(buoyancy.getBlocksSampled(), equalTo(0));
+        // The center of the cube of blocks
+        Vector3d expectedCenter = transform.transformPositionNew(new Vector3d(1604, 68, 1604),
+            TransformType.SUBSPACE_TO_GLOBAL);
+        Vector3d center = buoyancy.getSubmergedCenter(new Vector3d());
+        assertThat(center.distance(expectedCenter), closeTo(0, 1e-9));
+    }
+
+    @Test
+    public void testDrySectionDisplacesNothing() {
+        TestWorld world = new TestWorld();
+        world.fillLiquid(-32, 0, -32, 31, 63, 31);
+        SectionBuoyancy buoyancy = new SectionBuoyancy();
+        buoyancy.compute(createShipSection(),
+            new ShipTransform(0, 100, 0, new Quaterniond().rotateY(.3), SHIP_CENTER), world);
+
+        assertThat(buoyancy.getSubmergedVolume(), equalTo(0D));
+        assertThat(buoyancy.getBlocksSampled(), equalTo(0));
+    }
+
+    @Test
+    public void testWaterlineSectionMatchesBlockByBlock() {
+        TestWorld world = new TestWorld();
+        // The water surface is at y = 41
+        world.fillLiquid(-32, 0, -32, 31, 40, 31);
+        SectionBuoyancy.ShipSection section = createShipSection();
+
+        SectionBuoyancy buoyancy = new SectionBuoyancy();
+        ShipTransform transform = new ShipTransform(.3, 46.7, -.7, new Quaterniond().rotateZ(.4).rotateX(.2),
+            SHIP_CENTER);
+        buoyancy.compute(section, transform, world);
+
+        // Every block is an upright cube at its center, integrate the part of it under the surface
+        double expectedVolume = 0, expectedMomentY = 0;
+        for (int x = 1602; x < 1606; x++) {
+            for (int y = 66; y < 70; y++) {
+                for (int z = 1602; z < 1606; z++) {
+                    Vector3d blockCenter = transform.transformPositionNew(new Vector3d(x + .5, y + .5, z + .5),
+                        TransformType.SUBSPACE_TO_GLOBAL);
+                    double submerged = Math.max(0, Math.min(1, 41 - (blockCenter.y - .5)));
+                    expectedVolume += submerged;
+                    expectedMomentY += submerged * (blockCenter.y - .5 + submerged * .5);
+                }
+            }
+        }
+        assertThat(buoyancy.getBlocksSampled(), equalTo(64));
+        assertThat(buoyancy.getSubmergedVolume(), closeTo(expectedVolume, 1e-9));
+        assertThat(buoyancy.getSubmergedCenter(new Vector3d()).y, closeTo(expectedMomentY / expectedVolume, 1e-9));
+    }
+
+    @Test
+    public void testEditedSectionUpdatesItsCenter() {
+        TestWorld world = new TestWorld();
+        world.fillLiquid(-32, 0, -32, 31, 63, 31);
+        TestWorld.TestSection shipSection = new TestWorld.TestSection();
+        shipSection.solidOctree.set(0, 0, 0, true);
+        SectionBuoyancy.ShipSection section = new SectionBuoyancy.ShipSection(100, 4, 100, shipSection);
+        SectionBuoyancy buoyancy = new SectionBuoyancy();
+        ShipTransform transform = new ShipTransform(0, 30, 0, new Quaterniond(), SHIP_CENTER);
+
+        buoyancy.compute(section, transform, world);
+        assertThat(buoyancy.getSubmergedVolume(), closeTo(1, 1e-9));
+
+        shipSection.solidOctree.set(2, 0, 0, true);
+        shipSection.solidModificationCount++;
+        buoyancy.compute(section, transform, world);
+        assertThat(buoyancy.getSubmergedVolume(), closeTo(2, 1e-9));
+        // Between the two blocks, at x = 1601.5 in ship space
+        assertThat(buoyancy.getSubmergedCenter(new Vector3d()).x, closeTo(1601.5 - 1608, 1e-9));
+    }
+
+    @Test
+    public void testWetSectionUsesTheFluidItIsIn() {
+        TestWorld world = new TestWorld();
+        world.fillLiquid(-32, 0, -32, 31, 63, 31, 2);
+        SectionBuoyancy buoyancy = new SectionBuoyancy();
+        buoyancy.compute(createShipSection(), new ShipTransform(0, 30, 0, new Quaterniond(), SHIP_CENTER), world);
+
+        assertThat(buoyancy.getBlocksSampled(), equalTo(0));
+        assertThat(buoyancy.getSubmergedFluidCount(), equalTo(1));
+        assertThat(buoyancy.getSubmergedFluidType(0), equalTo(2));
+        assertThat(buoyancy.getSubmergedVolume(2), closeTo(64, 1e-9));
+    }
+
+    @Test
+    public void testSectionInTwoFluidsIsSplitByFluid() {
+        TestWorld world = new TestWorld();
+        // Water below x = 0 and fluid type 2 from x = 0 on
+        world.fillLiquid(-32, 0, -32, -1, 63, 31);
+        world.fillLiquid(0, 0, -32, 31, 63, 31, 2);
+        SectionBuoyancy buoyancy = new SectionBuoyancy();
+        // The cube of blocks is from x = -2 to 2 in global space
+        buoyancy.compute(createShipSection(), new ShipTransform(4, 30, 0, new Quaterniond(), SHIP_CENTER), world);
+
+        assertThat(buoyancy.getBlocksSampled(), equalTo(64));
+        assertThat(buoyancy.getSubmergedFluidCount(), equalTo(2));
+        assertThat(buoyancy.getSubmergedVolume(), closeTo(64, 1e-9));
+        assertThat(buoyancy.getSubmergedVolume(0), closeTo(32, 1e-9));
+        assertThat(buoyancy.getSubmergedVolume(2), closeTo(32, 1e-9));
+        assertThat(buoyancy.getSubmergedCenter(0, new Vector3d()).x, closeTo(-1, 1e-9));
+        assertThat(buoyancy.getSubmergedCenter(2, new Vector3d()).x, closeTo(1, 1e-9));
+    }
+
+    /**
+     * @return A ship section at section 100, 4, 100 with a 4x4x4 cube of solid blocks from 2 to 5.
+     */
+    private static SectionBuoyancy.ShipSection createShipSection() {
+        TestWorld.TestSection shipSection = new TestWorld.TestSection();
+        for (int x = 2; x < 6; x++) {
+            for (int y = 2; y < 6; y++) {
+                for (int z = 2; z < 6; z++) {
+                    shipSection.solidOctree.set(x, y, z, true);
+                }
+            }
+        }
+        return new SectionBuoyancy.ShipSection(100, 4, 100, shipSection);
+    }
+}
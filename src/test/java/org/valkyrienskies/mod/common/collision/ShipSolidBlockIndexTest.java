@@ -0,0 +1,96 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ShipSolidBlockIndexTest {
+
+    @Test
+    public void testRangeQueryMatchesSet() {
+        Random random = new Random(3);
+        ShipSolidBlockIndex index = new ShipSolidBlockIndex();
+        Set<String> solidBlocks = new HashSet<>();
+        // Ship chunk claims are far from the origin
+        int offsetX = -1_000_000, offsetZ = 2_000_000;
+        for (int i = 0; i < 5000; i++) {
+            int x = offsetX + random.nextInt(40), y = random.nextInt(40), z = offsetZ + random.nextInt(40);
+            boolean solid = random.nextInt(3) != 0;
+            index.set(x, y, z, solid);
+            if (solid) {
+                solidBlocks.add(x + "," + y + "," + z);
+            } else {
+                solidBlocks.remove(x + "," + y + "," + z);
+            }
+        }
+        assertThat(index.size(), equalTo(solidBlocks.size()));
+
+        for (int i = 0; i < 500; i++) {
+            int midX = offsetX + random.nextInt(42) - 1, midY = random.nextInt(42) - 1;
+            int midZ = offsetZ + random.nextInt(42) - 1;
+            Set<String> expected = new HashSet<>();
+            for (int x = midX - 1; x <= midX + 1; x++) {
+                for (int y = midY - 1; y <= midY + 1; y++) {
+                    for (int z = midZ - 1; z <= midZ + 1; z++) {
+                        if (solidBlocks.contains(x + "," + y + "," + z)) {
+                            expected.add(x + "," + y + "," + z);
+                            assertThat(index.isSolid(x, y, z), equalTo(true));
+                        }
+                    }
+                }
+            }
+            Set<String> found = new HashSet<>();
+            index.forEachSolidBlockInRange(midX - 1, midY - 1, midZ - 1, midX + 1, midY + 1, midZ + 1,
+                (x, y, z) -> found.add(x + "," + y + "," + z));
+            assertThat(found, equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testExposedBlocksMatchNeighbours() {
+        Random random = new Random(7);
+        ShipSolidBlockIndex index = new ShipSolidBlockIndex();
+        int offsetX = -1_000_000, offsetZ = 2_000_000;
+        for (int i = 0; i < 8000; i++) {
+            index.set(offsetX + random.nextInt(20), random.nextInt(20), offsetZ + random.nextInt(20), true);
+        }
+        for (int sideX = -1; sideX <= 1; sideX++) {
+            for (int sideY = -1; sideY <= 1; sideY++) {
+                for (int sideZ = -1; sideZ <= 1; sideZ++) {
+                    Set<String> expected = new HashSet<>();
+                    final int finalSideX = sideX, finalSideY = sideY, finalSideZ = sideZ;
+                    index.forEachSolidBlockInRange(offsetX - 1, -1, offsetZ - 1, offsetX + 21, 21, offsetZ + 21,
+                        (x, y, z) -> {
+                            if ((finalSideX != 0 && !index.isSolid(x + finalSideX, y, z))
+                                || (finalSideY != 0 && !index.isSolid(x, y + finalSideY, z))
+                                || (finalSideZ != 0 && !index.isSolid(x, y, z + finalSideZ))) {
+                                expected.add(x + "," + y + "," + z);
+                            }
+                        });
+                    Set<String> found = new HashSet<>();
+                    index.forEachExposedBlock(sideX, sideY, sideZ, (x, y, z) -> found.add(x + "," + y + "," + z));
+                    assertThat(found, equalTo(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRemovingEverythingEmptiesIndex() {
+        ShipSolidBlockIndex index = new ShipSolidBlockIndex();
+        index.set(1, 2, 3, true);
+        index.set(1, 2, 3, true);
+        index.set(-5, 0, -7, true);
+        assertThat(index.size(), equalTo(2));
+        index.set(1, 2, 3, false);
+        index.set(-5, 0, -7, false);
+        index.set(-5, 0, -7, false);
+        assertThat(index.size(), equalTo(0));
+        assertThat(index.isSolid(1, 2, 3), equalTo(false));
+    }
+}
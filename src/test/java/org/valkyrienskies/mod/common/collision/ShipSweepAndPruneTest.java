@@ -0,0 +1,80 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ShipSweepAndPruneTest {
+
+    @Test
+    public void testPairsMatchBruteForce() {
+        Random random = new Random(5);
+        ShipSweepAndPrune sweepAndPrune = new ShipSweepAndPrune();
+        double[][] boxes = new double[100][6];
+        for (double[] box : boxes) {
+            randomBox(random, box);
+        }
+        // The boxes move a little every tick, like ships do.
+        for (int tick = 0; tick < 20; tick++) {
+            sweepAndPrune.clear();
+            for (double[] box : boxes) {
+                sweepAndPrune.add(box[0], box[1], box[2], box[3], box[4], box[5]);
+            }
+            Set<String> expected = new HashSet<>();
+            for (int i = 0; i < boxes.length; i++) {
+                for (int j = i + 1; j < boxes.length; j++) {
+                    if (overlaps(boxes[i], boxes[j])) {
+                        expected.add(i + "," + j);
+                    }
+                }
+            }
+            Set<String> found = new HashSet<>();
+            sweepAndPrune.forEachOverlappingPair((first, second) -> assertThat(found.add(first + "," + second),
+                equalTo(true)));
+            assertThat(found, equalTo(expected));
+
+            for (double[] box : boxes) {
+                double dx = random.nextDouble() * 4 - 2;
+                box[0] += dx;
+                box[3] += dx;
+            }
+        }
+    }
+
+    @Test
+    public void testChangingBoxCount() {
+        ShipSweepAndPrune sweepAndPrune = new ShipSweepAndPrune();
+        sweepAndPrune.add(0, 0, 0, 2, 2, 2);
+        sweepAndPrune.add(1, 1, 1, 3, 3, 3);
+        Set<String> found = new HashSet<>();
+        sweepAndPrune.forEachOverlappingPair((first, second) -> found.add(first + "," + second));
+        assertThat(found.size(), equalTo(1));
+
+        sweepAndPrune.clear();
+        sweepAndPrune.add(10, 0, 0, 12, 2, 2);
+        sweepAndPrune.add(0, 0, 0, 2, 2, 2);
+        sweepAndPrune.add(2, 2, 2, 3, 3, 3);
+        found.clear();
+        sweepAndPrune.forEachOverlappingPair((first, second) -> found.add(first + "," + second));
+        assertThat(found, equalTo(new HashSet<>(Collections.singletonList("1,2"))));
+    }
+
+    private static void randomBox(Random random, double[] box) {
+        box[0] = random.nextDouble() * 200;
+        box[1] = random.nextDouble() * 50;
+        box[2] = random.nextDouble() * 200;
+        box[3] = box[0] + 1 + random.nextDouble() * 20;
+        box[4] = box[1] + 1 + random.nextDouble() * 20;
+        box[5] = box[2] + 1 + random.nextDouble() * 20;
+    }
+
+    private static boolean overlaps(double[] a, double[] b) {
+        return a[0] <= b[3] && a[3] >= b[0] && a[1] <= b[4] && a[4] >= b[1] && a[2] <= b[5] && a[5] >= b[2];
+    }
+}
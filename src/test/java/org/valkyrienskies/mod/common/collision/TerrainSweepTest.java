@@ -0,0 +1,66 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class TerrainSweepTest {
+
+    @Test
+    public void testFastShipHitsThinWall() {
+        TestWorld world = new TestWorld();
+        // A wall one block thick at x = 10
+        for (int y = 0; y < 16; y++) {
+            for (int z = -8; z < 8; z++) {
+                world.setSolid(10, y, z, true);
+            }
+        }
+        ShipSolidBlockIndex ship = createCube(3);
+        // The ship's blocks are at 0 to 2 in ship space, the transform puts the center block at (5.5, 5.5, .5)
+        ShipTransform transform = new ShipTransform(5.5, 5.5, .5, new Quaterniond(), new Vector3d(1.5, 1.5, 1.5));
+        TerrainSweep sweep = new TerrainSweep();
+
+        // The front blocks are centered at x = 6.5, they enter the wall after 3.5 of the 20 blocks.
+        assertThat(sweep.findTimeOfImpact(ship, transform, 20, 0, 0, world), closeTo(3.5 / 20, 1e-9));
+        // Moving away from the wall never hits it
+        assertThat(sweep.findTimeOfImpact(ship, transform, -20, 0, 0, world), equalTo(1D));
+        // Too short to reach the wall
+        assertThat(sweep.findTimeOfImpact(ship, transform, 3, 0, 0, world), equalTo(1D));
+    }
+
+    @Test
+    public void testRotatedShipSweepsItsLeadingSide() {
+        TestWorld world = new TestWorld();
+        // A floor at y = 2
+        for (int x = -16; x < 16; x++) {
+            for (int z = -16; z < 16; z++) {
+                world.setSolid(x, 2, z, true);
+            }
+        }
+        ShipSolidBlockIndex ship = createCube(3);
+        // Upside down, so the top of the ship in ship space faces the floor.
+        ShipTransform transform = new ShipTransform(.5, 10.5, .5, new Quaterniond().rotateX(Math.PI),
+            new Vector3d(1.5, 1.5, 1.5));
+        TerrainSweep sweep = new TerrainSweep();
+
+        // The lowest blocks are centered at y = 9.5, they enter the floor at y = 3 after 6.5 of the 10 blocks.
+        assertThat(sweep.findTimeOfImpact(ship, transform, 0, -10, 0, world), closeTo(6.5 / 10, 1e-9));
+    }
+
+    private static ShipSolidBlockIndex createCube(int size) {
+        ShipSolidBlockIndex index = new ShipSolidBlockIndex();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    index.set(x, y, z, true);
+                }
+            }
+        }
+        return index;
+    }
+}
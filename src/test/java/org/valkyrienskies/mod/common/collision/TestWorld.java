@@ -0,0 +1,101 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.valkyrienskies.mod.common.util.datastructures.IBitOctree;
+import org.valkyrienskies.mod.common.util.datastructures.ITerrainOctreeProvider;
+import org.valkyrienskies.mod.common.util.datastructures.SimpleBitOctree;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The world the collision tests run in. Only the sections a block was set in exist, the rest are null like unloaded
+ * sections.
+ */
+class TestWorld implements CollisionCandidateCache.SectionSource {
+
+    private final Map<Long, TestSection> sections = new HashMap<>();
+
+    /**
+     * Sets whether the block at x, y, z is solid, and counts the change in the solid modification count of its section.
+     * Blocks outside of the world are ignored.
+     */
+    void setSolid(int x, int y, int z, boolean solid) {
+        if (y < 0 || y > 255) {
+            return;
+        }
+        final TestSection section = getOrCreateSection(x >> 4, y >> 4, z >> 4);
+        if (section.solidOctree.get(x & 15, y & 15, z & 15) != solid) {
+            section.solidOctree.set(x & 15, y & 15, z & 15, solid);
+            section.solidModificationCount++;
+        }
+    }
+
+    boolean isSolid(int x, int y, int z) {
+        final ITerrainOctreeProvider section = y < 0 || y > 255 ? null : getSection(x >> 4, y >> 4, z >> 4);
+        return section != null && section.getSolidOctree().get(x & 15, y & 15, z & 15);
+    }
+
+    /**
+     * Fills the box from min to max (inclusive) with water, fluid type 0.
+     */
+    void fillLiquid(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        fillLiquid(minX, minY, minZ, maxX, maxY, maxZ, 0);
+    }
+
+    /**
+     * Fills the box from min to max (inclusive) with liquid of the given fluid type.
+     */
+    void fillLiquid(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int fluidType) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    final TestSection section = getOrCreateSection(x >> 4, y >> 4, z >> 4);
+                    section.liquidOctree.set(x & 15, y & 15, z & 15, true);
+                    section.fluidTypes[(x & 15) | (y & 15) << 4 | (z & 15) << 8] = fluidType;
+                }
+            }
+        }
+    }
+
+    @Override
+    public ITerrainOctreeProvider getSection(int sectionX, int sectionY, int sectionZ) {
+        return sections.get(CollisionCandidateCache.getSectionKey(sectionX, sectionY, sectionZ));
+    }
+
+    private TestSection getOrCreateSection(int sectionX, int sectionY, int sectionZ) {
+        return sections.computeIfAbsent(CollisionCandidateCache.getSectionKey(sectionX, sectionY, sectionZ),
+            key -> new TestSection());
+    }
+
+    /**
+     * A section of a {@link TestWorld}, or of a ship on its own.
+     */
+    static class TestSection implements ITerrainOctreeProvider {
+
+        final IBitOctree solidOctree = new SimpleBitOctree();
+        final IBitOctree liquidOctree = new SimpleBitOctree();
+        final int[] fluidTypes = new int[IBitOctree.BLOCKS_TOTAL];
+        // Only counted by TestWorld.setSolid(), tests that set the solid octree directly count their own changes.
+        int solidModificationCount = 0;
+
+        @Override
+        public IBitOctree getSolidOctree() {
+            return solidOctree;
+        }
+
+        @Override
+        public IBitOctree getLiquidOctree() {
+            return liquidOctree;
+        }
+
+        @Override
+        public int getSolidModificationCount() {
+            return solidModificationCount;
+        }
+
+        @Override
+        public int getFluidType(int x, int y, int z) {
+            return fluidTypes[x | y << 4 | z << 8];
+        }
+    }
+}
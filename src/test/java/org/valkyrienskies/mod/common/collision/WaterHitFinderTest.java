@@ -0,0 +1,143 @@
+package org.valkyrienskies.mod.common.collision;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.minecraft.util.math.BlockPos;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.ships.block_relocation.SpatialDetector;
+import org.valkyrienskies.mod.common.ships.ship_transform.ShipTransform;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class WaterHitFinderTest {
+
+    @Test
+    public void testHitsAreTheWaterTouchingTheWaterline() {
+        TestWorld world = new TestWorld();
+        // The water surface is at y = 41
+        world.fillLiquid(-16, 0, -16, 15, 40, 15);
+        ShipTransform transform = new ShipTransform(.3, 40.2, -.7, new Quaterniond().rotateZ(.4).rotateX(.2),
+            new Vector3d(1608, 72, 1608));
+        BlockPos center = new BlockPos(0, 40, 0);
+
+        // A 6x6x6 cube of ship blocks
+        WaterHitFinder finder = new WaterHitFinder();
+        List<Vector3d> blockCenters = new ArrayList<>();
+        List<int[]> blocks = new ArrayList<>();
+        for (int x = 1605; x < 1611; x++) {
+            for (int y = 69; y < 75; y++) {
+                for (int z = 1605; z < 1611; z++) {
+                    finder.addShipBlock(x, y, z);
+                    blocks.add(new int[] {x, y, z});
+                    blockCenters.add(transform.transformPositionNew(new Vector3d(x + .5, y + .5, z + .5),
+                        TransformType.SUBSPACE_TO_GLOBAL));
+                }
+            }
+        }
+        TIntArrayList hits = new TIntArrayList();
+        TIntArrayList hitFluidTypes = new TIntArrayList();
+        finder.find(transform, world, center, hits, hitFluidTypes);
+
+        Set<Integer> expectedHits = new HashSet<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            int[] block = blocks.get(i);
+            Vector3d blockCenter = blockCenters.get(i);
+            boolean deep = finder.getDeepBlocks().isSolid(block[0], block[1], block[2]);
+            double submergedVolume = 0;
+            for (int x = -16; x < 16; x++) {
+                for (int y = 0; y < 41; y++) {
+                    for (int z = -16; z < 16; z++) {
+                        double overlap = getOverlap(blockCenter, x + .5, y + .5, z + .5);
+                        if (overlap > 0) {
+                            submergedVolume += overlap;
+                            if (!deep) {
+                                expectedHits.add(SpatialDetector.getHashWithRespectTo(x, y, z, center));
+                            }
+                        }
+                    }
+                }
+            }
+            if (deep) {
+                // The water around a deep block covers all of it
+                assertThat(submergedVolume, closeTo(1, 1e-9));
+            }
+        }
+        Set<Integer> foundHits = new HashSet<>();
+        hits.forEach(foundHits::add);
+        assertThat(hits.size(), equalTo(foundHits.size()));
+        assertThat(foundHits, equalTo(expectedHits));
+        assertThat(hitFluidTypes.size(), equalTo(hits.size()));
+        assertThat(finder.getDeepBlockCount(0), greaterThan(0));
+        assertThat(finder.getDeepBlockCount(0), lessThan(blocks.size()));
+    }
+
+    @Test
+    public void testDeepBlockCenter() {
+        TestWorld world = new TestWorld();
+        world.fillLiquid(-16, 0, -16, 15, 63, 15);
+        ShipTransform transform = new ShipTransform(0, 30, 0, new Quaterniond().rotateY(.3),
+            new Vector3d(1608, 72, 1608));
+        WaterHitFinder finder = new WaterHitFinder();
+        finder.addShipBlock(1600, 70, 1600);
+        finder.addShipBlock(1602, 70, 1600);
+        TIntArrayList hits = new TIntArrayList();
+        finder.find(transform, world, new BlockPos(0, 30, 0), hits, new TIntArrayList());
+
+        assertThat(hits.size(), equalTo(0));
+        assertThat(finder.getDeepBlockCount(0), equalTo(2));
+        Vector3d deepCenter = finder.getDeepBlockCenter(0, new Vector3d());
+        assertThat(deepCenter.distance(1601.5, 70.5, 1600.5), closeTo(0, 1e-9));
+
+        finder.clear();
+        assertThat(finder.getDeepBlockCount(0), equalTo(0));
+    }
+
+    @Test
+    public void testHitsAreGroupedByFluidType() {
+        TestWorld world = new TestWorld();
+        // Water below x = 0 and fluid type 2 from x = 0 on
+        world.fillLiquid(-16, 0, -16, -1, 63, 15);
+        world.fillLiquid(0, 0, -16, 15, 63, 15, 2);
+        ShipTransform transform = new ShipTransform(0, 30, 0, new Quaterniond(), new Vector3d(1608, 72, 1608));
+        WaterHitFinder finder = new WaterHitFinder();
+        // A row of ship blocks from x = -4 to 3 in global space
+        for (int x = 1604; x < 1612; x++) {
+            finder.addShipBlock(x, 72, 1608);
+        }
+        TIntArrayList hits = new TIntArrayList();
+        TIntArrayList hitFluidTypes = new TIntArrayList();
+        finder.find(transform, world, new BlockPos(0, 30, 0), hits, hitFluidTypes);
+
+        // Only the 2x2x2 world blocks of the block centered at x = -.5 have both fluids
+        assertThat(finder.getDeepBlockCount(0), equalTo(3));
+        assertThat(finder.getDeepBlockCount(1), equalTo(0));
+        assertThat(finder.getDeepBlockCount(2), equalTo(4));
+        assertThat(finder.getDeepBlockCenter(2, new Vector3d()).x, closeTo(1610, 1e-9));
+        for (int i = 1; i < hitFluidTypes.size(); i++) {
+            assertThat(hitFluidTypes.get(i) >= hitFluidTypes.get(i - 1), equalTo(true));
+        }
+        assertThat(hitFluidTypes.contains(0), equalTo(true));
+        assertThat(hitFluidTypes.contains(2), equalTo(true));
+    }
+
+    /**
+     * @return The volume of the overlap of two unit cubes, the same as WaterForcesTask uses.
+     */
+    private static double getOverlap(Vector3d blockCenter, double waterX, double waterY, double waterZ) {
+        double x = Math.max(0, 1 - Math.abs(blockCenter.x - waterX));
+        double y = Math.max(0, 1 - Math.abs(blockCenter.y - waterY));
+        double z = Math.max(0, 1 - Math.abs(blockCenter.z - waterZ));
+        return x * y * z;
+    }
+}
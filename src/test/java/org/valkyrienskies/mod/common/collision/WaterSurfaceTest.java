@@ -0,0 +1,43 @@
+package org.valkyrienskies.mod.common.collision;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class WaterSurfaceTest {
+
+    @Test
+    public void testSurfaceOfColumns() {
+        TestWorld world = createWorld();
+
+        assertThat(WaterSurface.getSurfaceY(world, -16, 15), equalTo(40));
+        assertThat(WaterSurface.getSurfaceY(world, 5, 5), equalTo(100));
+        assertThat(WaterSurface.getSurfaceY(world, 21, 3), equalTo(72));
+        assertThat(WaterSurface.getSurfaceY(world, 16, 0), equalTo(-1));
+        assertThat(WaterSurface.getSurfaceY(world, -100, 0), equalTo(-1));
+    }
+
+    @Test
+    public void testHighestSurfaceOfRange() {
+        TestWorld world = createWorld();
+
+        assertThat(WaterSurface.getHighestSurfaceY(world, -16, -16, 4, 15), equalTo(40));
+        assertThat(WaterSurface.getHighestSurfaceY(world, -16, -16, 5, 5), equalTo(100));
+        assertThat(WaterSurface.getHighestSurfaceY(world, -3, -3, 30, 5), equalTo(100));
+        assertThat(WaterSurface.getHighestSurfaceY(world, 6, 0, 30, 30), equalTo(72));
+        assertThat(WaterSurface.getHighestSurfaceY(world, 16, 4, 30, 30), equalTo(-1));
+    }
+
+    /**
+     * @return A world with water up to y = 40 from -16 to 15, a pool from y = 70 to 72 and x = 20 to 23, and a single
+     * water block at 5, 100, 5.
+     */
+    private static TestWorld createWorld() {
+        TestWorld world = new TestWorld();
+        world.fillLiquid(-16, 0, -16, 15, 40, 15);
+        world.fillLiquid(20, 70, 0, 23, 72, 3);
+        world.fillLiquid(5, 100, 5, 5, 100, 5);
+        return world;
+    }
+}
@@ -0,0 +1,80 @@
+package org.valkyrienskies.mod.common.ships.ship_transform;
+
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares transforming positions one {@link Vector3d} at a time with
+ * {@link ShipTransform#transformPositions(double[], double[], double[], int, int, TransformType)}. Run the main
+ * method from the IDE, or with the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShipTransformBenchmark {
+
+    // 8 is a ship block in handleActualCollision(), the others are the size of collision task leaves.
+    @Param({"8", "256", "4096"})
+    private int count;
+
+    private ShipTransform transform;
+    private double[] sourceXs, sourceYs, sourceZs;
+    private double[] xs, ys, zs;
+    private Vector3d temp;
+
+    @Setup
+    public void setup() {
+        transform = new ShipTransform(10.5, 70.25, -300.75, new Quaterniond().rotateXYZ(.3, -1.2, 2.1),
+            new Vector3d(8.5, 128.5, 8.5));
+        Random random = new Random(1);
+        sourceXs = new double[count];
+        sourceYs = new double[count];
+        sourceZs = new double[count];
+        for (int i = 0; i < count; i++) {
+            sourceXs[i] = random.nextInt(1000) + .5;
+            sourceYs[i] = random.nextInt(256) + .5;
+            sourceZs[i] = random.nextInt(1000) + .5;
+        }
+        xs = new double[count];
+        ys = new double[count];
+        zs = new double[count];
+        temp = new Vector3d();
+    }
+
+    @Benchmark
+    public void scalar(Blackhole blackhole) {
+        for (int i = 0; i < count; i++) {
+            transform.transformPositionNew(temp.set(sourceXs[i], sourceYs[i], sourceZs[i]),
+                TransformType.GLOBAL_TO_SUBSPACE);
+            xs[i] = temp.x;
+            ys[i] = temp.y;
+            zs[i] = temp.z;
+        }
+        blackhole.consume(xs);
+    }
+
+    @Benchmark
+    public void batched(Blackhole blackhole) {
+        System.arraycopy(sourceXs, 0, xs, 0, count);
+        System.arraycopy(sourceYs, 0, ys, 0, count);
+        System.arraycopy(sourceZs, 0, zs, 0, count);
+        transform.transformPositions(xs, ys, zs, 0, count, TransformType.GLOBAL_TO_SUBSPACE);
+        blackhole.consume(xs);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ShipTransformBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,47 @@
+package org.valkyrienskies.mod.common.ships.ship_transform;
+
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.jupiter.api.Test;
+import valkyrienwarfare.api.TransformType;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ShipTransformTest {
+
+    @Test
+    public void testBatchedTransformMatchesScalar() {
+        Random random = new Random(3);
+        ShipTransform transform = new ShipTransform(10.5, 70.25, -300.75,
+            new Quaterniond().rotateXYZ(.3, -1.2, 2.1), new Vector3d(8.5, 128.5, 8.5));
+        for (TransformType transformType : new TransformType[] {TransformType.SUBSPACE_TO_GLOBAL,
+            TransformType.GLOBAL_TO_SUBSPACE}) {
+            double[] xs = new double[100];
+            double[] ys = new double[100];
+            double[] zs = new double[100];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = random.nextDouble() * 1000 - 500;
+                ys[i] = random.nextDouble() * 256;
+                zs[i] = random.nextDouble() * 1000 - 500;
+            }
+            double[] originalXs = xs.clone();
+            double[] originalYs = ys.clone();
+            double[] originalZs = zs.clone();
+
+            transform.transformPositions(xs, ys, zs, 10, 90, transformType);
+
+            Vector3d expected = new Vector3d();
+            for (int i = 0; i < xs.length; i++) {
+                expected.set(originalXs[i], originalYs[i], originalZs[i]);
+                if (i >= 10 && i < 90) {
+                    transform.transformPositionNew(expected, transformType);
+                }
+                // The batched path must give exactly the same result, the physics relies on being deterministic.
+                assertThat(new Vector3d(xs[i], ys[i], zs[i]), equalTo(expected));
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class PackedTerrainOctreesTest {
+
+    @Test
+    public void testMatchesSimpleBitOctrees() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20; i++) {
+            PackedTerrainOctrees packed = new PackedTerrainOctrees();
+            IBitOctree solid = new SimpleBitOctree();
+            IBitOctree liquid = new SimpleBitOctree();
+            int blocks = random.nextInt(3000);
+            for (int j = 0; j < blocks; j++) {
+                int x = random.nextInt(16), y = random.nextInt(16), z = random.nextInt(16);
+                // Mostly air, so the higher levels of the octrees get cleared too
+                int type = random.nextInt(4);
+                boolean isSolid = type == 1, isLiquid = type == 2;
+                boolean solidChanged = solid.get(x, y, z) != isSolid;
+                solid.set(x, y, z, isSolid);
+                liquid.set(x, y, z, isLiquid);
+                assertThat(packed.set(x, y, z, isSolid, isLiquid), equalTo(solidChanged));
+                assertThat(packed.isLiquid(x, y, z), equalTo(isLiquid));
+            }
+            assertSameOctree(packed.getSolidOctree(), solid);
+            assertSameOctree(packed.getLiquidOctree(), liquid);
+        }
+    }
+
+    @Test
+    public void testUniformSectionsShareTheirData() {
+        PackedTerrainOctrees packed = new PackedTerrainOctrees();
+        assertThat(packed.isShared(), equalTo(true));
+
+        fill(packed, true, false);
+        assertThat(packed.isShared(), equalTo(true));
+        assertThat(packed.getSolidOctree().getSetBitCount(), equalTo(IBitOctree.BLOCKS_TOTAL));
+        assertThat(packed.getSolidOctree().getCountInRange(0, 0, 0, 15, 15, 15), equalTo(IBitOctree.BLOCKS_TOTAL));
+
+        // Changing a shared section must not change the other sections sharing its data
+        PackedTerrainOctrees other = new PackedTerrainOctrees();
+        fill(other, true, false);
+        packed.set(3, 4, 5, false, true);
+        assertThat(packed.isShared(), equalTo(false));
+        assertThat(packed.getLiquidOctree().get(3, 4, 5), equalTo(true));
+        assertThat(other.getSolidOctree().get(3, 4, 5), equalTo(true));
+        assertThat(other.getLiquidOctree().getCountInRange(0, 0, 0, 15, 15, 15), equalTo(0));
+
+        fill(packed, false, false);
+        assertThat(packed.isShared(), equalTo(true));
+        assertThat(packed.getSolidOctree().getSetBitCount(), equalTo(0));
+        assertThat(packed.getSolidOctree().getCountInRange(0, 0, 0, 15, 15, 15), equalTo(0));
+    }
+
+    private static void fill(PackedTerrainOctrees packed, boolean isSolid, boolean isLiquid) {
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    packed.set(x, y, z, isSolid, isLiquid);
+                }
+            }
+        }
+    }
+
+    private static void assertSameOctree(IBitOctree actual, IBitOctree expected) {
+        assertThat(actual.getSetBitCount(), equalTo(expected.getSetBitCount()));
+        for (int index = 0; index < IBitOctree.BITS_TOTAL; index++) {
+            assertThat(actual.getAtIndex(index), equalTo(expected.getAtIndex(index)));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.valkyrienskies.mod.common.util.datastructures;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SimpleBitOctreeTest {
+
+    @Test
+    public void testForEachSetBitInRangeMatchesGet() {
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            IBitOctree octree = new SimpleBitOctree();
+            int bits = random.nextInt(200);
+            for (int j = 0; j < bits; j++) {
+                octree.set(random.nextInt(16), random.nextInt(16), random.nextInt(16), true);
+            }
+            // Clear some bits again, so the higher levels of the octree have to be cleared too
+            for (int j = 0; j < bits / 2; j++) {
+                octree.set(random.nextInt(16), random.nextInt(16), random.nextInt(16), false);
+            }
+            assertThat(octree.getSetBitCount(), equalTo(octree.getCountInRange(0, 0, 0, 15, 15, 15)));
+            int minX = random.nextInt(16), minY = random.nextInt(16), minZ = random.nextInt(16);
+            int maxX = minX + random.nextInt(16 - minX), maxY = minY + random.nextInt(16 - minY);
+            int maxZ = minZ + random.nextInt(16 - minZ);
+
+            List<Integer> expected = new ArrayList<>();
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        if (octree.get(x, y, z)) {
+                            expected.add(x | (y << 4) | (z << 8));
+                        }
+                    }
+                }
+            }
+            List<Integer> found = new ArrayList<>();
+            octree.forEachSetBitInRange(minX, minY, minZ, maxX, maxY, maxZ,
+                (x, y, z) -> found.add(x | (y << 4) | (z << 8)));
+
+            expected.sort(Integer::compare);
+            found.sort(Integer::compare);
+            assertThat(found, equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testEmptyOctreeVisitsNothing() {
+        IBitOctree octree = new SimpleBitOctree();
+        octree.set(5, 5, 5, true);
+        octree.set(5, 5, 5, false);
+        List<Integer> found = new ArrayList<>();
+        octree.forEachSetBitInRange(0, 0, 0, 15, 15, 15, (x, y, z) -> found.add(x));
+        assertThat(found.size(), equalTo(0));
+    }
+}
@@ -0,0 +1,45 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class FixedTimestepClockTest {
+
+    private static final long PERIOD = 1000;
+
+    @Test
+    public void testNothingDueBeforeDeadline() {
+        FixedTimestepClock clock = new FixedTimestepClock(0);
+        assertThat(clock.pollTicksDue(0, PERIOD, 4), equalTo(1));
+        assertThat(clock.pollTicksDue(PERIOD - 1, PERIOD, 4), equalTo(0));
+        assertThat(clock.getNanosUntilNextTick(PERIOD - 1), equalTo(1L));
+    }
+
+    @Test
+    public void testDeadlinesDoNotDrift() {
+        FixedTimestepClock clock = new FixedTimestepClock(0);
+        // Wake up a little late every time, the deadlines must stay on the PERIOD grid.
+        int ticks = 0;
+        for (long time = 0; time < 100 * PERIOD; time += PERIOD) {
+            ticks += clock.pollTicksDue(time + 300, PERIOD, 4);
+        }
+        assertThat(ticks, equalTo(100));
+        assertThat(clock.getNextTickDeadline(), equalTo(100 * PERIOD));
+    }
+
+    @Test
+    public void testCatchUpIsBounded() {
+        FixedTimestepClock clock = new FixedTimestepClock(0);
+        clock.pollTicksDue(0, PERIOD, 4);
+        // A stall of 10 ticks only runs 4 of them, and drops the rest.
+        assertThat(clock.pollTicksDue(10 * PERIOD + 1, PERIOD, 4), equalTo(4));
+        assertThat(clock.getDroppedTicks(), equalTo(6L));
+        assertThat(clock.getNextTickDeadline(), equalTo(11 * PERIOD));
+        // A short stall is fully caught up.
+        assertThat(clock.pollTicksDue(13 * PERIOD, PERIOD, 4), equalTo(3));
+        assertThat(clock.getDroppedTicks(), equalTo(6L));
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.junit.jupiter.api.Test;
+import org.valkyrienskies.mod.common.config.VSConfig;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class PhysicsLevelOfDetailTest {
+
+    private static VSConfig.PhysicsLodSettings createSettings() {
+        VSConfig.PhysicsLodSettings settings = new VSConfig.PhysicsLodSettings();
+        settings.distantTickRateDivisor = 2;
+        settings.restingTickRateDivisor = 4;
+        settings.restingDwellTicks = 10;
+        return settings;
+    }
+
+    @Test
+    public void testDistantShipSimulatesAllSkippedTicks() {
+        VSConfig.PhysicsLodSettings settings = createSettings();
+        PhysicsLevelOfDetail lod = new PhysicsLevelOfDetail(0);
+        int ticksSimulated = 0;
+        int steps = 0;
+        for (long tick = 0; tick <= 100; tick++) {
+            int ticks = lod.update(tick, false, true, false, settings);
+            ticksSimulated += ticks;
+            if (ticks > 0) {
+                steps++;
+            }
+        }
+        assertThat(steps, equalTo(51));
+        assertThat(ticksSimulated, equalTo(101));
+    }
+
+    @Test
+    public void testRestingNeedsDwellTime() {
+        VSConfig.PhysicsLodSettings settings = createSettings();
+        PhysicsLevelOfDetail lod = new PhysicsLevelOfDetail(0);
+        for (long tick = 0; tick < 9; tick++) {
+            assertThat(lod.update(tick, false, false, true, settings), equalTo(1));
+        }
+        lod.update(9, false, false, true, settings);
+        assertThat(lod.getRateDivisor(), equalTo(4));
+        lod.update(10, false, true, true, settings);
+        assertThat(lod.getRateDivisor(), equalTo(8));
+    }
+
+    @Test
+    public void testPromotionRunsImmediately() {
+        VSConfig.PhysicsLodSettings settings = createSettings();
+        PhysicsLevelOfDetail lod = new PhysicsLevelOfDetail(0);
+        long tick = 0;
+        for (; tick < 20; tick++) {
+            lod.update(tick, false, true, true, settings);
+        }
+        // The ship is resting and distant, so it skips most ticks.
+        assertThat(lod.getRateDivisor(), equalTo(8));
+        while (lod.update(tick, false, true, true, settings) == 0) {
+            tick++;
+        }
+        tick++;
+        assertThat(lod.update(tick++, false, true, true, settings), equalTo(0));
+        assertThat(lod.update(tick++, false, true, true, settings), equalTo(0));
+        // Pilot input, the skipped ticks run right away.
+        assertThat(lod.update(tick, true, true, true, settings), equalTo(3));
+        assertThat(lod.getRateDivisor(), equalTo(1));
+    }
+
+    @Test
+    public void testPhasesSpreadShips() {
+        VSConfig.PhysicsLodSettings settings = createSettings();
+        PhysicsLevelOfDetail even = new PhysicsLevelOfDetail(0);
+        PhysicsLevelOfDetail odd = new PhysicsLevelOfDetail(1);
+        for (long tick = 0; tick < 20; tick++) {
+            boolean evenRuns = even.update(tick, false, true, false, settings) > 0;
+            boolean oddRuns = odd.update(tick, false, true, false, settings) > 0;
+            if (tick > 0) {
+                assertThat(evenRuns, equalTo(!oddRuns));
+            }
+        }
+    }
+
+}
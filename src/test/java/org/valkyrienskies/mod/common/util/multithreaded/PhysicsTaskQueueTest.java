@@ -0,0 +1,58 @@
+package org.valkyrienskies.mod.common.util.multithreaded;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+public class PhysicsTaskQueueTest {
+
+    @Test
+    public void testFullQueueRefusesTasks() {
+        PhysicsTaskQueue queue = new PhysicsTaskQueue(2);
+        assertThat(queue.offer(() -> { }), equalTo(true));
+        assertThat(queue.offer(() -> { }), equalTo(true));
+        assertThat(queue.offer(() -> { }), equalTo(false));
+        assertThat(queue.size(), equalTo(2));
+        // Running a task frees its spot.
+        queue.runBatch(System.nanoTime() - 1);
+        assertThat(queue.offer(() -> { }), equalTo(true));
+    }
+
+    @Test
+    public void testTasksQueuedDuringBatchWaitForNextBatch() {
+        PhysicsTaskQueue queue = new PhysicsTaskQueue(16);
+        List<Integer> ran = new ArrayList<>();
+        queue.offer(() -> {
+            ran.add(0);
+            queue.offer(() -> ran.add(1));
+        });
+
+        assertThat(queue.runBatch(Long.MAX_VALUE), equalTo(1));
+        assertThat(ran, contains(0));
+        assertThat(queue.runBatch(Long.MAX_VALUE), equalTo(1));
+        assertThat(ran, contains(0, 1));
+        assertThat(queue.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testPassedDeadlineStillRunsOneTask() {
+        PhysicsTaskQueue queue = new PhysicsTaskQueue(16);
+        List<Integer> ran = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int task = i;
+            queue.offer(() -> ran.add(task));
+        }
+
+        assertThat(queue.runBatch(System.nanoTime() - 1), equalTo(1));
+        assertThat(ran, contains(0));
+        assertThat(queue.size(), equalTo(2));
+        assertThat(queue.runBatch(Long.MAX_VALUE), equalTo(2));
+        assertThat(ran, contains(0, 1, 2));
+    }
+
+}